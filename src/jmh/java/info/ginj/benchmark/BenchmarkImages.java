@@ -0,0 +1,97 @@
+package info.ginj.benchmark;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * Synthetic captures used by the benchmarks.
+ * They look like a desktop (windows, title bars, text, a photo-like gradient) rather than noise, so that the cost of
+ * e.g. PNG compression is representative of real screenshots. They are generated from a fixed seed, so that all runs
+ * process the same pixels.
+ */
+public class BenchmarkImages {
+    // Capture sizes used as @Param values: a full HD screen, a 4K screen, and a 4K + full HD multi-monitor desktop
+    public static final String SIZE_1080P = "1920x1080";
+    public static final String SIZE_4K = "3840x2160";
+    public static final String SIZE_MULTI_MONITOR = "5760x2160";
+
+    private static final long SEED = 42;
+
+    /**
+     * @param size a size like "1920x1080"
+     * @return the parsed dimension
+     */
+    public static Dimension parseSize(String size) {
+        final String[] parts = size.split("x");
+        return new Dimension(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+    }
+
+    /**
+     * @param size a size like "1920x1080"
+     * @return an opaque screenshot-like image of that size
+     */
+    public static BufferedImage createCapture(String size) {
+        final Dimension dimension = parseSize(size);
+        final BufferedImage image = new BufferedImage(dimension.width, dimension.height, BufferedImage.TYPE_INT_RGB);
+        final Graphics2D g2d = image.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        final Random random = new Random(SEED);
+
+        // Desktop background
+        g2d.setPaint(new GradientPaint(0, 0, new Color(30, 60, 110), dimension.width, dimension.height, new Color(90, 20, 70)));
+        g2d.fillRect(0, 0, dimension.width, dimension.height);
+
+        // Windows
+        final Font font = new Font(Font.SANS_SERIF, Font.PLAIN, 13);
+        final int windowCount = dimension.width * dimension.height / 400_000;
+        for (int i = 0; i < windowCount; i++) {
+            final int width = 300 + random.nextInt(700);
+            final int height = 200 + random.nextInt(500);
+            final int x = random.nextInt(Math.max(1, dimension.width - width));
+            final int y = random.nextInt(Math.max(1, dimension.height - height));
+            g2d.setColor(new Color(240, 240, 240));
+            g2d.fillRect(x, y, width, height);
+            g2d.setColor(new Color(random.nextInt(0xFFFFFF)));
+            g2d.fillRect(x, y, width, 28);
+            g2d.setColor(Color.DARK_GRAY);
+            g2d.drawRect(x, y, width - 1, height - 1);
+            if (i % 4 == 0) {
+                // Photo-like content
+                g2d.setPaint(new GradientPaint(x, y + 28, new Color(random.nextInt(0xFFFFFF)), x + width, y + height, new Color(random.nextInt(0xFFFFFF))));
+                g2d.fillOval(x + 10, y + 38, width - 20, height - 48);
+            }
+            else {
+                // Text content
+                g2d.setFont(font);
+                g2d.setColor(Color.BLACK);
+                for (int lineY = y + 48; lineY < y + height - 8; lineY += 17) {
+                    g2d.drawString("Lorem ipsum dolor sit amet, consectetur adipiscing elit " + random.nextInt(100000), x + 8, lineY);
+                }
+            }
+        }
+        g2d.dispose();
+        return image;
+    }
+
+    /**
+     * @param size a size like "1920x1080"
+     * @return a translucent greyscale image of that size, like the icons that are tinted by the UI
+     */
+    public static BufferedImage createGreyscaleImage(String size) {
+        final BufferedImage capture = createCapture(size);
+        final BufferedImage image = new BufferedImage(capture.getWidth(), capture.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D g2d = image.createGraphics();
+        g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.8f));
+        g2d.drawImage(capture, 0, 0, null);
+        g2d.dispose();
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                final int argb = image.getRGB(x, y);
+                final int grey = (((argb >> 16) & 0xFF) + ((argb >> 8) & 0xFF) + (argb & 0xFF)) / 3;
+                image.setRGB(x, y, (argb & 0xFF000000) | (grey << 16) | (grey << 8) | grey);
+            }
+        }
+        return image;
+    }
+}
@@ -0,0 +1,42 @@
+package info.ginj.benchmark;
+
+import com.jhlabs.image.GaussianFilter;
+import info.ginj.tool.Overlay;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gaussian blur of a whole capture, with the shadow radius, in serial and in parallel band mode.
+ * The parallel mode runs on the common fork-join pool: see src/jmh/README.md to measure how it scales with cores.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class GaussianFilterBenchmark {
+
+    @Param({BenchmarkImages.SIZE_1080P, BenchmarkImages.SIZE_4K, BenchmarkImages.SIZE_MULTI_MONITOR})
+    public String size;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private BufferedImage capture;
+    private GaussianFilter gaussianFilter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        capture = BenchmarkImages.createCapture(size);
+        gaussianFilter = new GaussianFilter(Overlay.SHADOW_BLUR_RADIUS);
+        gaussianFilter.setParallel(parallel);
+    }
+
+    @Benchmark
+    public BufferedImage filter() {
+        return gaussianFilter.filter(capture, null);
+    }
+}
@@ -0,0 +1,50 @@
+package info.ginj.benchmark;
+
+import info.ginj.model.CaptureHistory;
+import info.ginj.util.Misc;
+import org.openjdk.jmh.annotations.*;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Image processing done when saving a capture to the history: downscaling the thumbnail and encoding PNG files.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class HistoryImageBenchmark {
+
+    @Param({BenchmarkImages.SIZE_1080P, BenchmarkImages.SIZE_4K, BenchmarkImages.SIZE_MULTI_MONITOR})
+    public String size;
+
+    private BufferedImage capture;
+    private ByteArrayOutputStream pngStream;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        capture = BenchmarkImages.createCapture(size);
+        pngStream = new ByteArrayOutputStream(capture.getWidth() * capture.getHeight());
+    }
+
+    @Benchmark
+    public BufferedImage createThumbnail() {
+        return CaptureHistory.createThumbnail(capture);
+    }
+
+    /**
+     * Encodes to memory, so that disk speed is not measured
+     */
+    @Benchmark
+    public int encodePng() throws IOException {
+        pngStream.reset();
+        ImageIO.write(capture, Misc.IMAGE_FORMAT_PNG, pngStream);
+        return pngStream.size();
+    }
+}
@@ -0,0 +1,70 @@
+package info.ginj.benchmark;
+
+import info.ginj.tool.Overlay;
+import info.ginj.tool.RectangleOverlay;
+import info.ginj.tool.ShadowCache;
+import info.ginj.tool.frame.FrameOverlay;
+import info.ginj.util.UI;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Image effects computed by the UI: dimming the screen during selection, tinting and overlay shadows.
+ * Blurring is measured by GaussianFilterBenchmark.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class ImageEffectsBenchmark {
+
+    @Param({BenchmarkImages.SIZE_1080P, BenchmarkImages.SIZE_4K, BenchmarkImages.SIZE_MULTI_MONITOR})
+    public String size;
+
+    private BufferedImage capture;
+    private BufferedImage greyscaleImage;
+    private Overlay frameOverlay;
+    private Rectangle shadowBounds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        capture = BenchmarkImages.createCapture(size);
+        greyscaleImage = BenchmarkImages.createGreyscaleImage(size);
+
+        // A frame around the whole capture: the largest shadow an overlay can cast
+        final Dimension dimension = BenchmarkImages.parseSize(size);
+        final FrameOverlay overlay = new FrameOverlay();
+        overlay.initialize(new Point(0, 0), Color.RED);
+        overlay.setRectangle(new Rectangle(20, 20, dimension.width - 40, dimension.height - 40));
+        frameOverlay = overlay;
+        // Same bounds as computed by Overlay.getShadowBounds()
+        shadowBounds = new Rectangle(overlay.getRectangle());
+        shadowBounds.grow(RectangleOverlay.HANDLE_EXTERNAL_OFFSET, RectangleOverlay.HANDLE_EXTERNAL_OFFSET);
+        shadowBounds.translate(Overlay.SHADOW_OFFSET - Overlay.SHADOW_BLUR_RADIUS / 2, Overlay.SHADOW_OFFSET - Overlay.SHADOW_BLUR_RADIUS / 2);
+        shadowBounds.width += Overlay.SHADOW_BLUR_RADIUS;
+        shadowBounds.height += Overlay.SHADOW_BLUR_RADIUS;
+    }
+
+    @Benchmark
+    public Image makeDimmedImage() {
+        return UI.makeDimmedImage(capture);
+    }
+
+    @Benchmark
+    public BufferedImage tint() {
+        return UI.tint(greyscaleImage, UI.ICON_ENABLED_COLOR);
+    }
+
+    /**
+     * What Overlay.getShadowImage() costs when the shadow is not cached yet (a null shape key bypasses the cache)
+     */
+    @Benchmark
+    public BufferedImage overlayShadow() {
+        return ShadowCache.getShadow(frameOverlay, shadowBounds, null);
+    }
+}
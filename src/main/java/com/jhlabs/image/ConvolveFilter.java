@@ -22,6 +22,10 @@ import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
 import java.awt.image.Kernel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * A filter which applies a convolution kernel to an image.
@@ -64,6 +68,28 @@ public class ConvolveFilter extends AbstractBufferedImageOp {
      */
 	private int edgeAction = CLAMP_EDGES;
 
+    /**
+     * Whether to process bands of rows in parallel.
+     */
+	protected boolean parallel = false;
+
+	// Bands smaller than this number of pixels are not split further
+	private static final int MIN_BAND_PIXELS = 16384;
+
+	// Pixel buffers kept for the next calls, to avoid allocating two full images per call.
+	// The pool is bounded in total size (16 MB, e.g. two 1080p images), so a huge image does not stay in memory forever
+	private static final int MAX_POOLED_BUFFERS = 4;
+	private static final long MAX_POOLED_PIXELS = 4L * 1024 * 1024;
+	private static final List<int[]> bufferPool = new ArrayList<>();
+	private static long pooledPixels = 0;
+
+	/**
+	 * An operation on a band of rows.
+	 */
+	protected interface RowBand {
+		void run(int startRow, int endRow);
+	}
+
 	/**
 	 * Construct a filter with a null kernel. This is only useful if you're going to change the kernel later on.
 	 */
@@ -169,6 +195,25 @@ public class ConvolveFilter extends AbstractBufferedImageOp {
 		return premultiplyAlpha;
 	}
 
+    /**
+     * Set whether to split the image in bands of rows processed in parallel on the common fork-join pool.
+     * The result is exactly the same as in serial mode.
+     * @param parallel true to process bands in parallel
+     * @see #getParallel
+     */
+	public void setParallel( boolean parallel ) {
+		this.parallel = parallel;
+	}
+
+    /**
+     * Get whether to process bands of rows in parallel.
+     * @return true to process bands in parallel
+     * @see #setParallel
+     */
+	public boolean getParallel() {
+		return parallel;
+	}
+
     public BufferedImage filter( BufferedImage src, BufferedImage dst ) {
         int width = src.getWidth();
         int height = src.getHeight();
@@ -176,20 +221,106 @@ public class ConvolveFilter extends AbstractBufferedImageOp {
         if ( dst == null )
             dst = createCompatibleDestImage( src, null );
 
-        int[] inPixels = new int[width*height];
-        int[] outPixels = new int[width*height];
+        int[] inPixels = borrowBuffer(width*height);
+        int[] outPixels = borrowBuffer(width*height);
         getRGB( src, 0, 0, width, height, inPixels );
 
         if ( premultiplyAlpha )
-			ImageMath.premultiply( inPixels, 0, inPixels.length );
-		convolve(kernel, inPixels, outPixels, width, height, alpha, edgeAction);
+			forEachBand(width, height, parallel, (startRow, endRow) -> ImageMath.premultiply( inPixels, startRow*width, (endRow-startRow)*width ));
+		forEachBand(width, height, parallel, (startRow, endRow) -> convolve(kernel, inPixels, outPixels, width, height, alpha, edgeAction, startRow, endRow));
         if ( premultiplyAlpha )
-			ImageMath.unpremultiply( outPixels, 0, outPixels.length );
+			forEachBand(width, height, parallel, (startRow, endRow) -> ImageMath.unpremultiply( outPixels, startRow*width, (endRow-startRow)*width ));
 
         setRGB( dst, 0, 0, width, height, outPixels );
+        returnBuffer(inPixels);
+        returnBuffer(outPixels);
         return dst;
     }
 
+	/**
+	 * Run an operation on all rows, either at once or split in bands run in parallel.
+	 * @param width the width
+	 * @param height the height
+	 * @param parallel true to split the rows in bands run in parallel
+	 * @param band the operation to run
+	 */
+	protected static void forEachBand(int width, int height, boolean parallel, RowBand band) {
+		if ( !parallel || (long)width*height < 2*MIN_BAND_PIXELS || ForkJoinPool.getCommonPoolParallelism() < 2 ) {
+			band.run(0, height);
+			return;
+		}
+		ForkJoinPool.commonPool().invoke(new BandTask(band, 0, height, Math.max(1, MIN_BAND_PIXELS/width)));
+	}
+
+	private static class BandTask extends RecursiveAction {
+		private final RowBand band;
+		private final int startRow;
+		private final int endRow;
+		private final int minRows;
+
+		BandTask(RowBand band, int startRow, int endRow, int minRows) {
+			this.band = band;
+			this.startRow = startRow;
+			this.endRow = endRow;
+			this.minRows = minRows;
+		}
+
+		protected void compute() {
+			if ( endRow - startRow <= minRows ) {
+				band.run(startRow, endRow);
+			} else {
+				int middleRow = (startRow + endRow) >>> 1;
+				invokeAll(new BandTask(band, startRow, middleRow, minRows), new BandTask(band, middleRow, endRow, minRows));
+			}
+		}
+	}
+
+	/**
+	 * Get a pixel buffer from the pool, or allocate one.
+	 * @param size the minimum size of the buffer
+	 * @return a buffer of at least this size, with undefined contents
+	 */
+	protected static int[] borrowBuffer(int size) {
+		synchronized (bufferPool) {
+			int bestIndex = -1;
+			for (int i = 0; i < bufferPool.size(); i++) {
+				int length = bufferPool.get(i).length;
+				if ( length >= size && (bestIndex < 0 || length < bufferPool.get(bestIndex).length) )
+					bestIndex = i;
+			}
+			if ( bestIndex >= 0 ) {
+				int[] buffer = bufferPool.remove(bestIndex);
+				pooledPixels -= buffer.length;
+				return buffer;
+			}
+		}
+		return new int[size];
+	}
+
+	/**
+	 * Give a buffer back to the pool, for later calls.
+	 * @param buffer a buffer obtained by borrowBuffer, that must not be used anymore
+	 */
+	protected static void returnBuffer(int[] buffer) {
+		if ( buffer.length > MAX_POOLED_PIXELS )
+			return;
+		synchronized (bufferPool) {
+			bufferPool.add(buffer);
+			pooledPixels += buffer.length;
+			while ( bufferPool.size() > MAX_POOLED_BUFFERS || pooledPixels > MAX_POOLED_PIXELS ) {
+				// Drop the smallest buffer if there are too many, or the largest if they take too much memory
+				boolean dropSmallest = bufferPool.size() > MAX_POOLED_BUFFERS;
+				int dropIndex = 0;
+				for (int i = 1; i < bufferPool.size(); i++) {
+					int length = bufferPool.get(i).length;
+					if ( dropSmallest ? length < bufferPool.get(dropIndex).length : length > bufferPool.get(dropIndex).length )
+						dropIndex = i;
+				}
+				pooledPixels -= bufferPool.remove(dropIndex).length;
+			}
+		}
+	}
+
     public BufferedImage createCompatibleDestImage(BufferedImage src, ColorModel dstCM) {
         if ( dstCM == null )
             dstCM = src.getColorModel();
@@ -235,12 +366,28 @@ public class ConvolveFilter extends AbstractBufferedImageOp {
      * @param edgeAction what to do at the edges
      */
 	public static void convolve(Kernel kernel, int[] inPixels, int[] outPixels, int width, int height, boolean alpha, int edgeAction) {
+		convolve(kernel, inPixels, outPixels, width, height, alpha, edgeAction, 0, height);
+	}
+
+    /**
+     * Convolve a band of rows of a block of pixels.
+     * @param kernel the kernel
+     * @param inPixels the input pixels
+     * @param outPixels the output pixels
+     * @param width the width
+     * @param height the height
+     * @param alpha include alpha channel
+     * @param edgeAction what to do at the edges
+     * @param startRow the first row of the band
+     * @param endRow the row after the last row of the band
+     */
+	public static void convolve(Kernel kernel, int[] inPixels, int[] outPixels, int width, int height, boolean alpha, int edgeAction, int startRow, int endRow) {
 		if (kernel.getHeight() == 1)
-			convolveH(kernel, inPixels, outPixels, width, height, alpha, edgeAction);
+			convolveH(kernel, inPixels, outPixels, width, height, alpha, edgeAction, startRow, endRow);
 		else if (kernel.getWidth() == 1)
-			convolveV(kernel, inPixels, outPixels, width, height, alpha, edgeAction);
+			convolveV(kernel, inPixels, outPixels, width, height, alpha, edgeAction, startRow, endRow);
 		else
-			convolveHV(kernel, inPixels, outPixels, width, height, alpha, edgeAction);
+			convolveHV(kernel, inPixels, outPixels, width, height, alpha, edgeAction, startRow, endRow);
 	}
 	
 	/**
@@ -254,14 +401,23 @@ public class ConvolveFilter extends AbstractBufferedImageOp {
      * @param edgeAction what to do at the edges
 	 */
 	public static void convolveHV(Kernel kernel, int[] inPixels, int[] outPixels, int width, int height, boolean alpha, int edgeAction) {
-		int index = 0;
+		convolveHV(kernel, inPixels, outPixels, width, height, alpha, edgeAction, 0, height);
+	}
+
+	/**
+	 * Convolve a band of rows, see convolveHV(Kernel, int[], int[], int, int, boolean, int).
+     * @param startRow the first row of the band
+     * @param endRow the row after the last row of the band
+	 */
+	public static void convolveHV(Kernel kernel, int[] inPixels, int[] outPixels, int width, int height, boolean alpha, int edgeAction, int startRow, int endRow) {
+		int index = startRow*width;
 		float[] matrix = kernel.getKernelData( null );
 		int rows = kernel.getHeight();
 		int cols = kernel.getWidth();
 		int rows2 = rows/2;
 		int cols2 = cols/2;
 
-		for (int y = 0; y < height; y++) {
+		for (int y = startRow; y < endRow; y++) {
 			for (int x = 0; x < width; x++) {
 				float r = 0, g = 0, b = 0, a = 0;
 
@@ -318,12 +474,21 @@ public class ConvolveFilter extends AbstractBufferedImageOp {
      * @param edgeAction what to do at the edges
 	 */
 	public static void convolveH(Kernel kernel, int[] inPixels, int[] outPixels, int width, int height, boolean alpha, int edgeAction) {
-		int index = 0;
+		convolveH(kernel, inPixels, outPixels, width, height, alpha, edgeAction, 0, height);
+	}
+
+	/**
+	 * Convolve a band of rows, see convolveH(Kernel, int[], int[], int, int, boolean, int).
+     * @param startRow the first row of the band
+     * @param endRow the row after the last row of the band
+	 */
+	public static void convolveH(Kernel kernel, int[] inPixels, int[] outPixels, int width, int height, boolean alpha, int edgeAction, int startRow, int endRow) {
+		int index = startRow*width;
 		float[] matrix = kernel.getKernelData( null );
 		int cols = kernel.getWidth();
 		int cols2 = cols/2;
 
-		for (int y = 0; y < height; y++) {
+		for (int y = startRow; y < endRow; y++) {
 			int ioffset = y*width;
 			for (int x = 0; x < width; x++) {
 				float r = 0, g = 0, b = 0, a = 0;
@@ -371,12 +536,21 @@ public class ConvolveFilter extends AbstractBufferedImageOp {
      * @param edgeAction what to do at the edges
 	 */
 	public static void convolveV(Kernel kernel, int[] inPixels, int[] outPixels, int width, int height, boolean alpha, int edgeAction) {
-		int index = 0;
+		convolveV(kernel, inPixels, outPixels, width, height, alpha, edgeAction, 0, height);
+	}
+
+	/**
+	 * Convolve a band of rows, see convolveV(Kernel, int[], int[], int, int, boolean, int).
+     * @param startRow the first row of the band
+     * @param endRow the row after the last row of the band
+	 */
+	public static void convolveV(Kernel kernel, int[] inPixels, int[] outPixels, int width, int height, boolean alpha, int edgeAction, int startRow, int endRow) {
+		int index = startRow*width;
 		float[] matrix = kernel.getKernelData( null );
 		int rows = kernel.getHeight();
 		int rows2 = rows/2;
 
-		for (int y = 0; y < height; y++) {
+		for (int y = startRow; y < endRow; y++) {
 			for (int x = 0; x < width; x++) {
 				float r = 0, g = 0, b = 0, a = 0;
 
@@ -18,6 +18,9 @@ package com.jhlabs.image;
 
 import java.awt.image.BufferedImage;
 import java.awt.image.Kernel;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * A filter which applies Gaussian blur to an image. This is a subclass of ConvolveFilter
@@ -35,6 +38,14 @@ public class GaussianFilter extends ConvolveFilter {
      * The convolution kernel.
      */
 	protected Kernel kernel;
+
+	// Kernels are immutable, and the same few radii are used over and over. Least recently used ones are dropped
+	private static final int MAX_CACHED_KERNELS = 16;
+	private static final Map<Float, Kernel> kernelCache = Collections.synchronizedMap(new LinkedHashMap<Float, Kernel>(MAX_CACHED_KERNELS, 0.75f, true) {
+		protected boolean removeEldestEntry(Map.Entry<Float, Kernel> eldest) {
+			return size() > MAX_CACHED_KERNELS;
+		}
+	});
 	
 	/**
 	 * Construct a Gaussian filter.
@@ -60,7 +71,7 @@ public class GaussianFilter extends ConvolveFilter {
 	 */
 	public void setRadius(float radius) {
 		this.radius = radius;
-		kernel = makeKernel(radius);
+		kernel = kernelCache.computeIfAbsent(radius, GaussianFilter::makeKernel);
 	}
 	
 	/**
@@ -79,16 +90,19 @@ public class GaussianFilter extends ConvolveFilter {
         if ( dst == null )
             dst = createCompatibleDestImage( src, null );
 
-        int[] inPixels = new int[width*height];
-        int[] outPixels = new int[width*height];
+        int[] inPixels = borrowBuffer(width*height);
+        int[] outPixels = borrowBuffer(width*height);
         src.getRGB( 0, 0, width, height, inPixels, 0, width );
 
 		if ( radius > 0 ) {
-			convolveAndTranspose(kernel, inPixels, outPixels, width, height, alpha, alpha && premultiplyAlpha, false, CLAMP_EDGES);
-			convolveAndTranspose(kernel, outPixels, inPixels, height, width, alpha, false, alpha && premultiplyAlpha, CLAMP_EDGES);
+			// Each band of input rows becomes a band of output columns, so bands never write to the same pixels
+			forEachBand(width, height, parallel, (startRow, endRow) -> convolveAndTranspose(kernel, inPixels, outPixels, width, height, alpha, alpha && premultiplyAlpha, false, CLAMP_EDGES, startRow, endRow));
+			forEachBand(height, width, parallel, (startRow, endRow) -> convolveAndTranspose(kernel, outPixels, inPixels, height, width, alpha, false, alpha && premultiplyAlpha, CLAMP_EDGES, startRow, endRow));
 		}
 
         dst.setRGB( 0, 0, width, height, inPixels, 0, width );
+        returnBuffer(inPixels);
+        returnBuffer(outPixels);
         return dst;
     }
 
@@ -103,11 +117,27 @@ public class GaussianFilter extends ConvolveFilter {
      * @param edgeAction what to do at the edges
      */
 	public static void convolveAndTranspose(Kernel kernel, int[] inPixels, int[] outPixels, int width, int height, boolean alpha, boolean premultiply, boolean unpremultiply, int edgeAction) {
+		convolveAndTranspose(kernel, inPixels, outPixels, width, height, alpha, premultiply, unpremultiply, edgeAction, 0, height);
+	}
+
+    /**
+     * Blur and transpose a band of rows of a block of ARGB pixels.
+     * @param kernel the blur kernel
+     * @param inPixels the input pixels
+     * @param outPixels the output pixels
+     * @param width the width of the pixel array
+     * @param height the height of the pixel array
+     * @param alpha whether to blur the alpha channel
+     * @param edgeAction what to do at the edges
+     * @param startRow the first row of the band
+     * @param endRow the row after the last row of the band
+     */
+	public static void convolveAndTranspose(Kernel kernel, int[] inPixels, int[] outPixels, int width, int height, boolean alpha, boolean premultiply, boolean unpremultiply, int edgeAction, int startRow, int endRow) {
 		float[] matrix = kernel.getKernelData( null );
 		int cols = kernel.getWidth();
 		int cols2 = cols/2;
 
-		for (int y = 0; y < height; y++) {
+		for (int y = startRow; y < endRow; y++) {
 			int index = y;
 			int ioffset = y*width;
 			for (int x = 0; x < width; x++) {
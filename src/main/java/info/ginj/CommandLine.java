@@ -0,0 +1,148 @@
+package info.ginj;
+
+import info.ginj.util.Misc;
+import info.ginj.util.PerfLog;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Command-line mode, to take screenshots from scripts, e.g.
+ * <pre>java -jar ginj.jar --capture 0,0,800,600 --out capture.png</pre>
+ * This mode does not load the look and feel, nor create any window: it just grabs the area with a Robot and writes it.
+ * Note: it must not reference Swing classes, so that they are never loaded.
+ */
+public class CommandLine {
+
+    private static final String OPTION_CAPTURE = "--capture";
+    private static final String OPTION_OUT = "--out";
+    private static final String OPTION_HELP = "--help";
+    private static final String AREA_ALL = "all";
+
+    /**
+     * @param args the command line arguments
+     * @return true if the arguments are meant for the command-line mode. Other arguments are commands for the
+     * interactive mode, see SingleInstance
+     */
+    public static boolean isCommandLine(String[] args) {
+        return args.length > 0 && args[0].startsWith("--");
+    }
+
+    /**
+     * Runs the command-line mode
+     * @param args the command line arguments
+     * @return the exit status
+     */
+    public static int run(String[] args) {
+        String areaSpec = null;
+        String outName = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case OPTION_CAPTURE -> {
+                    if (++i < args.length) areaSpec = args[i];
+                }
+                case OPTION_OUT -> {
+                    if (++i < args.length) outName = args[i];
+                }
+                case OPTION_HELP -> {
+                    printUsage();
+                    return Ginj.ERR_STATUS_OK;
+                }
+                default -> {
+                    System.err.println("Unknown argument: " + args[i]);
+                    printUsage();
+                    return Ginj.ERR_STATUS_ARGS;
+                }
+            }
+        }
+        if (areaSpec == null || outName == null) {
+            printUsage();
+            return Ginj.ERR_STATUS_ARGS;
+        }
+
+        final Rectangle area;
+        try {
+            area = parseArea(areaSpec);
+        }
+        catch (IllegalArgumentException e) {
+            System.err.println("Invalid area '" + areaSpec + "': " + e.getMessage());
+            return Ginj.ERR_STATUS_ARGS;
+        }
+
+        final File outFile = new File(outName);
+        final String format = getFormat(outFile);
+        try {
+            final BufferedImage image = new Robot().createScreenCapture(area);
+            if (!ImageIO.write(image, format, outFile)) {
+                System.err.println("Unsupported image format: " + format);
+                return Ginj.ERR_STATUS_ARGS;
+            }
+        }
+        catch (AWTException | SecurityException e) {
+            System.err.println("Screen capture is not allowed: " + e.getMessage());
+            return Ginj.ERR_STATUS_CAPTURE;
+        }
+        catch (IOException e) {
+            System.err.println("Error writing " + outFile.getAbsolutePath() + ": " + e.getMessage());
+            return Ginj.ERR_STATUS_CAPTURE;
+        }
+
+        if (PerfLog.isEnabled()) {
+            final long launchTime = ManagementFactory.getRuntimeMXBean().getStartTime();
+            PerfLog.log("Command line", "Launch to file: " + (System.currentTimeMillis() - launchTime) + " ms");
+        }
+        return Ginj.ERR_STATUS_OK;
+    }
+
+    /**
+     * @param areaSpec "x,y,width,height" in virtual desktop coordinates, or "all" for the whole desktop
+     * @return the corresponding area
+     */
+    static Rectangle parseArea(String areaSpec) {
+        if (AREA_ALL.equals(areaSpec)) {
+            Rectangle2D desktopArea = new Rectangle2D.Double(0, 0, -1, -1);
+            for (GraphicsDevice screenDevice : GraphicsEnvironment.getLocalGraphicsEnvironment().getScreenDevices()) {
+                Rectangle2D.union(desktopArea, screenDevice.getDefaultConfiguration().getBounds(), desktopArea);
+            }
+            return desktopArea.getBounds();
+        }
+        final String[] values = areaSpec.split(",");
+        if (values.length != 4) {
+            throw new IllegalArgumentException("expected x,y,width,height");
+        }
+        try {
+            final Rectangle area = new Rectangle(Integer.parseInt(values[0].trim()), Integer.parseInt(values[1].trim()),
+                    Integer.parseInt(values[2].trim()), Integer.parseInt(values[3].trim()));
+            if (area.width <= 0 || area.height <= 0) {
+                throw new IllegalArgumentException("width and height must be positive");
+            }
+            return area;
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("not a number (" + e.getMessage() + ")");
+        }
+    }
+
+    /**
+     * @return the ImageIO format matching the file extension, PNG by default
+     */
+    private static String getFormat(File file) {
+        final String name = file.getName();
+        final int dotIndex = name.lastIndexOf('.');
+        if (dotIndex < 0 || dotIndex == name.length() - 1) {
+            return Misc.IMAGE_FORMAT_PNG;
+        }
+        return name.substring(dotIndex + 1).toLowerCase();
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: " + Ginj.getAppName() + " [" + OPTION_CAPTURE + " x,y,width,height|" + AREA_ALL + " " + OPTION_OUT + " file.png]");
+        System.err.println("Without arguments, " + Ginj.getAppName() + " starts in interactive mode, or shows the running instance.");
+        System.err.println("Interactive commands: " + Ginj.getAppName() + " " + SingleInstance.COMMAND_CAPTURE + "|" + SingleInstance.COMMAND_HISTORY + "|" + SingleInstance.COMMAND_MORE);
+    }
+}
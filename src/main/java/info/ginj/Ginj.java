@@ -7,7 +7,6 @@ import info.ginj.ui.laf.GinjSynthLookAndFeel;
 import info.ginj.util.Misc;
 
 import javax.swing.*;
-import javax.swing.plaf.synth.SynthLookAndFeel;
 import java.awt.*;
 import java.io.File;
 import java.time.LocalDateTime;
@@ -26,6 +25,8 @@ public class Ginj {
     public static final int ERR_STATUS_TRANSPARENCY = -1;
     public static final int ERR_STATUS_LAF = -2;
     public static final int ERR_STATUS_LOAD_IMG = -3;
+    public static final int ERR_STATUS_ARGS = -4;
+    public static final int ERR_STATUS_CAPTURE = -5;
     public static final int ERR_STATUS_OK = 0;
 
     // caching
@@ -36,6 +37,21 @@ public class Ginj {
     private static TargetPrefs targetPrefs;
 
     public static void main(String[] args) {
+        // Scripted capture: no look and feel, no window
+        if (CommandLine.isCommandLine(args)) {
+            System.exit(CommandLine.run(args));
+        }
+
+        // If Ginj is already running, let it handle the command, with everything already loaded
+        final String command = (args.length > 0) ? args[0] : SingleInstance.COMMAND_SHOW;
+        if (!SingleInstance.isCommand(command)) {
+            System.err.println("Unknown command: " + command + ". Valid commands are " + SingleInstance.COMMAND_CAPTURE + ", " + SingleInstance.COMMAND_HISTORY + " and " + SingleInstance.COMMAND_MORE);
+            System.exit(ERR_STATUS_ARGS);
+        }
+        if (SingleInstance.sendToRunningInstance(command)) {
+            System.exit(ERR_STATUS_OK);
+        }
+
         // Determine what the GraphicsDevice can support.
         GraphicsEnvironment ge = GraphicsEnvironment.getLocalGraphicsEnvironment();
         GraphicsDevice gd = ge.getDefaultScreenDevice();
@@ -46,10 +62,10 @@ public class Ginj {
             System.exit(ERR_STATUS_TRANSPARENCY);
         }
 
-        SynthLookAndFeel ginjLookAndFeel = new GinjSynthLookAndFeel();
         try {
-            ginjLookAndFeel.load(Ginj.class.getResourceAsStream(LAF_XML), Ginj.class);
-            UIManager.setLookAndFeel(ginjLookAndFeel);
+            // Note: the look and feel is installed from its own class so that this one does not refer to Swing classes,
+            // which would otherwise be loaded even in command-line mode, when this class is verified
+            GinjSynthLookAndFeel.install();
 //            UIManager.setLookAndFeel(EaSynthLookAndFeel.class.getName());
 //            UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
         }
@@ -69,7 +85,10 @@ public class Ginj {
 
         javax.swing.SwingUtilities.invokeLater(() -> {
             starWindow = new StarWindow();
-            starWindow.setVisible(true);});
+            starWindow.setVisible(true);
+            starWindow.executeCommand(command);
+            SingleInstance.startListening(receivedCommand -> SwingUtilities.invokeLater(() -> starWindow.executeCommand(receivedCommand)));
+        });
 
     }
 
@@ -113,6 +132,10 @@ public class Ginj {
         return new File(System.getProperty("user.home") + File.separator + "." + getAppName() + File.separator + "settings.properties");
     }
 
+    public static File getInstanceFile() {
+        return new File(System.getProperty("user.home") + File.separator + "." + getAppName() + File.separator + "instance.properties");
+    }
+
     public static File getTargetPrefsFile() {
         return new File(System.getProperty("user.home") + File.separator + "." + getAppName() + File.separator + "targetPrefs.xml");
     }
@@ -0,0 +1,141 @@
+package info.ginj;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Properties;
+import java.util.function.Consumer;
+
+/**
+ * Makes sure only one instance of Ginj runs per user: the first instance listens on a loopback socket, and later
+ * launches just hand their command over to it and exit, instead of starting a new JVM with its own windows.
+ * The port and a random token are stored in a file only readable by the user, so that other local users or
+ * processes cannot send commands.
+ * Note: like CommandLine, this class must not reference Swing classes, so that the hand-over stays fast.
+ */
+public class SingleInstance {
+
+    public static final String COMMAND_SHOW = "show";
+    public static final String COMMAND_CAPTURE = "capture";
+    public static final String COMMAND_HISTORY = "history";
+    public static final String COMMAND_MORE = "more";
+
+    private static final String KEY_PORT = "port";
+    private static final String KEY_TOKEN = "token";
+    private static final String RESPONSE_OK = "OK";
+    private static final int CONNECT_TIMEOUT_MS = 500;
+    private static final int READ_TIMEOUT_MS = 2000;
+
+    /**
+     * @param command a command passed as the first argument
+     * @return true if it is one of the commands handled by the running instance
+     */
+    public static boolean isCommand(String command) {
+        return COMMAND_SHOW.equals(command) || COMMAND_CAPTURE.equals(command) || COMMAND_HISTORY.equals(command) || COMMAND_MORE.equals(command);
+    }
+
+    /**
+     * Sends a command to the running instance, if any
+     * @param command the command to send
+     * @return true if a running instance accepted the command, false if this instance must start normally
+     */
+    public static boolean sendToRunningInstance(String command) {
+        final File instanceFile = Ginj.getInstanceFile();
+        if (!instanceFile.exists()) {
+            return false;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(instanceFile)) {
+            properties.load(in);
+            final int port = Integer.parseInt(properties.getProperty(KEY_PORT));
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), CONNECT_TIMEOUT_MS);
+                socket.setSoTimeout(READ_TIMEOUT_MS);
+                final Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+                writer.write(properties.getProperty(KEY_TOKEN) + " " + command + "\n");
+                writer.flush();
+                final BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                return RESPONSE_OK.equals(reader.readLine());
+            }
+        }
+        catch (IOException | NumberFormatException e) {
+            // No instance is listening anymore (e.g. it crashed), or the file is corrupt
+            return false;
+        }
+    }
+
+    /**
+     * Starts listening for commands from later launches
+     * @param commandHandler called for each received command, from the listener thread
+     */
+    public static void startListening(Consumer<String> commandHandler) {
+        final ServerSocket serverSocket;
+        final String token;
+        try {
+            serverSocket = new ServerSocket(0, 5, InetAddress.getLoopbackAddress());
+            byte[] tokenBytes = new byte[16];
+            new SecureRandom().nextBytes(tokenBytes);
+            StringBuilder tokenBuilder = new StringBuilder();
+            for (byte tokenByte : tokenBytes) {
+                tokenBuilder.append(String.format("%02x", tokenByte));
+            }
+            token = tokenBuilder.toString();
+            writeInstanceFile(serverSocket.getLocalPort(), token);
+        }
+        catch (IOException e) {
+            // Not fatal, later launches will just start their own instance
+            e.printStackTrace();
+            return;
+        }
+
+        Thread listenerThread = new Thread(() -> {
+            while (!serverSocket.isClosed()) {
+                try (Socket socket = serverSocket.accept()) {
+                    socket.setSoTimeout(READ_TIMEOUT_MS);
+                    final BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                    final String line = reader.readLine();
+                    if (line == null || !line.startsWith(token + " ")) {
+                        // Not from a Ginj launch by this user
+                        continue;
+                    }
+                    final String command = line.substring(token.length() + 1);
+                    final Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+                    writer.write(RESPONSE_OK + "\n");
+                    writer.flush();
+                    commandHandler.accept(command);
+                }
+                catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }, "Ginj instance listener");
+        listenerThread.setDaemon(true);
+        listenerThread.start();
+    }
+
+    private static void writeInstanceFile(int port, String token) throws IOException {
+        final File instanceFile = Ginj.getInstanceFile();
+        //noinspection ResultOfMethodCallIgnored
+        instanceFile.getParentFile().mkdirs();
+        // Restrict access before writing the token
+        //noinspection ResultOfMethodCallIgnored
+        instanceFile.delete();
+        //noinspection ResultOfMethodCallIgnored
+        instanceFile.createNewFile();
+        //noinspection ResultOfMethodCallIgnored
+        instanceFile.setReadable(false, false);
+        //noinspection ResultOfMethodCallIgnored
+        instanceFile.setReadable(true, true);
+        Properties properties = new Properties();
+        properties.setProperty(KEY_PORT, String.valueOf(port));
+        properties.setProperty(KEY_TOKEN, token);
+        try (OutputStream out = new FileOutputStream(instanceFile)) {
+            properties.store(out, Ginj.getAppName() + " running instance");
+        }
+        instanceFile.deleteOnExit();
+    }
+}
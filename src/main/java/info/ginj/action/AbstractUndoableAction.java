@@ -4,12 +4,25 @@ import javax.swing.undo.AbstractUndoableEdit;
 import java.awt.*;
 
 public abstract class AbstractUndoableAction extends AbstractUndoableEdit {
+    // Rough size of an action storing a few numbers: object header, fields and references
+    protected static final long COMPACT_ACTION_SIZE = 64;
+
     public abstract void execute();
 
     public void setTargetPoint(Point point) {
         // default empty implementation
     }
 
+    /**
+     * Returns the approximate memory retained by this action, to bound the size of the undo history.
+     * Actions only store the overlay position in the stack and the change in geometry, except when they must keep
+     * the overlay itself (e.g. to restore a deleted overlay)
+     * @return the estimated size, in bytes
+     */
+    public long getEstimatedSize() {
+        return COMPACT_ACTION_SIZE;
+    }
+
     public String toString() {
         return super.toString() + " (" + getPresentationName() + ")";
     }
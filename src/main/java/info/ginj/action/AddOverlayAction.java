@@ -19,17 +19,23 @@ public class AddOverlayAction extends AbstractUndoableAction {
     }
 
     public void execute() {
+        panel.addOverlay(overlay);
         panel.setSelectedOverlay(overlay);
-        panel.add(overlay, Integer.valueOf(panel.highestLayer() + 1));
     }
 
     public void undo() {
         super.undo();
-        panel.remove(overlay);
+        panel.removeOverlay(overlay);
     }
 
     public void redo() {
         super.redo();
         execute();
     }
+
+    @Override
+    public long getEstimatedSize() {
+        // The overlay itself must be kept, to be added again
+        return COMPACT_ACTION_SIZE + overlay.getEstimatedSize();
+    }
 }
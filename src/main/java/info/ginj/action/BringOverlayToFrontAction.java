@@ -3,32 +3,30 @@ package info.ginj.action;
 import info.ginj.tool.Overlay;
 import info.ginj.ui.ImageEditorPane;
 
-import javax.swing.*;
-
 public class BringOverlayToFrontAction extends AbstractUndoableAction {
-    private final Overlay overlay;
     private final ImageEditorPane panel;
-    private final int originalLayer;
+    private final String overlayName;
+    private final int originalIndex;
 
 
     public BringOverlayToFrontAction(Overlay overlay, ImageEditorPane panel) {
         super();
-        this.overlay = overlay;
         this.panel = panel;
-        originalLayer = JLayeredPane.getLayer(overlay);
+        overlayName = overlay.getPresentationName();
+        originalIndex = panel.getOverlayIndex(overlay);
     }
 
     public String getPresentationName() {
-        return "bring " + overlay.getPresentationName().toLowerCase() + " to front";
+        return "bring " + overlayName.toLowerCase() + " to front";
     }
 
     public void execute() {
-        panel.setLayer(overlay, panel.highestLayer() + 1);
+        panel.moveOverlay(panel.getOverlays().get(originalIndex), panel.getOverlays().size() - 1);
     }
 
     public void undo() {
         super.undo();
-        panel.setLayer(overlay, originalLayer);
+        panel.moveOverlay(panel.getOverlays().get(panel.getOverlays().size() - 1), originalIndex);
     }
 
     public void redo() {
@@ -1,33 +1,38 @@
 package info.ginj.action;
 
 import info.ginj.tool.Overlay;
+import info.ginj.ui.ImageEditorPane;
 
 import java.awt.*;
 
 public class ChangeOverlayColorAction extends AbstractUndoableAction {
-    private final Overlay overlay;
-    private final Color newColor;
-    private final Color originalColor;
+    private final ImageEditorPane panel;
+    private final int overlayIndex;
+    private final String overlayName;
+    private final int newColor;
+    private final int originalColor;
 
 
-    public ChangeOverlayColorAction(Overlay overlay, Color newColor) {
+    public ChangeOverlayColorAction(ImageEditorPane panel, Overlay overlay, Color newColor) {
         super();
-        this.overlay = overlay;
-        originalColor = overlay.getColor();
-        this.newColor = newColor;
+        this.panel = panel;
+        overlayIndex = panel.getOverlayIndex(overlay);
+        overlayName = overlay.getPresentationName();
+        originalColor = overlay.getColor().getRGB();
+        this.newColor = newColor.getRGB();
     }
 
     public String getPresentationName() {
-        return "change " + overlay.getPresentationName().toLowerCase() + " color";
+        return "change " + overlayName.toLowerCase() + " color";
     }
 
     public void execute() {
-        overlay.setColor(newColor);
+        panel.getOverlays().get(overlayIndex).setColor(new Color(newColor, true));
     }
 
     public void undo() {
         super.undo();
-        overlay.setColor(originalColor);
+        panel.getOverlays().get(overlayIndex).setColor(new Color(originalColor, true));
     }
 
     public void redo() {
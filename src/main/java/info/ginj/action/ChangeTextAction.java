@@ -0,0 +1,45 @@
+package info.ginj.action;
+
+import info.ginj.tool.text.TextOverlay;
+import info.ginj.ui.ImageEditorPane;
+
+/**
+ * Changes the text of a text overlay, as typed in its text area during one editing session
+ */
+public class ChangeTextAction extends AbstractUndoableAction {
+    private final ImageEditorPane panel;
+    private final int overlayIndex;
+    private final String originalText;
+    private final String newText;
+
+    public ChangeTextAction(ImageEditorPane panel, TextOverlay overlay, String originalText, String newText) {
+        super();
+        this.panel = panel;
+        overlayIndex = panel.getOverlayIndex(overlay);
+        this.originalText = originalText;
+        this.newText = newText;
+    }
+
+    public String getPresentationName() {
+        return "type text";
+    }
+
+    public void execute() {
+        ((TextOverlay) panel.getOverlays().get(overlayIndex)).setText(newText);
+    }
+
+    public void undo() {
+        super.undo();
+        ((TextOverlay) panel.getOverlays().get(overlayIndex)).setText(originalText);
+    }
+
+    public void redo() {
+        super.redo();
+        execute();
+    }
+
+    @Override
+    public long getEstimatedSize() {
+        return COMPACT_ACTION_SIZE + 2L * (originalText.length() + newText.length());
+    }
+}
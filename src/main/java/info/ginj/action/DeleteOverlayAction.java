@@ -3,19 +3,16 @@ package info.ginj.action;
 import info.ginj.tool.Overlay;
 import info.ginj.ui.ImageEditorPane;
 
-import javax.swing.*;
-
 public class DeleteOverlayAction extends AbstractUndoableAction {
 
     private final Overlay overlay;
     private final ImageEditorPane panel;
-    private final int layer;
+    private int index;
 
     public DeleteOverlayAction(Overlay overlay, ImageEditorPane panel) {
         super();
         this.overlay = overlay;
         this.panel = panel;
-        this.layer = JLayeredPane.getLayer(overlay);
     }
 
     public String getPresentationName() {
@@ -23,12 +20,12 @@ public class DeleteOverlayAction extends AbstractUndoableAction {
     }
 
     public void execute() {
-        panel.remove(overlay);
+        index = panel.removeOverlay(overlay);
     }
 
     public void undo() {
         super.undo();
-        panel.add(overlay, layer);
+        panel.addOverlay(overlay, index);
         panel.setSelectedOverlay(overlay);
     }
 
@@ -37,4 +34,10 @@ public class DeleteOverlayAction extends AbstractUndoableAction {
         execute();
     }
 
+    @Override
+    public long getEstimatedSize() {
+        // The overlay itself must be kept, to be added again
+        return COMPACT_ACTION_SIZE + overlay.getEstimatedSize();
+    }
+
 }
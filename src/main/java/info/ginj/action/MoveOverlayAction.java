@@ -1,34 +1,49 @@
 package info.ginj.action;
 
 import info.ginj.tool.Overlay;
+import info.ginj.ui.ImageEditorPane;
 
+import javax.swing.undo.UndoableEdit;
 import java.awt.*;
 
+/**
+ * Moves an overlay. To keep the undo history compact, the overlay is only referenced by its position in the stack of
+ * overlays, which is the same whenever the action is undone or redone, and the move is stored as a delta.
+ * Consecutive moves of the same overlay are merged into one action.
+ */
 public class MoveOverlayAction extends AbstractUndoableAction {
-    private final Overlay overlay;
-    private final Point initialPosition;
-    private Point finalPosition;
+    private final ImageEditorPane panel;
+    private final int overlayIndex;
+    private final String overlayName;
+    private final int initialX;
+    private final int initialY;
+    private int deltaX;
+    private int deltaY;
 
-    public MoveOverlayAction(Overlay overlay, Point initialPosition) {
-        this.overlay = overlay;
-        this.initialPosition = initialPosition;
+    public MoveOverlayAction(ImageEditorPane panel, Overlay overlay, Point initialPosition) {
+        this.panel = panel;
+        overlayIndex = panel.getOverlayIndex(overlay);
+        overlayName = overlay.getPresentationName();
+        initialX = initialPosition.x;
+        initialY = initialPosition.y;
     }
 
     public String getPresentationName() {
-        return "move " + overlay.getPresentationName().toLowerCase();
+        return "move " + overlayName.toLowerCase();
     }
 
     public void setTargetPoint(Point finalPosition) {
-        this.finalPosition = finalPosition;
+        deltaX = finalPosition.x - initialX;
+        deltaY = finalPosition.y - initialY;
     }
 
     public void execute() {
-        overlay.moveDrawing(finalPosition.x - initialPosition.x, finalPosition.y - initialPosition.y);
+        panel.getOverlays().get(overlayIndex).moveDrawing(deltaX, deltaY);
     }
 
     public void undo() {
         super.undo();
-        overlay.moveDrawing(- finalPosition.x + initialPosition.x, - finalPosition.y + initialPosition.y);
+        panel.getOverlays().get(overlayIndex).moveDrawing(-deltaX, -deltaY);
     }
 
     public void redo() {
@@ -36,4 +51,17 @@ public class MoveOverlayAction extends AbstractUndoableAction {
         execute();
     }
 
+    @Override
+    public boolean addEdit(UndoableEdit anEdit) {
+        if (anEdit instanceof MoveOverlayAction) {
+            final MoveOverlayAction nextMove = (MoveOverlayAction) anEdit;
+            if (nextMove.panel == panel && nextMove.overlayIndex == overlayIndex) {
+                deltaX += nextMove.deltaX;
+                deltaY += nextMove.deltaY;
+                nextMove.die();
+                return true;
+            }
+        }
+        return false;
+    }
 }
@@ -1,38 +1,52 @@
 package info.ginj.action;
 
 import info.ginj.tool.Overlay;
+import info.ginj.ui.ImageEditorPane;
 
+import javax.swing.undo.UndoableEdit;
 import java.awt.*;
 
+/**
+ * Moves a handle of an overlay. Like MoveOverlayAction, the overlay is referenced by its position in the stack of
+ * overlays, and consecutive moves of the same handle are merged into one action.
+ */
 public class ResizeOverlayAction extends AbstractUndoableAction {
-    private final Overlay overlay;
+    private final ImageEditorPane panel;
+    private final int overlayIndex;
+    private final String overlayName;
     private final int handleIndex;
-    private final Point initialPosition;
-    private Point finalPosition;
+    private final int initialX;
+    private final int initialY;
+    private int finalX;
+    private int finalY;
 
-    public ResizeOverlayAction(Overlay overlay, int handleIndex, Point initialPosition) {
-        this.overlay = overlay;
+    public ResizeOverlayAction(ImageEditorPane panel, Overlay overlay, int handleIndex, Point initialPosition) {
+        this.panel = panel;
+        overlayIndex = panel.getOverlayIndex(overlay);
+        overlayName = overlay.getPresentationName();
         this.handleIndex = handleIndex;
-        this.initialPosition = initialPosition;
+        initialX = initialPosition.x;
+        initialY = initialPosition.y;
     }
 
     public String getPresentationName() {
-        return "resize " + overlay.getPresentationName().toLowerCase();
+        return "resize " + overlayName.toLowerCase();
     }
 
     public void setTargetPoint(Point finalPosition) {
-        this.finalPosition = finalPosition;
+        finalX = finalPosition.x;
+        finalY = finalPosition.y;
     }
 
 
     public void execute() {
-        overlay.moveHandle(handleIndex, finalPosition);
+        panel.getOverlays().get(overlayIndex).moveHandle(handleIndex, new Point(finalX, finalY));
     }
 
 
     public void undo() {
         super.undo();
-        overlay.moveHandle(handleIndex, initialPosition);
+        panel.getOverlays().get(overlayIndex).moveHandle(handleIndex, new Point(initialX, initialY));
     }
 
     public void redo() {
@@ -40,4 +54,17 @@ public class ResizeOverlayAction extends AbstractUndoableAction {
         execute();
     }
 
+    @Override
+    public boolean addEdit(UndoableEdit anEdit) {
+        if (anEdit instanceof ResizeOverlayAction) {
+            final ResizeOverlayAction nextResize = (ResizeOverlayAction) anEdit;
+            if (nextResize.panel == panel && nextResize.overlayIndex == overlayIndex && nextResize.handleIndex == handleIndex) {
+                finalX = nextResize.finalX;
+                finalY = nextResize.finalY;
+                nextResize.die();
+                return true;
+            }
+        }
+        return false;
+    }
 }
@@ -0,0 +1,167 @@
+package info.ginj.action;
+
+import info.ginj.util.PerfLog;
+
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.UndoableEdit;
+
+/**
+ * The undo history of the capture editor, replacing a plain UndoManager.
+ * - Edits are kept in a ring buffer, so undo, redo and adding an edit take constant time, even when the oldest edits
+ * are dropped;
+ * - The history is bounded both in number of edits and in estimated memory: when adding an edit exceeds a budget, the
+ * oldest edits are dropped;
+ * - An edit is merged into the previous one when the latter accepts it (see UndoableEdit.addEdit()), e.g. consecutive
+ * moves of the same overlay become a single edit.
+ */
+public class UndoHistory {
+    // Each kept edit counts for the estimated size of the action it holds (AbstractUndoableAction.getEstimatedSize()),
+    // estimated again when later actions are merged into it. The editor only adds actions: this size is only a fallback
+    // for other UndoableEdits
+    private static final long DEFAULT_EDIT_SIZE = 256;
+
+    private final int maxEdits;
+    private final long maxBytes;
+
+    private final UndoableEdit[] edits;
+    private final long[] editSizes;
+    // Index of the oldest edit in the ring
+    private int start = 0;
+    // Number of edits in the history
+    private int count = 0;
+    // Number of edits that are done, the others having been undone and waiting to be redone
+    private int doneCount = 0;
+    private long totalBytes = 0;
+
+    /**
+     * @param maxEdits the maximum number of edits to keep
+     * @param maxBytes the maximum estimated memory used by the kept edits
+     */
+    public UndoHistory(int maxEdits, long maxBytes) {
+        this.maxEdits = Math.max(1, maxEdits);
+        this.maxBytes = maxBytes;
+        edits = new UndoableEdit[this.maxEdits];
+        editSizes = new long[this.maxEdits];
+    }
+
+    /**
+     * Adds an edit that has just been done. Edits that were undone can no longer be redone
+     * @param edit the edit
+     */
+    public void addEdit(UndoableEdit edit) {
+        // Forget undone edits
+        while (count > doneCount) {
+            removeLast();
+        }
+
+        // Try to merge it with the last one
+        if (count > 0) {
+            final int lastIndex = getRingIndex(count - 1);
+            if (edits[lastIndex].addEdit(edit)) {
+                updateSize(lastIndex);
+                trim();
+                return;
+            }
+        }
+
+        if (count == maxEdits) {
+            removeFirst();
+        }
+        final int index = getRingIndex(count);
+        edits[index] = edit;
+        editSizes[index] = 0;
+        count++;
+        doneCount++;
+        updateSize(index);
+        trim();
+    }
+
+    public boolean canUndo() {
+        return doneCount > 0 && edits[getRingIndex(doneCount - 1)].canUndo();
+    }
+
+    public boolean canRedo() {
+        return doneCount < count && edits[getRingIndex(doneCount)].canRedo();
+    }
+
+    public void undo() throws CannotUndoException {
+        if (doneCount == 0) {
+            throw new CannotUndoException();
+        }
+        edits[getRingIndex(doneCount - 1)].undo();
+        doneCount--;
+    }
+
+    public void redo() throws CannotRedoException {
+        if (doneCount == count) {
+            throw new CannotRedoException();
+        }
+        edits[getRingIndex(doneCount)].redo();
+        doneCount++;
+    }
+
+    public String getUndoPresentationName() {
+        return doneCount > 0 ? edits[getRingIndex(doneCount - 1)].getUndoPresentationName() : null;
+    }
+
+    public String getRedoPresentationName() {
+        return doneCount < count ? edits[getRingIndex(doneCount)].getRedoPresentationName() : null;
+    }
+
+    /**
+     * @return the number of edits in the history, done or undone
+     */
+    public int getEditCount() {
+        return count;
+    }
+
+    /**
+     * @return the estimated memory used by the edits in the history, in bytes
+     */
+    public long getEstimatedSize() {
+        return totalBytes;
+    }
+
+    /**
+     * Drops the oldest edits until the history fits its memory budget, but always keeps the last one
+     */
+    private void trim() {
+        while (totalBytes > maxBytes && count > 1) {
+            removeFirst();
+        }
+        if (PerfLog.isEnabled()) {
+            PerfLog.log("Undo", String.format("%d edits (%d done), %.1f KB", count, doneCount, totalBytes / 1024.0));
+        }
+    }
+
+    private void updateSize(int index) {
+        final UndoableEdit edit = edits[index];
+        final long size = (edit instanceof AbstractUndoableAction) ? ((AbstractUndoableAction) edit).getEstimatedSize() : DEFAULT_EDIT_SIZE;
+        totalBytes += size - editSizes[index];
+        editSizes[index] = size;
+    }
+
+    private void removeFirst() {
+        edits[start].die();
+        totalBytes -= editSizes[start];
+        edits[start] = null;
+        start = (start + 1) % maxEdits;
+        count--;
+        if (doneCount > 0) {
+            doneCount--;
+        }
+    }
+
+    private void removeLast() {
+        final int index = getRingIndex(count - 1);
+        edits[index].die();
+        totalBytes -= editSizes[index];
+        edits[index] = null;
+        count--;
+    }
+
+    private int getRingIndex(int position) {
+        return (start + position) % maxEdits;
+    }
+}
@@ -0,0 +1,188 @@
+package info.ginj.capture;
+
+import info.ginj.util.Rasters;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stitches successive grabs of a scrolling area into one tall image.
+ * Each row of a grab is reduced to a hash computed directly on the int[] raster. The vertical scroll between two grabs
+ * is found by searching a block of rows from the top of the new grab among the rows of the previous one, with a
+ * Rabin-Karp rolling hash over row hashes, and candidate positions are then verified on the whole overlap.
+ * Only the rows that scrolled into view are kept, as strips, so memory is proportional to the output height and not
+ * to the number of grabs. Of the previous grab, only its row hashes are kept.
+ * Only scrolling down is supported, and the grabbed area should only contain the scrolling contents (no fixed header
+ * or scrollbar), as rows that do not move with the contents prevent matching.
+ */
+public class ImageStitcher {
+    // Number of rows searched in the previous grab
+    private static final int PATTERN_ROWS = 24;
+    // Base of the polynomial rolling hash over row hashes
+    private static final int ROLLING_BASE = 31;
+    // Rows that do not match in the overlap (e.g. a blinking cursor) are tolerated up to 1 in this number
+    private static final int TOLERATED_MISMATCH_RATIO = 20;
+
+    public enum Result {
+        /** First grab, stored as is */
+        STARTED,
+        /** New rows were appended */
+        APPENDED,
+        /** The grab is the same as the previous one */
+        UNCHANGED,
+        /** No overlap was found with the previous grab, e.g. because scrolling was too fast. The grab is ignored */
+        NO_MATCH
+    }
+
+    private final List<int[]> strips = new ArrayList<>();
+    private int width = -1;
+    private int height = 0;
+    private int[] previousRowHashes;
+
+    /**
+     * Adds a grab. All grabs must have the same size.
+     * @param grab the new grab
+     * @return what was done with the grab
+     */
+    public Result add(BufferedImage grab) {
+        grab = Rasters.toIntData(grab);
+        final int[] pixels = Rasters.getData(grab);
+        final int grabWidth = grab.getWidth();
+        final int grabHeight = grab.getHeight();
+        if (width == -1) {
+            width = grabWidth;
+        }
+        else if (grabWidth != width) {
+            throw new IllegalArgumentException("All grabs must have the same width");
+        }
+        final int[] rowHashes = hashRows(pixels, grabWidth, grabHeight);
+
+        if (previousRowHashes == null) {
+            appendRows(pixels, 0, grabHeight);
+            previousRowHashes = rowHashes;
+            return Result.STARTED;
+        }
+
+        if (matches(previousRowHashes, rowHashes, 0, true)) {
+            return Result.UNCHANGED;
+        }
+        final int scroll = findScroll(previousRowHashes, rowHashes);
+        if (scroll > 0) {
+            // Only remember this grab if it is a valid reference for the next one
+            previousRowHashes = rowHashes;
+            // The last "scroll" rows are new
+            appendRows(pixels, grabHeight - scroll, grabHeight);
+            return Result.APPENDED;
+        }
+        if (matches(previousRowHashes, rowHashes, 0, false)) {
+            // Almost the same, e.g. a blinking cursor. It could also be a small scroll over sparse contents, so the
+            // previous grab stays the reference, and the rows of such a scroll are found when compared to the next grab
+            return Result.UNCHANGED;
+        }
+        return Result.NO_MATCH;
+    }
+
+    /**
+     * @return the height of the stitched image so far
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Assembles the strips into the final image
+     * @return the stitched image, or null if no grab was added
+     */
+    public BufferedImage getImage() {
+        if (height == 0) {
+            return null;
+        }
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        final int[] pixels = Rasters.getData(image);
+        int offset = 0;
+        for (int[] strip : strips) {
+            System.arraycopy(strip, 0, pixels, offset, strip.length);
+            offset += strip.length;
+        }
+        return image;
+    }
+
+    private void appendRows(int[] pixels, int firstRow, int endRow) {
+        int[] strip = new int[(endRow - firstRow) * width];
+        System.arraycopy(pixels, firstRow * width, strip, 0, strip.length);
+        strips.add(strip);
+        height += endRow - firstRow;
+    }
+
+    private static int[] hashRows(int[] pixels, int width, int height) {
+        int[] rowHashes = new int[height];
+        for (int y = 0; y < height; y++) {
+            // FNV-1a
+            int hash = 0x811C9DC5;
+            final int rowEnd = (y + 1) * width;
+            for (int index = y * width; index < rowEnd; index++) {
+                hash = (hash ^ pixels[index]) * 0x01000193;
+            }
+            rowHashes[y] = hash;
+        }
+        return rowHashes;
+    }
+
+    /**
+     * Finds by how many rows the contents scrolled between two grabs, that is the smallest offset of at least 1 such that
+     * row i of the new grab matches exactly row i + offset of the previous one or, if there is none, the smallest offset
+     * where they match with tolerated mismatches.
+     * @return the offset, or -1 if none was found
+     */
+    static int findScroll(int[] previousRowHashes, int[] rowHashes) {
+        final int rows = rowHashes.length;
+        // Search the first rows of the new grab in the previous one, keeping at least PATTERN_ROWS rows of overlap
+        final int patternRows = Math.min(PATTERN_ROWS, rows);
+        int power = 1;
+        int patternHash = 0;
+        int windowHash = 0;
+        for (int i = 0; i < patternRows; i++) {
+            patternHash = patternHash * ROLLING_BASE + rowHashes[i];
+            // previousRowHashes[0] is not part of the first window to check (offset 1)
+            if (i > 0) power *= ROLLING_BASE;
+        }
+        for (int i = 1; i <= patternRows && i < rows; i++) {
+            windowHash = windowHash * ROLLING_BASE + previousRowHashes[i];
+        }
+        int approximateOffset = -1;
+        for (int offset = 1; offset + patternRows <= rows; offset++) {
+            if (offset > 1) {
+                // Roll the window by one row
+                windowHash = (windowHash - previousRowHashes[offset - 1] * power) * ROLLING_BASE + previousRowHashes[offset + patternRows - 1];
+            }
+            if (windowHash == patternHash) {
+                if (matches(previousRowHashes, rowHashes, offset, true)) {
+                    return offset;
+                }
+                if (approximateOffset == -1 && matches(previousRowHashes, rowHashes, offset, false)) {
+                    approximateOffset = offset;
+                }
+            }
+        }
+        return approximateOffset;
+    }
+
+    /**
+     * Checks that the new grab matches the previous one scrolled by the given offset, on their whole overlap
+     * @param exact if false, some rows may differ (see TOLERATED_MISMATCH_RATIO)
+     */
+    private static boolean matches(int[] previousRowHashes, int[] rowHashes, int offset, boolean exact) {
+        final int overlap = rowHashes.length - offset;
+        int mismatches = 0;
+        for (int i = 0; i < overlap; i++) {
+            if (rowHashes[i] != previousRowHashes[i + offset]) {
+                mismatches++;
+                if (exact || mismatches * TOLERATED_MISMATCH_RATIO > overlap) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
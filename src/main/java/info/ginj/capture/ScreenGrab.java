@@ -0,0 +1,103 @@
+package info.ginj.capture;
+
+import info.ginj.util.DimmedImage;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * The raster of one screen device (or of the whole desktop in "union" mode), plus its dimmed version.
+ * Bounds are expressed in the virtual desktop coordinates, so they can be negative on multi-screen systems.
+ */
+public class ScreenGrab {
+    private final Rectangle bounds;
+    private final CountDownLatch readyLatch = new CountDownLatch(1);
+
+    // Filled by the grabbing thread, then read by the EDT
+    private volatile BufferedImage image;
+    private volatile DimmedImage dimmedImage;
+    private volatile boolean failed = false;
+
+    ScreenGrab(Rectangle bounds) {
+        this.bounds = bounds;
+    }
+
+    public Rectangle getBounds() {
+        return bounds;
+    }
+
+    /**
+     * @return true once the screen has been grabbed, or has failed to be. Its dimmed version may still be in progress
+     */
+    public boolean isReady() {
+        return readyLatch.getCount() == 0;
+    }
+
+    /**
+     * @return true if the screen could not be grabbed. Its image remains null
+     */
+    public boolean isFailed() {
+        return failed;
+    }
+
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    /**
+     * @return the dimmed version of the image. Tiles that are not computed yet are computed when drawn
+     */
+    public DimmedImage getDimmedImage() {
+        return dimmedImage;
+    }
+
+    /**
+     * Blocks until this screen is grabbed, or has failed to be
+     */
+    public void awaitReady() {
+        try {
+            readyLatch.await();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Grabs the screen and starts computing its dimmed version in the background
+     * @param robot the robot to use
+     * @param priorityPoint the point (in virtual desktop coordinates) around which the dimmed version is computed first
+     */
+    void grab(Robot robot, Point priorityPoint) {
+        try {
+            final BufferedImage grabbedImage = robot.createScreenCapture(bounds);
+            // Prepare a dimmed & greyscale version to be used for "unselected area"
+            final DimmedImage dimmed = new DimmedImage(grabbedImage);
+            dimmed.startAsync(new Point(priorityPoint.x - bounds.x, priorityPoint.y - bounds.y));
+            dimmedImage = dimmed;
+            image = grabbedImage;
+        }
+        finally {
+            if (image == null) {
+                failed = true;
+            }
+            readyLatch.countDown();
+        }
+    }
+
+    /**
+     * Marks the screen as failed if it was not grabbed yet, so that threads waiting for it are released
+     */
+    void abandon() {
+        if (readyLatch.getCount() > 0) {
+            failed = true;
+            readyLatch.countDown();
+        }
+    }
+
+    void release() {
+        image = null;
+        dimmedImage = null;
+    }
+}
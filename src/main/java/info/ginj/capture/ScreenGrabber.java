@@ -0,0 +1,194 @@
+package info.ginj.capture;
+
+import info.ginj.util.Rasters;
+
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Grabs the contents of all screens.
+ * In "per device" mode, each screen is grabbed into its own raster: the screen under the mouse is grabbed first,
+ * synchronously, and the other ones are grabbed in a background thread, so that the selection window can be shown
+ * as soon as the first screen is available, no matter how many monitors are attached.
+ * Otherwise, the mega-rectangle encompassing all displays is grabbed at once, as a single raster.
+ * See CaptureSelectionFrame for more info about multi-screen coordinates.
+ */
+public class ScreenGrabber {
+
+    private final Rectangle capturedArea;
+    private final List<Rectangle> screenBounds = new ArrayList<>();
+    private final List<ScreenGrab> grabs = new ArrayList<>();
+    private final List<Runnable> completionListeners = new ArrayList<>();
+    private boolean complete = false;
+
+    public ScreenGrabber(boolean perDevice) {
+        Rectangle2D areaToCapture = new Rectangle2D.Double(0, 0, -1, -1);
+        GraphicsEnvironment graphicsEnvironment = GraphicsEnvironment.getLocalGraphicsEnvironment();
+        for (GraphicsDevice screenDevice : graphicsEnvironment.getScreenDevices()) {
+            final Rectangle bounds = screenDevice.getDefaultConfiguration().getBounds();
+            screenBounds.add(bounds);
+            Rectangle2D.union(areaToCapture, bounds, areaToCapture);
+            if (perDevice) {
+                grabs.add(new ScreenGrab(bounds));
+            }
+        }
+        capturedArea = areaToCapture.getBounds();
+        if (!perDevice) {
+            grabs.add(new ScreenGrab(capturedArea));
+        }
+    }
+
+    /**
+     * @return the rectangle encompassing all screens, in virtual desktop coordinates
+     */
+    public Rectangle getCapturedArea() {
+        return capturedArea;
+    }
+
+    /**
+     * @return the bounds of each physical screen, in virtual desktop coordinates. The first one is the main display
+     */
+    public List<Rectangle> getScreenBounds() {
+        return screenBounds;
+    }
+
+    public List<ScreenGrab> getGrabs() {
+        return grabs;
+    }
+
+    /**
+     * Grabs the screen under the mouse in the calling thread, then starts grabbing the others in the background.
+     * Whatever happens, all grabs end up ready (possibly failed, without image) and completion listeners are called.
+     * @param onGrabReady called (from the background thread) each time another screen becomes available
+     * @throws AWTException if the platform does not allow screen capture
+     */
+    public void start(Runnable onGrabReady) throws AWTException {
+        final PointerInfo pointerInfo = MouseInfo.getPointerInfo();
+        final Point mouseLocation = (pointerInfo == null) ? new Point(0, 0) : pointerInfo.getLocation();
+
+        // Grab screens closest to the mouse first
+        final List<ScreenGrab> orderedGrabs = new ArrayList<>(grabs);
+        orderedGrabs.sort(Comparator.comparingDouble(grab -> distance(grab.getBounds(), mouseLocation)));
+
+        boolean grabbingInBackground = false;
+        try {
+            try {
+                orderedGrabs.get(0).grab(new Robot(), mouseLocation);
+            }
+            catch (RuntimeException e) {
+                // The screen stays black, but other screens can still be grabbed
+                e.printStackTrace();
+            }
+
+            if (orderedGrabs.size() > 1) {
+                Thread grabberThread = new Thread(() -> {
+                    try {
+                        Robot robot = new Robot();
+                        for (ScreenGrab grab : orderedGrabs.subList(1, orderedGrabs.size())) {
+                            grab.grab(robot, mouseLocation);
+                            onGrabReady.run();
+                        }
+                    }
+                    catch (AWTException | RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                    finally {
+                        finish(orderedGrabs);
+                    }
+                }, "Ginj screen grabber");
+                grabberThread.setDaemon(true);
+                grabberThread.start();
+                grabbingInBackground = true;
+            }
+        }
+        finally {
+            if (!grabbingInBackground) {
+                finish(orderedGrabs);
+            }
+        }
+    }
+
+    /**
+     * Releases threads waiting for screens that could not be grabbed, and notifies completion listeners
+     */
+    private void finish(List<ScreenGrab> orderedGrabs) {
+        orderedGrabs.forEach(ScreenGrab::abandon);
+        fireComplete();
+    }
+
+    /**
+     * Registers a task to run once all screens are grabbed (immediately if it is already the case).
+     * Note: the task runs in the grabbing thread.
+     */
+    public void whenComplete(Runnable listener) {
+        synchronized (completionListeners) {
+            if (!complete) {
+                completionListeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    private void fireComplete() {
+        List<Runnable> listeners;
+        synchronized (completionListeners) {
+            complete = true;
+            listeners = new ArrayList<>(completionListeners);
+            completionListeners.clear();
+        }
+        listeners.forEach(Runnable::run);
+    }
+
+    /**
+     * Returns the contents of the given area, waiting for the screens it covers to be grabbed if needed.
+     * Parts of the area that are not on any screen, or on a screen that could not be grabbed, are left black.
+     * The returned image has its own compact raster, so it does not prevent the grabbed screens from being released.
+     * @param area the area to return, in virtual desktop coordinates
+     * @return the image of that area
+     */
+    public BufferedImage crop(Rectangle area) {
+        List<ScreenGrab> coveringGrabs = new ArrayList<>();
+        for (ScreenGrab grab : grabs) {
+            if (grab.getBounds().intersects(area)) {
+                grab.awaitReady();
+                coveringGrabs.add(grab);
+            }
+        }
+
+        if (coveringGrabs.size() == 1 && coveringGrabs.get(0).getBounds().contains(area) && coveringGrabs.get(0).getImage() != null) {
+            // Simple case: area is on a single screen
+            final ScreenGrab grab = coveringGrabs.get(0);
+            return Rasters.copy(grab.getImage(), new Rectangle(area.x - grab.getBounds().x, area.y - grab.getBounds().y, area.width, area.height));
+        }
+
+        // Area spans several screens, or its screen is missing: compose it
+        BufferedImage image = new BufferedImage(area.width, area.height, BufferedImage.TYPE_INT_RGB);
+        final Graphics2D g2d = image.createGraphics();
+        for (ScreenGrab grab : coveringGrabs) {
+            if (grab.getImage() != null) {
+                g2d.drawImage(grab.getImage(), grab.getBounds().x - area.x, grab.getBounds().y - area.y, null);
+            }
+        }
+        g2d.dispose();
+        return image;
+    }
+
+    /**
+     * Drops all grabbed rasters
+     */
+    public void release() {
+        grabs.forEach(ScreenGrab::release);
+    }
+
+    private static double distance(Rectangle bounds, Point point) {
+        if (bounds.contains(point)) return 0;
+        final double dx = Math.max(Math.max(bounds.x - point.x, 0), point.x - (bounds.x + bounds.width));
+        final double dy = Math.max(Math.max(bounds.y - point.y, 0), point.y - (bounds.y + bounds.height));
+        return dx * dx + dy * dy;
+    }
+}
@@ -0,0 +1,102 @@
+package info.ginj.capture;
+
+import info.ginj.util.PerfLog;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Repeatedly grabs an area while the user scrolls its contents, and stitches the grabs as they come.
+ * Stitching is done in the grab thread, right after each grab, so that nothing accumulates: if it is slower than
+ * the grab interval, the next grab is simply delayed.
+ */
+public class ScrollingCapture {
+    private static final long GRAB_INTERVAL_NANOS = 100_000_000L;
+
+    private final Rectangle area;
+    private final ImageStitcher stitcher = new ImageStitcher();
+    private Thread grabThread;
+    private volatile boolean running = false;
+    private volatile int stitchedHeight = 0;
+    private volatile int grabCount = 0;
+    private volatile int unmatchedCount = 0;
+    private volatile ImageStitcher.Result lastResult;
+    private long totalStitchNanos = 0;
+    private long maxStitchNanos = 0;
+
+    /**
+     * @param area the area to grab, in virtual desktop coordinates
+     */
+    public ScrollingCapture(Rectangle area) {
+        this.area = area;
+    }
+
+    public void start() throws AWTException {
+        final Robot robot = new Robot();
+        running = true;
+        grabThread = new Thread(() -> grabLoop(robot), "Ginj scrolling capture");
+        grabThread.setPriority(Thread.MAX_PRIORITY);
+        grabThread.start();
+    }
+
+    /**
+     * Stops grabbing
+     * @return the stitched image
+     */
+    public BufferedImage stop() {
+        running = false;
+        try {
+            grabThread.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (PerfLog.isEnabled() && grabCount > 0) {
+            PerfLog.log("Scrolling capture", String.format("%d grabs, %d unmatched, %d px high, stitching %.1f ms avg / %.1f ms max",
+                    grabCount, unmatchedCount, stitchedHeight, totalStitchNanos / 1e6 / grabCount, maxStitchNanos / 1e6));
+        }
+        return stitcher.getImage();
+    }
+
+    public int getStitchedHeight() {
+        return stitchedHeight;
+    }
+
+    /**
+     * @return the number of grabs for which no overlap was found with the previous one
+     */
+    public int getUnmatchedCount() {
+        return unmatchedCount;
+    }
+
+    /**
+     * @return what happened to the last grab, or null if none was done yet
+     */
+    public ImageStitcher.Result getLastResult() {
+        return lastResult;
+    }
+
+    private void grabLoop(Robot robot) {
+        long scheduledNanos = System.nanoTime();
+        while (running) {
+            long waitNanos;
+            while ((waitNanos = scheduledNanos - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(waitNanos);
+            }
+            final BufferedImage grab = robot.createScreenCapture(area);
+            final long stitchStartNanos = System.nanoTime();
+            final ImageStitcher.Result result = stitcher.add(grab);
+            final long stitchNanos = System.nanoTime() - stitchStartNanos;
+            totalStitchNanos += stitchNanos;
+            maxStitchNanos = Math.max(maxStitchNanos, stitchNanos);
+            grabCount++;
+            if (result == ImageStitcher.Result.NO_MATCH) {
+                unmatchedCount++;
+            }
+            lastResult = result;
+            stitchedHeight = stitcher.getHeight();
+            scheduledNanos = Math.max(scheduledNanos + GRAB_INTERVAL_NANOS, System.nanoTime());
+        }
+    }
+}
@@ -3,20 +3,27 @@ package info.ginj.export.disk;
 import info.ginj.Ginj;
 import info.ginj.export.Exporter;
 import info.ginj.model.Capture;
+import info.ginj.model.Prefs;
 import info.ginj.model.Target;
 import info.ginj.util.Misc;
 import info.ginj.util.UI;
+import info.ginj.video.AnimationConverter;
 
 import javax.imageio.ImageIO;
 import javax.swing.*;
+import javax.swing.filechooser.FileFilter;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
 
 /**
- * This exporter saves the image as a PNG file to disk, and optionally copies its path to the clipboard
+ * This exporter saves the image as a PNG file to disk, and optionally copies its path to the clipboard.
+ * Videos are saved either as recorded (AVI), or converted to an animated GIF or PNG.
  */
 public class DiskExporter extends Exporter {
 
@@ -24,6 +31,7 @@ public class DiskExporter extends Exporter {
     public static final int PROGRESS_SAVE_CALC_DESTINATION = 5;
     public static final int PROGRESS_SAVE = 50;
     private File destinationFile;
+    private String videoFormat;
 
 
     @Override
@@ -93,7 +101,12 @@ public class DiskExporter extends Exporter {
             }
         }
         // Default file
-        destinationFile = new File(saveDirName, capture.getDefaultName() + Misc.IMAGE_EXTENSION);
+        String extension = Misc.IMAGE_EXTENSION;
+        if (capture.isVideo()) {
+            videoFormat = Prefs.get(Prefs.Key.VIDEO_EXPORT_FORMAT, Misc.VIDEO_FORMAT_AVI);
+            extension = AnimationConverter.getExtension(videoFormat);
+        }
+        destinationFile = new File(saveDirName, capture.getDefaultName() + extension);
 
         if (!askForLocation) {
             // OK, we're done.
@@ -114,7 +127,22 @@ public class DiskExporter extends Exporter {
         fileChooser.setDialogTitle("Save capture as...");
         fileChooser.setAcceptAllFileFilterUsed(false);
         fileChooser.setMultiSelectionEnabled(false);
-        fileChooser.setFileFilter(new FileNameExtensionFilter("PNG (*" + Misc.IMAGE_EXTENSION + ")", Misc.IMAGE_EXTENSION.substring(1)));
+        fileChooser.resetChoosableFileFilters();
+        Map<FileFilter, String> videoFormatsByFilter = new LinkedHashMap<>();
+        if (capture.isVideo()) {
+            videoFormatsByFilter.put(new FileNameExtensionFilter("AVI video (*" + Misc.VIDEO_EXTENSION + ")", Misc.VIDEO_EXTENSION.substring(1)), Misc.VIDEO_FORMAT_AVI);
+            videoFormatsByFilter.put(new FileNameExtensionFilter("Animated GIF (*" + Misc.GIF_EXTENSION + ")", Misc.GIF_EXTENSION.substring(1)), Misc.VIDEO_FORMAT_GIF);
+            videoFormatsByFilter.put(new FileNameExtensionFilter("Animated PNG (*" + Misc.IMAGE_EXTENSION + ")", Misc.IMAGE_EXTENSION.substring(1)), Misc.VIDEO_FORMAT_APNG);
+            for (Map.Entry<FileFilter, String> entry : videoFormatsByFilter.entrySet()) {
+                fileChooser.addChoosableFileFilter(entry.getKey());
+                if (entry.getValue().equals(videoFormat)) {
+                    fileChooser.setFileFilter(entry.getKey());
+                }
+            }
+        }
+        else {
+            fileChooser.setFileFilter(new FileNameExtensionFilter("PNG (*" + Misc.IMAGE_EXTENSION + ")", Misc.IMAGE_EXTENSION.substring(1)));
+        }
         fileChooser.setSelectedFile(destinationFile);
 
         if (fileChooser.showSaveDialog(parentFrame) != JFileChooser.APPROVE_OPTION) {
@@ -123,6 +151,14 @@ public class DiskExporter extends Exporter {
         }
 
         destinationFile = fileChooser.getSelectedFile();
+        if (capture.isVideo()) {
+            videoFormat = videoFormatsByFilter.getOrDefault(fileChooser.getFileFilter(), Misc.VIDEO_FORMAT_AVI);
+            // Make sure the extension matches the selected format
+            final String formatExtension = AnimationConverter.getExtension(videoFormat);
+            if (!destinationFile.getName().toLowerCase().endsWith(formatExtension)) {
+                destinationFile = new File(destinationFile.getParentFile(), destinationFile.getName() + formatExtension);
+            }
+        }
         if (!destinationFile.exists()) {
             // Selected file does not exist, go ahead
             return true;
@@ -145,7 +181,14 @@ public class DiskExporter extends Exporter {
         try {
             logProgress("Saving capture", PROGRESS_SAVE);
             if (capture.isVideo()) {
-                throw new RuntimeException("TODO video");
+                if (Misc.VIDEO_FORMAT_AVI.equals(videoFormat)) {
+                    // TODO make this a block copy loop that it can be cancelled
+                    Files.copy(capture.getRenderedFile().toPath(), destinationFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+                else {
+                    AnimationConverter.convert(capture.getRenderedFile(), destinationFile, videoFormat,
+                            percent -> logProgress("Converting video", PROGRESS_SAVE + (100 - PROGRESS_SAVE) * percent / 100));
+                }
             }
             else {
                 if (capture.getRenderedImage() != null) {
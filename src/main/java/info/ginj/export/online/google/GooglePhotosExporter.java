@@ -12,6 +12,7 @@ import info.ginj.export.online.exception.CommunicationException;
 import info.ginj.export.online.exception.UploadException;
 import info.ginj.model.Capture;
 import info.ginj.model.Target;
+import info.ginj.util.Misc;
 import info.ginj.util.UI;
 import org.apache.hc.client5.http.classic.methods.HttpGet;
 import org.apache.hc.client5.http.classic.methods.HttpPost;
@@ -513,7 +514,7 @@ public class GooglePhotosExporter extends GoogleExporter implements OnlineExport
         httpPost.addHeader("Authorization", "Bearer " + getAccessToken(target.getAccount()));
         //httpPost.addHeader("Content-Length", 0); // Don't put it here, it causes a "dupe header" error if there is an entity, and if there is no entity it's forbidden.
         httpPost.addHeader("X-Goog-Upload-Command", "start");
-        httpPost.addHeader("X-Goog-Upload-Content-Type", capture.isVideo() ? "video/mp4" : "image/png");
+        httpPost.addHeader("X-Goog-Upload-Content-Type", capture.isVideo() ? Misc.VIDEO_MIME_TYPE : Misc.IMAGE_MIME_TYPE);
         httpPost.addHeader("X-Goog-Upload-File-Name", capture.getName());
         httpPost.addHeader("X-Goog-Upload-Protocol", "resumable");
         httpPost.addHeader("X-Goog-Upload-Raw-Size", file.length());
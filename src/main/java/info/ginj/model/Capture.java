@@ -3,6 +3,7 @@ package info.ginj.model;
 import info.ginj.Ginj;
 import info.ginj.tool.Overlay;
 import info.ginj.util.Misc;
+import info.ginj.util.Rasters;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
@@ -128,6 +129,22 @@ public class Capture implements Cloneable {
         this.renderedImage = renderedImage;
     }
 
+    /**
+     * @return the number of bytes held by the pixel buffers of the images of this capture.
+     * Images sharing the same buffer are only counted once
+     */
+    @java.beans.Transient
+    public long getRetainedImageBytes() {
+        long bytes = 0;
+        if (originalImage != null) {
+            bytes += Rasters.getBufferSize(originalImage);
+        }
+        if (renderedImage != null && (originalImage == null || renderedImage.getRaster().getDataBuffer() != originalImage.getRaster().getDataBuffer())) {
+            bytes += Rasters.getBufferSize(renderedImage);
+        }
+        return bytes;
+    }
+
     @Override
     public Capture clone() throws CloneNotSupportedException {
         return (Capture)super.clone();
@@ -145,6 +162,10 @@ public class Capture implements Cloneable {
      * @throws IOException in case file had to be created and an error occurred
      */
     public File toRenderedFile() throws IOException {
+        if (renderedFile == null && isVideo) {
+            // Videos are exported as recorded
+            renderedFile = originalFile;
+        }
         if (renderedFile == null) {
             renderedFile = new File(Ginj.getTempDir(), id + Misc.IMAGE_EXTENSION);
             ImageIO.write(renderedImage, Misc.IMAGE_FORMAT_PNG, renderedFile);
@@ -173,9 +194,16 @@ public class Capture implements Cloneable {
 
     @java.beans.Transient
     public String getBaseFilename() {
-        String baseFilename = getId();
-        if (getVersion() > 1) {
-            baseFilename += "_v" + getVersion();
+        return getBaseFilename(getId(), getVersion());
+    }
+
+    /**
+     * @return the name of the history files of the given version of a capture, without extension
+     */
+    public static String getBaseFilename(String id, int version) {
+        String baseFilename = id;
+        if (version > 1) {
+            baseFilename += "_v" + version;
         }
         return baseFilename;
     }
@@ -0,0 +1,108 @@
+package info.ginj.model;
+
+import info.ginj.Ginj;
+import info.ginj.ui.HistoryFrame;
+import info.ginj.util.Misc;
+
+import javax.imageio.ImageIO;
+import java.awt.geom.AffineTransform;
+import java.awt.image.AffineTransformOp;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Stores captures in the history folder: the original image or video, the metadata and overlays in the HistoryStore,
+ * and a thumbnail.
+ */
+public class CaptureHistory {
+
+    /**
+     * Saves the given capture to the history folder
+     * @param capture the capture to save. Its rendered image is used for the thumbnail (first frame for videos)
+     * @throws IOException if any of the files could not be written. The message is suitable for the user
+     */
+    public static void save(Capture capture) throws IOException {
+        File historyFolder = Ginj.getHistoryFolder();
+        if (!historyFolder.exists()) {
+            if (!historyFolder.mkdirs()) {
+                throw new IOException("Could not create history folder (" + historyFolder.getAbsolutePath() + ")");
+            }
+        }
+
+        // Save the original file to history
+        // ENHANCEMENT we store the source, not the rendered version !
+        // Compute filename (no version involved here)
+        File originalFile = new File(historyFolder, capture.getId() + (capture.isVideo()? Misc.VIDEO_EXTENSION: Misc.IMAGE_EXTENSION));
+        try {
+            // Original file could be shared between multiple captures, only store it once
+            if (!originalFile.exists()) {
+                // Save capture itself
+                if (capture.getOriginalFile() != null) {
+                    // Move file to history
+                    Files.move(capture.getOriginalFile().toPath(), originalFile.toPath());
+                }
+                else {
+                    // No original file on disk, write image from memory (should not be null !)
+                    if (!ImageIO.write(capture.getOriginalImage(), Misc.IMAGE_FORMAT_PNG, originalFile)) {
+                        throw new IOException("Writing capture to history failed (" + originalFile.getAbsolutePath() + ")");
+                    }
+                }
+            }
+        }
+        catch (IOException e) {
+            throw new IOException("Saving capture to history failed (" + originalFile.getAbsolutePath() + ")", e);
+        }
+
+        // Save metadata and overlays
+        try {
+            HistoryStore.getInstance().put(capture, originalFile.length());
+        }
+        catch (Exception e) {
+            throw new IOException("Saving metadata and overlays to history failed (" + historyFolder.getAbsolutePath() + ")", e);
+        }
+
+        // Write the thumbnail to disk
+        // Compute filename (including version)
+        File thumbnailFile = new File(historyFolder, capture.getBaseFilename() + Misc.THUMBNAIL_EXTENSION);
+        try {
+            // Note: for videos, the rendered image is the first frame
+            if (!ImageIO.write(createThumbnail(capture.getRenderedImage()), Misc.IMAGE_FORMAT_PNG, thumbnailFile)) {
+                throw new IOException("Saving thumbnail to history failed (" + thumbnailFile.getAbsolutePath() + ")");
+            }
+        }
+        catch (IOException e) {
+            throw new IOException("Saving thumbnail to history failed (" + thumbnailFile.getAbsolutePath() + ")", e);
+        }
+    }
+
+    /**
+     * Downscales an image to fit in the thumbnail size of the history
+     * @param thumbnailSourceImage the full size image
+     * @return the thumbnail, or the source image itself if it is already small enough
+     */
+    public static BufferedImage createThumbnail(BufferedImage thumbnailSourceImage) {
+        int sourceImageWidth = thumbnailSourceImage.getWidth();
+        int sourceImageHeight = thumbnailSourceImage.getHeight();
+        int thumbnailWidth = HistoryFrame.THUMBNAIL_SIZE.width;
+        int thumbnailHeight = HistoryFrame.THUMBNAIL_SIZE.height;
+
+        if (sourceImageWidth > thumbnailWidth || sourceImageHeight > thumbnailHeight) {
+            // Resize
+            double hScale = thumbnailWidth / ((double) sourceImageWidth);
+            double vScale = thumbnailHeight / ((double) sourceImageHeight);
+            double scale = Math.min(hScale, vScale);
+
+            int targetWidth = (int) (sourceImageWidth * scale);
+            int targetHeight = (int) (sourceImageHeight * scale);
+
+            BufferedImage thumbnailImage = new BufferedImage(targetWidth, targetHeight, thumbnailSourceImage.getType());
+            AffineTransform scaleInstance = AffineTransform.getScaleInstance(scale, scale);
+            AffineTransformOp scaleOp = new AffineTransformOp(scaleInstance, AffineTransformOp.TYPE_BILINEAR);
+            scaleOp.filter(thumbnailSourceImage, thumbnailImage);
+            return thumbnailImage;
+        }
+        return thumbnailSourceImage;
+    }
+}
@@ -0,0 +1,90 @@
+package info.ginj.model;
+
+/**
+ * A capture of the history, as listed in the index of the HistoryStore: enough to list, sort and find captures
+ * without decoding their metadata and overlays (see HistoryStore.load())
+ */
+public class HistoryEntry {
+    private final String id;
+    private final int version;
+    private final boolean video;
+    private final String name;
+    private final long timestamp;
+    private final long fileSize;
+
+    // Location of the full record in the log of the store
+    final long recordOffset;
+    final int recordLength;
+
+    HistoryEntry(String id, int version, boolean video, String name, long timestamp, long fileSize, long recordOffset, int recordLength) {
+        this.id = id;
+        this.version = version;
+        this.video = video;
+        this.name = name;
+        this.timestamp = timestamp;
+        this.fileSize = fileSize;
+        this.recordOffset = recordOffset;
+        this.recordLength = recordLength;
+    }
+
+    /**
+     * @return a copy of this entry, whose record is at the given location
+     */
+    HistoryEntry withRecord(long recordOffset, int recordLength) {
+        return new HistoryEntry(id, version, video, name, timestamp, fileSize, recordOffset, recordLength);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public boolean isVideo() {
+        return video;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the time the capture was saved to the history, in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return the size of the captured image or video file when the capture was saved
+     */
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * Returns the name of the capture, or its id if name is empty
+     */
+    public String getDefaultName() {
+        if (name == null || name.isBlank()) {
+            return id;
+        }
+        return name;
+    }
+
+    public String getBaseFilename() {
+        return Capture.getBaseFilename(id, version);
+    }
+
+    @Override
+    public String toString() {
+        return "HistoryEntry{" +
+                "id='" + id + '\'' +
+                ", version=" + version +
+                ", isVideo=" + video +
+                ", name='" + name + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,629 @@
+package info.ginj.model;
+
+import info.ginj.Ginj;
+import info.ginj.util.Misc;
+import info.ginj.util.PerfLog;
+
+import java.beans.XMLDecoder;
+import java.beans.XMLEncoder;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Stores the metadata and overlays of the captures of the history, replacing one XML file per capture:
+ * - the log ("history.log") is the reference: each save or deletion appends a record to it, starting with a marker and
+ * protected by a CRC, and forced to disk. The record of a save contains a summary of the capture (id, version, name...) and the capture itself
+ * encoded by XMLEncoder;
+ * - the index ("history.idx") is a snapshot of the summaries of the live captures and of the location of their
+ * records, rewritten atomically (write to a temp file, then rename) after each change. It is read in one go at startup,
+ * so listing, sorting and finding captures never decodes a capture, which is only done when opening or exporting it.
+ * Crash safety: the index records the length of the log it covers. At startup, records appended after that length are
+ * replayed. An incomplete record at the end of the log (crash during an append) is dropped. Corrupted bytes inside the
+ * log are skipped, up to the next valid record, found by its marker and checked by its CRC. The log is backed up
+ * ("history.log.<timestamp>.bak") before such a repair. A log whose header is unreadable is set aside the same way,
+ * and a new one is created as on first start. An index
+ * that is missing, corrupted, or that belongs to another log (the "generations" in their headers differ, e.g. after an
+ * interrupted compaction) is rebuilt from the log.
+ * When deleted captures make up most of the log, it is compacted at startup.
+ * The first time, the XML files of previous versions are imported into a new log. They are left in place.
+ */
+public class HistoryStore {
+    public static final String LOG_FILENAME = "history.log";
+    public static final String INDEX_FILENAME = "history.idx";
+    private static final String TEMP_EXTENSION = ".tmp";
+    private static final String BACKUP_EXTENSION = ".bak";
+
+    private static final int LOG_MAGIC = 0x474A484C; // "GJHL"
+    private static final int INDEX_MAGIC = 0x474A4849; // "GJHI"
+    private static final int FORMAT_VERSION = 2;
+    // Magic, format version, generation
+    private static final int LOG_HEADER_SIZE = 16;
+    // Magic, format version, generation, covered log length, entry count, CRC of the entries
+    private static final int INDEX_HEADER_SIZE = 32;
+    // Marker, length and CRC of the body of each record of the log
+    private static final int RECORD_HEADER_SIZE = 12;
+    private static final int RECORD_MAGIC = 0x474A5243; // "GJRC"
+    // Bytes read at once when searching the next valid record after a corrupted one
+    private static final int RECORD_SEARCH_WINDOW_SIZE = 64 * 1024;
+
+    private static final byte RECORD_PUT = 1;
+    private static final byte RECORD_DELETE = 2;
+
+    private static final long MIN_COMPACTION_DEAD_BYTES = 1024 * 1024;
+
+    private static HistoryStore instance;
+
+    private final File folder;
+    private final File logFile;
+    private final File indexFile;
+    private FileChannel logChannel;
+    private long generation;
+    // Copy of the log made before repairing it, if any
+    private File logBackupFile = null;
+
+    // Live entries, by base filename
+    private final Map<String, HistoryEntry> entries = new HashMap<>();
+    // Sum of the lengths of the records of the live entries
+    private long liveBytes = 0;
+    // Most recent first, null when it must be sorted again
+    private List<HistoryEntry> sortedEntries = null;
+
+    /**
+     * @return the store of the current history folder, opened on first call
+     * @throws IOException if the store could not be opened
+     */
+    public static synchronized HistoryStore getInstance() throws IOException {
+        final File historyFolder = Ginj.getHistoryFolder();
+        if (instance == null || !instance.folder.equals(historyFolder)) {
+            if (instance != null) {
+                instance.close();
+            }
+            instance = new HistoryStore(historyFolder);
+        }
+        return instance;
+    }
+
+    /**
+     * Opens the store of the given folder, creating it (and importing legacy XML files) or repairing it if needed
+     * @param folder the history folder
+     * @throws IOException if the log could not be read or created
+     */
+    public HistoryStore(File folder) throws IOException {
+        final long startNanos = System.nanoTime();
+        this.folder = folder;
+        logFile = new File(folder, LOG_FILENAME);
+        indexFile = new File(folder, INDEX_FILENAME);
+
+        if (!logFile.exists()) {
+            importLegacyMetadata();
+        }
+        logChannel = FileChannel.open(logFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            generation = readLogHeader();
+        }
+        catch (IOException e) {
+            // Nothing can be read from this log. Set it aside and start over, rather than never opening the history again
+            final File backupFile = backupLog();
+            System.err.println(e.getMessage() + ". Backed up to " + backupFile.getAbsolutePath() + ", creating a new log");
+            logChannel.close();
+            Files.delete(logFile.toPath());
+            importLegacyMetadata();
+            logChannel = FileChannel.open(logFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            generation = readLogHeader();
+        }
+        final long indexedLength = readIndex();
+        final long logLength = replayLog(indexedLength);
+        if (logLength != indexedLength) {
+            updateIndex();
+        }
+        final long deadBytes = logLength - LOG_HEADER_SIZE - liveBytes;
+        if (deadBytes > liveBytes && deadBytes > MIN_COMPACTION_DEAD_BYTES) {
+            compact();
+        }
+        PerfLog.log("History", String.format("Opened %d entries (%d bytes replayed) in %.1f ms", entries.size(), logLength - indexedLength, (System.nanoTime() - startNanos) / 1e6));
+    }
+
+    /**
+     * @return the captures of the history, most recent first. The list is not modified by later changes
+     */
+    public synchronized List<HistoryEntry> getEntries() {
+        if (sortedEntries == null) {
+            final List<HistoryEntry> list = new ArrayList<>(entries.values());
+            list.sort(Comparator.comparingLong(HistoryEntry::getTimestamp).reversed().thenComparing(HistoryEntry::getBaseFilename));
+            sortedEntries = Collections.unmodifiableList(list);
+        }
+        return sortedEntries;
+    }
+
+    /**
+     * @return the given version of a capture, or null if it is not in the history
+     */
+    public synchronized HistoryEntry getEntry(String id, int version) {
+        return entries.get(Capture.getBaseFilename(id, version));
+    }
+
+    /**
+     * @return all the versions of the given capture in the history, which share the same captured file
+     */
+    public synchronized List<HistoryEntry> getVersions(String id) {
+        final List<HistoryEntry> versions = new ArrayList<>();
+        for (HistoryEntry entry : entries.values()) {
+            if (entry.getId().equals(id)) {
+                versions.add(entry);
+            }
+        }
+        versions.sort(Comparator.comparingInt(HistoryEntry::getVersion));
+        return versions;
+    }
+
+    /**
+     * Decodes the full capture of an entry, with its overlays
+     * @param entry an entry of this store
+     * @return the capture. Its images are not loaded
+     * @throws IOException if the record could not be read or decoded
+     */
+    public synchronized Capture load(HistoryEntry entry) throws IOException {
+        final ByteBuffer body = readRecordBody(entry.recordOffset, entry.recordLength);
+        if (body == null || body.get() != RECORD_PUT) {
+            throw new IOException("Corrupted history record for capture " + entry.getBaseFilename());
+        }
+        readSummary(body, 0, 0);
+        final int xmlLength = body.getInt();
+        try (XMLDecoder xmlDecoder = new XMLDecoder(new ByteArrayInputStream(body.array(), body.position(), xmlLength))) {
+            return (Capture) xmlDecoder.readObject();
+        }
+        catch (RuntimeException e) {
+            throw new IOException("Could not decode capture " + entry.getBaseFilename(), e);
+        }
+    }
+
+    /**
+     * Saves a capture, replacing the same version if it was already saved
+     * @param capture the capture to save, with its overlays
+     * @param fileSize the size of the captured image or video file
+     * @throws IOException if the capture could not be written to the log
+     */
+    public synchronized void put(Capture capture, long fileSize) throws IOException {
+        appendPut(capture, fileSize, System.currentTimeMillis());
+        logChannel.force(false);
+        updateIndex();
+    }
+
+    /**
+     * Removes an entry from the history. Other files of the capture (thumbnail, captured file) are left untouched
+     * @param entry the entry to remove
+     * @throws IOException if the deletion could not be written to the log
+     */
+    public synchronized void delete(HistoryEntry entry) throws IOException {
+        final ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+        final DataOutputStream body = new DataOutputStream(bodyBytes);
+        body.writeByte(RECORD_DELETE);
+        writeString(body, entry.getId());
+        body.writeInt(entry.getVersion());
+        appendRecord(bodyBytes.toByteArray());
+        logChannel.force(false);
+        removeEntry(entry.getBaseFilename());
+        updateIndex();
+    }
+
+    public synchronized void close() {
+        try {
+            logChannel.close();
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+
+    //////////////////////////////
+    // Log
+
+    private long readLogHeader() throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_SIZE);
+        readFully(logChannel, header, 0);
+        header.flip();
+        if (header.remaining() < LOG_HEADER_SIZE || header.getInt() != LOG_MAGIC || header.getInt() != FORMAT_VERSION) {
+            throw new IOException("Unsupported history log format (" + logFile.getAbsolutePath() + ")");
+        }
+        return header.getLong();
+    }
+
+    private static void writeLogHeader(FileChannel channel, long generation) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_SIZE);
+        header.putInt(LOG_MAGIC).putInt(FORMAT_VERSION).putLong(generation).flip();
+        writeFully(channel, header, 0);
+    }
+
+    /**
+     * Applies the records of the log from the given offset. Corrupted bytes inside the log are skipped up to the next
+     * valid record, and an incomplete or corrupted end of log (crash during an append) is dropped. The log is backed up
+     * before being modified
+     * @return the length of the valid log
+     */
+    private long replayLog(long fromOffset) throws IOException {
+        final long logLength = logChannel.size();
+        long offset = fromOffset;
+        while (offset < logLength) {
+            final ByteBuffer body = readRecordAt(offset, logLength);
+            if (body == null) {
+                final long nextOffset = findNextRecord(offset + 1, logLength);
+                if (nextOffset < 0) {
+                    // Nothing valid up to the end of the log
+                    break;
+                }
+                final File backupFile = backupLog();
+                System.err.println("Skipping " + (nextOffset - offset) + " corrupted bytes at offset " + offset + " of " + logFile.getAbsolutePath() + " (backed up to " + backupFile.getAbsolutePath() + ")");
+                offset = nextOffset;
+                continue;
+            }
+            applyRecord(body, offset, body.capacity());
+            offset += body.capacity();
+        }
+        if (offset < logLength) {
+            final File backupFile = backupLog();
+            System.err.println("Dropping " + (logLength - offset) + " bytes of incomplete history record at the end of " + logFile.getAbsolutePath() + " (backed up to " + backupFile.getAbsolutePath() + ")");
+            logChannel.truncate(offset);
+            logChannel.force(true);
+        }
+        return offset;
+    }
+
+    /**
+     * @return the offset of the first valid record starting at or after the given offset, or -1 if there is none
+     */
+    private long findNextRecord(long fromOffset, long logLength) throws IOException {
+        final ByteBuffer window = ByteBuffer.allocate(RECORD_SEARCH_WINDOW_SIZE);
+        long windowOffset = fromOffset;
+        while (windowOffset + RECORD_HEADER_SIZE <= logLength) {
+            window.clear();
+            readFully(logChannel, window, windowOffset);
+            window.flip();
+            for (int i = 0; i + 4 <= window.limit(); i++) {
+                if (window.getInt(i) == RECORD_MAGIC && readRecordAt(windowOffset + i, logLength) != null) {
+                    return windowOffset + i;
+                }
+            }
+            // Windows overlap, so that a marker across two windows is not missed
+            windowOffset += Math.max(1, window.limit() - 3);
+        }
+        return -1;
+    }
+
+    /**
+     * @return the body of the valid record at the given offset, whose capacity is the length of the whole record, or
+     * null if there is no complete record with a valid marker and CRC there
+     */
+    private ByteBuffer readRecordAt(long offset, long logLength) throws IOException {
+        if (offset + RECORD_HEADER_SIZE > logLength) {
+            return null;
+        }
+        final ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        readFully(logChannel, header, offset);
+        header.flip();
+        if (header.getInt() != RECORD_MAGIC) {
+            return null;
+        }
+        final int bodyLength = header.getInt();
+        if (bodyLength <= 0 || offset + RECORD_HEADER_SIZE + (long) bodyLength > logLength) {
+            return null;
+        }
+        return readRecordBody(offset, RECORD_HEADER_SIZE + bodyLength);
+    }
+
+    /**
+     * Copies the log as it is before it is repaired, so that nothing is lost if the repair was wrong
+     * @return the copy, which is only made once per opening of the store
+     */
+    private File backupLog() throws IOException {
+        if (logBackupFile == null) {
+            logBackupFile = new File(folder, LOG_FILENAME + "." + System.currentTimeMillis() + BACKUP_EXTENSION);
+            Files.copy(logFile.toPath(), logBackupFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return logBackupFile;
+    }
+
+    private void applyRecord(ByteBuffer body, long recordOffset, int recordLength) {
+        final byte type = body.get();
+        if (type == RECORD_PUT) {
+            putEntry(readSummary(body, recordOffset, recordLength));
+        }
+        else if (type == RECORD_DELETE) {
+            final String id = readString(body);
+            final int version = body.getInt();
+            removeEntry(Capture.getBaseFilename(id, version));
+        }
+    }
+
+    /**
+     * @return the body of the record at the given location, positioned at its start, or null if its CRC is wrong
+     */
+    private ByteBuffer readRecordBody(long recordOffset, int recordLength) throws IOException {
+        final ByteBuffer record = ByteBuffer.allocate(recordLength);
+        readFully(logChannel, record, recordOffset);
+        record.flip();
+        if (record.remaining() < recordLength || record.getInt() != RECORD_MAGIC || record.getInt() != recordLength - RECORD_HEADER_SIZE) {
+            return null;
+        }
+        final int expectedCrc = record.getInt();
+        final CRC32 crc = new CRC32();
+        crc.update(record.duplicate());
+        if ((int) crc.getValue() != expectedCrc) {
+            return null;
+        }
+        return record;
+    }
+
+    private void appendPut(Capture capture, long fileSize, long timestamp) throws IOException {
+        final ByteArrayOutputStream xmlBytes = new ByteArrayOutputStream();
+        try (XMLEncoder xmlEncoder = new XMLEncoder(xmlBytes)) {
+            xmlEncoder.writeObject(capture);
+        }
+        final HistoryEntry entry = new HistoryEntry(capture.getId(), capture.getVersion(), capture.isVideo(), capture.getName(), timestamp, fileSize, 0, 0);
+        final ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream(xmlBytes.size() + 256);
+        final DataOutputStream body = new DataOutputStream(bodyBytes);
+        body.writeByte(RECORD_PUT);
+        writeSummary(body, entry);
+        body.writeInt(xmlBytes.size());
+        xmlBytes.writeTo(body);
+        final long recordOffset = appendRecord(bodyBytes.toByteArray());
+        putEntry(entry.withRecord(recordOffset, RECORD_HEADER_SIZE + bodyBytes.size()));
+    }
+
+    /**
+     * Appends a record to the log. The caller must force the log to disk before considering it saved
+     * @return the offset of the record in the log
+     */
+    private long appendRecord(byte[] body) throws IOException {
+        final CRC32 crc = new CRC32();
+        crc.update(body);
+        final ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + body.length);
+        record.putInt(RECORD_MAGIC).putInt(body.length).putInt((int) crc.getValue()).put(body).flip();
+        final long recordOffset = logChannel.size();
+        try {
+            writeFully(logChannel, record, recordOffset);
+        }
+        catch (IOException e) {
+            // Don't leave a partial record before the next ones, they would be dropped at next startup
+            try {
+                logChannel.truncate(recordOffset);
+            }
+            catch (IOException truncateException) {
+                e.addSuppressed(truncateException);
+            }
+            throw e;
+        }
+        return recordOffset;
+    }
+
+    /**
+     * Rewrites the log with the records of the live entries only
+     */
+    private void compact() throws IOException {
+        final long startNanos = System.nanoTime();
+        final long oldLength = logChannel.size();
+        final long newGeneration = generation + 1;
+        final File tempFile = new File(folder, LOG_FILENAME + TEMP_EXTENSION);
+        final List<HistoryEntry> liveEntries = new ArrayList<>(entries.values());
+        // Keep the order of the log
+        liveEntries.sort(Comparator.comparingLong(entry -> entry.recordOffset));
+        final List<HistoryEntry> movedEntries = new ArrayList<>();
+        try (FileChannel tempChannel = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeLogHeader(tempChannel, newGeneration);
+            long offset = LOG_HEADER_SIZE;
+            for (HistoryEntry entry : liveEntries) {
+                long copied = 0;
+                while (copied < entry.recordLength) {
+                    copied += logChannel.transferTo(entry.recordOffset + copied, entry.recordLength - copied, tempChannel.position(offset + copied));
+                }
+                movedEntries.add(entry.withRecord(offset, entry.recordLength));
+                offset += entry.recordLength;
+            }
+            tempChannel.force(true);
+        }
+        logChannel.close();
+        replaceFile(tempFile, logFile);
+        logChannel = FileChannel.open(logFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        generation = newGeneration;
+        for (HistoryEntry entry : movedEntries) {
+            putEntry(entry);
+        }
+        updateIndex();
+        PerfLog.log("History", String.format("Compacted log from %d to %d bytes in %.1f ms", oldLength, logChannel.size(), (System.nanoTime() - startNanos) / 1e6));
+    }
+
+    /**
+     * Creates the log from the XML files of the captures saved by previous versions, sorted by modification date.
+     * The log is only put in place when complete, so an interrupted import is restarted at next startup
+     */
+    private void importLegacyMetadata() throws IOException {
+        final File tempFile = new File(folder, LOG_FILENAME + TEMP_EXTENSION);
+        final File[] metadataFiles = folder.listFiles((dir, name) -> name.toLowerCase().endsWith(Misc.METADATA_EXTENSION));
+        logChannel = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            writeLogHeader(logChannel, System.currentTimeMillis());
+            if (metadataFiles != null) {
+                Arrays.sort(metadataFiles, Comparator.comparingLong(File::lastModified));
+                for (File metadataFile : metadataFiles) {
+                    try (XMLDecoder xmlDecoder = new XMLDecoder(new BufferedInputStream(new FileInputStream(metadataFile)))) {
+                        final Capture capture = (Capture) xmlDecoder.readObject();
+                        final File captureFile = new File(folder, capture.getId() + (capture.isVideo() ? Misc.VIDEO_EXTENSION : Misc.IMAGE_EXTENSION));
+                        appendPut(capture, captureFile.length(), metadataFile.lastModified());
+                    }
+                    catch (Exception e) {
+                        System.err.println("Could not import history file '" + metadataFile.getAbsolutePath() + "'");
+                        e.printStackTrace();
+                    }
+                }
+            }
+            logChannel.force(true);
+        }
+        finally {
+            logChannel.close();
+        }
+        replaceFile(tempFile, logFile);
+        PerfLog.log("History", "Imported " + entries.size() + " legacy metadata files");
+        entries.clear();
+        liveBytes = 0;
+    }
+
+
+    //////////////////////////////
+    // Index
+
+    /**
+     * Loads the entries from the index
+     * @return the length of the log covered by the index, or the length of the log header if the log must be replayed
+     * from the start
+     */
+    private long readIndex() {
+        if (!indexFile.exists()) {
+            return LOG_HEADER_SIZE;
+        }
+        try {
+            // Read on the heap rather than memory-mapped: a mapping is only released by GC, and a mapped file cannot be
+            // replaced on Windows
+            final ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(indexFile.toPath()));
+            if (index.remaining() < INDEX_HEADER_SIZE || index.getInt() != INDEX_MAGIC || index.getInt() != FORMAT_VERSION || index.getLong() != generation) {
+                return LOG_HEADER_SIZE;
+            }
+            final long coveredLength = index.getLong();
+            final int count = index.getInt();
+            final int expectedCrc = index.getInt();
+            final CRC32 crc = new CRC32();
+            crc.update(index.duplicate());
+            if ((int) crc.getValue() != expectedCrc || coveredLength > logChannel.size()) {
+                return LOG_HEADER_SIZE;
+            }
+            for (int i = 0; i < count; i++) {
+                final long recordOffset = index.getLong();
+                final int recordLength = index.getInt();
+                putEntry(readSummary(index, recordOffset, recordLength));
+            }
+            return coveredLength;
+        }
+        catch (IOException | RuntimeException e) {
+            System.err.println("Could not read history index, rebuilding it from " + logFile.getAbsolutePath());
+            e.printStackTrace();
+            entries.clear();
+            liveBytes = 0;
+            return LOG_HEADER_SIZE;
+        }
+    }
+
+    /**
+     * Rewrites the index. A failure is not fatal, as the index would be rebuilt from the log at next startup
+     */
+    private void updateIndex() {
+        final File tempFile = new File(folder, INDEX_FILENAME + TEMP_EXTENSION);
+        try {
+            final ByteArrayOutputStream entriesBytes = new ByteArrayOutputStream(entries.size() * 96);
+            final DataOutputStream out = new DataOutputStream(entriesBytes);
+            for (HistoryEntry entry : entries.values()) {
+                out.writeLong(entry.recordOffset);
+                out.writeInt(entry.recordLength);
+                writeSummary(out, entry);
+            }
+            final CRC32 crc = new CRC32();
+            crc.update(entriesBytes.toByteArray());
+            final ByteBuffer index = ByteBuffer.allocate(INDEX_HEADER_SIZE + entriesBytes.size());
+            index.putInt(INDEX_MAGIC).putInt(FORMAT_VERSION).putLong(generation).putLong(logChannel.size())
+                    .putInt(entries.size()).putInt((int) crc.getValue()).put(entriesBytes.toByteArray()).flip();
+            try (FileChannel tempChannel = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                writeFully(tempChannel, index, 0);
+                tempChannel.force(true);
+            }
+            replaceFile(tempFile, indexFile);
+        }
+        catch (IOException e) {
+            System.err.println("Could not write history index " + indexFile.getAbsolutePath());
+            e.printStackTrace();
+        }
+    }
+
+
+    //////////////////////////////
+    // Entries
+
+    private void putEntry(HistoryEntry entry) {
+        removeEntry(entry.getBaseFilename());
+        entries.put(entry.getBaseFilename(), entry);
+        liveBytes += entry.recordLength;
+        sortedEntries = null;
+    }
+
+    private void removeEntry(String baseFilename) {
+        final HistoryEntry removedEntry = entries.remove(baseFilename);
+        if (removedEntry != null) {
+            liveBytes -= removedEntry.recordLength;
+            sortedEntries = null;
+        }
+    }
+
+    private static void writeSummary(DataOutputStream out, HistoryEntry entry) throws IOException {
+        writeString(out, entry.getId());
+        out.writeInt(entry.getVersion());
+        out.writeBoolean(entry.isVideo());
+        writeString(out, entry.getName() == null ? "" : entry.getName());
+        out.writeLong(entry.getTimestamp());
+        out.writeLong(entry.getFileSize());
+    }
+
+    private static HistoryEntry readSummary(ByteBuffer buffer, long recordOffset, int recordLength) {
+        final String id = readString(buffer);
+        final int version = buffer.getInt();
+        final boolean video = buffer.get() != 0;
+        final String name = readString(buffer);
+        final long timestamp = buffer.getLong();
+        final long fileSize = buffer.getLong();
+        return new HistoryEntry(id, version, video, name, timestamp, fileSize, recordOffset, recordLength);
+    }
+
+
+    //////////////////////////////
+    // Utils
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                break;
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    private static void replaceFile(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -16,7 +16,18 @@ public class Prefs {
     public enum Key {
         TOOL_COLOR_PREFIX("tool.color.", "The current color for the corresponding tool", false),
         FIXED_PALETTE_COLOR_PREFIX("fixed.palette.color.", "The color for the corresponding button in the fixed palette", true),
-
+        REDACT_MODE("redact.mode", "The effect of the redaction tool: pixelate (default) or blur", true),
+        UNDO_MAX_EDITS("undo.max.edits", "The maximum number of edits that can be undone in the capture editor, between 1 and 100000 (default 500)", true),
+        UNDO_MAX_MEMORY_KB("undo.max.memory.kb", "The memory reserved for the undo history of the capture editor, in KB (default 8192). Older edits are dropped when it is full", true),
+        THUMBNAIL_CACHE_MEMORY_KB("thumbnail.cache.memory.kb", "The memory reserved for the thumbnails of captures shown by Ginj windows, in KB (default 16384). Least recently shown thumbnails are dropped when it is full", true),
+
+        CAPTURE_PER_DEVICE("capture.per.device", "If set (default), each screen is grabbed separately, starting with the one under the mouse. Otherwise the whole desktop is grabbed at once", true),
+        VIDEO_FRAME_RATE("video.frame.rate", "The number of frames per second grabbed when recording a video, between 1 and 60 (default 10)", true),
+        VIDEO_JPEG_QUALITY("video.jpeg.quality", "The quality of video frames, between 0 (smallest) and 1 (best). Default is 0.8", true),
+        INSTANT_REPLAY_FRAME_RATE("instant.replay.frame.rate", "The number of frames per second grabbed by the instant replay buffer, between 1 and 60 (default 2)", true),
+        INSTANT_REPLAY_DURATION("instant.replay.duration", "The number of seconds kept by the instant replay buffer, at most 3600 (default 30)", true),
+        INSTANT_REPLAY_MAX_MEMORY_MB("instant.replay.max.memory.mb", "The memory reserved for the instant replay buffer, in MB, at most 2047 (default 64). It is reduced if Java does not have that much direct memory available. Older frames are dropped when it is full", true),
+        VIDEO_EXPORT_FORMAT("video.export.format", "The format of videos saved to disk without asking: avi (default), gif or apng", true),
         CAPTURE_HISTORY_PATH("capture.history.path", "The folder where all capture history is stored" , true),
         USE_SMALL_BUTTONS_FOR_ONLINE_TARGETS("use.small.buttons.for.online.target", "If set, small buttons like are shown for online targets, like for save and copy", true),
         EXPORT_COMPLETE_AUTOHIDE_KEY("export.complete.autohide", "If set, the window displayed upon export completion will fade away and close when not hovered", true),
@@ -105,6 +116,27 @@ public class Prefs {
         return preferences.getProperty(key.keyString, defaultValue);
     }
 
+    /**
+     * Returns an integer preference, brought back within the given bounds
+     * @param key the preference
+     * @param defaultValue the value used if the preference is not set or is not a number
+     * @param minValue the smallest value accepted
+     * @param maxValue the largest value accepted
+     */
+    public static int getInt(Key key, int defaultValue, int minValue, int maxValue) {
+        int value = defaultValue;
+        final String stringValue = get(key);
+        if (stringValue != null && !stringValue.isBlank()) {
+            try {
+                value = Integer.parseInt(stringValue.trim());
+            }
+            catch (NumberFormatException e) {
+                System.err.println("Preference " + key.keyString + " is not a number: '" + stringValue + "'. Using " + defaultValue + "...");
+            }
+        }
+        return Math.max(minValue, Math.min(maxValue, value));
+    }
+
     public static boolean isTrue(Key key) {
         return Misc.isTrue(get(key));
     }
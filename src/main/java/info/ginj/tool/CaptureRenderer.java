@@ -0,0 +1,91 @@
+package info.ginj.tool;
+
+import info.ginj.util.PerfLog;
+import info.ginj.util.Rasters;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Flattens a captured image and its overlays into a single image.
+ * Overlays are drawn from the model (see Overlay.render()) instead of painting Swing components, so rendering does not
+ * need the editor and can run off the EDT, or headless (e.g. to re-export a capture from the history).
+ * The image is split in tiles that are composited in parallel, each one exactly like a tile of the ImageEditorPane, so
+ * that the result has the same pixels as the editor at 100%.
+ */
+public class CaptureRenderer {
+    // Size of the tiles of the editor
+    public static final int TILE_SIZE = 256;
+    // Larger tiles are used when exporting, as each one is rendered only once: fewer overlays are drawn several times
+    private static final int EXPORT_TILE_SIZE = 4 * TILE_SIZE;
+
+    /**
+     * Renders the given image with all the given overlays over it, but no handles
+     * @param image the captured image
+     * @param overlays the overlays, from bottom to top. They must not be modified while rendering
+     * @return the flattened image, of the size of the captured image
+     */
+    public static BufferedImage render(BufferedImage image, List<Overlay> overlays) {
+        final long startNanos = System.nanoTime();
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final int columns = (width + EXPORT_TILE_SIZE - 1) / EXPORT_TILE_SIZE;
+        final int rows = (height + EXPORT_TILE_SIZE - 1) / EXPORT_TILE_SIZE;
+        final BufferedImage renderedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        final int[] renderedPixels = Rasters.getData(renderedImage);
+        for (Overlay overlay : overlays) {
+            overlay.prepareRendering(image);
+        }
+
+        IntStream.range(0, columns * rows).parallel().forEach(index -> {
+            final Rectangle tileBounds = getTileBounds(index % columns, index / columns, EXPORT_TILE_SIZE, width, height);
+            final BufferedImage tile = new BufferedImage(tileBounds.width, tileBounds.height, BufferedImage.TYPE_INT_RGB);
+            final Graphics2D g2d = tile.createGraphics();
+            g2d.translate(-tileBounds.x, -tileBounds.y);
+            composite(g2d, image, overlays, tileBounds, true);
+            g2d.dispose();
+
+            // Tiles are disjoint, so they can be copied concurrently
+            final int[] tilePixels = Rasters.getData(tile);
+            for (int y = 0; y < tileBounds.height; y++) {
+                System.arraycopy(tilePixels, y * tileBounds.width, renderedPixels, (tileBounds.y + y) * width + tileBounds.x, tileBounds.width);
+            }
+        });
+
+        PerfLog.log("Export", String.format("Rendered %dx%d with %d overlays in %.1f ms", width, height, overlays.size(), (System.nanoTime() - startNanos) / 1e6));
+        return renderedImage;
+    }
+
+    /**
+     * Draws the given area of the image, and the overlays that cross it
+     * @param g2d the graphics to draw on, in image coordinates
+     * @param image the captured image
+     * @param overlays the overlays, from bottom to top
+     * @param area the area to draw, in image coordinates
+     * @param includeEditsInProgress false to skip the overlays being edited, which are drawn separately
+     */
+    public static void composite(Graphics2D g2d, BufferedImage image, List<Overlay> overlays, Rectangle area, boolean includeEditsInProgress) {
+        g2d.setClip(area);
+        g2d.drawImage(image, 0, 0, null);
+        for (Overlay overlay : overlays) {
+            if ((includeEditsInProgress || !overlay.isEditInProgress()) && overlay.getPaintedBounds().intersects(area)) {
+                overlay.render(g2d);
+            }
+        }
+    }
+
+    /**
+     * @return the bounds of the given tile, in image coordinates. Tiles on the right and bottom edges may be smaller
+     */
+    public static Rectangle getTileBounds(int column, int row, int imageWidth, int imageHeight) {
+        return getTileBounds(column, row, TILE_SIZE, imageWidth, imageHeight);
+    }
+
+    private static Rectangle getTileBounds(int column, int row, int tileSize, int imageWidth, int imageHeight) {
+        final int x = column * tileSize;
+        final int y = row * tileSize;
+        return new Rectangle(x, y, Math.min(tileSize, imageWidth - x), Math.min(tileSize, imageHeight - y));
+    }
+}
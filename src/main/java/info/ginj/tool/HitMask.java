@@ -0,0 +1,128 @@
+package info.ginj.tool;
+
+import info.ginj.util.Rasters;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * A packed 1-bit mask of the pixels covered by an overlay, used for hit detection.
+ * The mask is dilated by a few pixels so that thin shapes remain easy to click.
+ * Like shadows, it only depends on the shape of the overlay, so it remains valid when the overlay is moved.
+ * Masks must be built from the same thread, normally the EDT. Their scratch buffers are reused from one mask to the
+ * next, unless they grew beyond MAX_SCRATCH_PIXELS.
+ */
+public class HitMask {
+    // Distance from the drawing under which a click still hits it
+    public static final int TOLERANCE = 3;
+    // About 4MB per scratch buffer, enough for the overlays of a full HD capture
+    private static final long MAX_SCRATCH_PIXELS = 1_000_000L;
+
+    // Scratch buffers
+    private static BufferedImage maskImage;
+    private static int[] coverageBuffer = new int[0];
+    private static int[] dilatedBuffer = new int[0];
+
+    private final int width;
+    private final int height;
+    private final int wordsPerRow;
+    private final long[] bits;
+
+    private HitMask(int width, int height) {
+        this.width = width;
+        this.height = height;
+        wordsPerRow = (width + 63) / 64;
+        bits = new long[wordsPerRow * height];
+    }
+
+    /**
+     * Builds the mask of an overlay
+     * @param overlay the overlay
+     * @param bounds the area covered by the mask, which must contain the whole drawing
+     * @return the mask, in coordinates relative to the bounds
+     */
+    public static HitMask of(Overlay overlay, Rectangle bounds) {
+        final int width = Math.max(1, bounds.width);
+        final int height = Math.max(1, bounds.height);
+        final int size = width * height;
+
+        // Draw the overlay
+        if (maskImage == null || maskImage.getWidth() < width || maskImage.getHeight() < height) {
+            maskImage = new BufferedImage(Math.max(width, maskImage == null ? 0 : maskImage.getWidth()),
+                    Math.max(height, maskImage == null ? 0 : maskImage.getHeight()), BufferedImage.TYPE_INT_ARGB);
+        }
+        final Graphics2D g2d = maskImage.createGraphics();
+        g2d.setComposite(AlphaComposite.Clear);
+        g2d.fillRect(0, 0, width, height);
+        g2d.setComposite(AlphaComposite.SrcOver);
+        g2d.setClip(0, 0, width, height);
+        g2d.setRenderingHints(Overlay.ANTI_ALIASING_ON);
+        overlay.drawComponent(g2d, -bounds.x, -bounds.y);
+        g2d.dispose();
+
+        // Extract the covered pixels
+        if (coverageBuffer.length < size) {
+            coverageBuffer = new int[size];
+            dilatedBuffer = new int[size];
+        }
+        final int[] maskPixels = Rasters.getData(maskImage);
+        final int maskWidth = maskImage.getWidth();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                coverageBuffer[y * width + x] = (maskPixels[y * maskWidth + x] >>> 24) != 0 ? 1 : 0;
+            }
+        }
+
+        // Dilate them horizontally then vertically, by counting covered pixels in a sliding window
+        for (int y = 0; y < height; y++) {
+            int count = 0;
+            for (int x = 0; x < TOLERANCE && x < width; x++) {
+                count += coverageBuffer[y * width + x];
+            }
+            for (int x = 0; x < width; x++) {
+                if (x + TOLERANCE < width) count += coverageBuffer[y * width + x + TOLERANCE];
+                if (x - TOLERANCE - 1 >= 0) count -= coverageBuffer[y * width + x - TOLERANCE - 1];
+                dilatedBuffer[y * width + x] = count > 0 ? 1 : 0;
+            }
+        }
+        final HitMask hitMask = new HitMask(width, height);
+        for (int x = 0; x < width; x++) {
+            int count = 0;
+            for (int y = 0; y < TOLERANCE && y < height; y++) {
+                count += dilatedBuffer[y * width + x];
+            }
+            for (int y = 0; y < height; y++) {
+                if (y + TOLERANCE < height) count += dilatedBuffer[(y + TOLERANCE) * width + x];
+                if (y - TOLERANCE - 1 >= 0) count -= dilatedBuffer[(y - TOLERANCE - 1) * width + x];
+                if (count > 0) {
+                    hitMask.bits[y * hitMask.wordsPerRow + (x >> 6)] |= 1L << (x & 63);
+                }
+            }
+        }
+
+        releaseLargeScratchBuffers();
+        return hitMask;
+    }
+
+    private static void releaseLargeScratchBuffers() {
+        if ((long) maskImage.getWidth() * maskImage.getHeight() > MAX_SCRATCH_PIXELS) {
+            maskImage = null;
+        }
+        if (coverageBuffer.length > MAX_SCRATCH_PIXELS) {
+            coverageBuffer = new int[0];
+            dilatedBuffer = new int[0];
+        }
+    }
+
+    /**
+     * @param x the horizontal position, relative to the mask bounds
+     * @param y the vertical position, relative to the mask bounds
+     * @return true if the overlay covers the given position
+     */
+    public boolean contains(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return false;
+        }
+        return (bits[y * wordsPerRow + (x >> 6)] & (1L << (x & 63))) != 0;
+    }
+}
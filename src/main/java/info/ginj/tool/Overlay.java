@@ -1,14 +1,18 @@
 package info.ginj.tool;
 
-import com.jhlabs.image.GaussianFilter;
+import info.ginj.ui.ImageEditorPane;
 import info.ginj.util.UI;
 
-import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.awt.image.BufferedImageOp;
 
-public abstract class Overlay extends JPanel {
+/**
+ * An annotation drawn over a capture.
+ * Overlays are plain model objects: they are not Swing components, but are rendered by the ImageEditorPane, which
+ * composites them over the captured image. Each change to an overlay is reported to its OverlayListener with the
+ * area to redraw, so that only that area is re-composited.
+ */
+public abstract class Overlay {
     public static final RenderingHints ANTI_ALIASING_ON = new RenderingHints(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
     public static final RenderingHints ANTI_ALIASING_OFF = new RenderingHints(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
 
@@ -19,28 +23,26 @@ public abstract class Overlay extends JPanel {
     public static final int SHADOW_BLUR_RADIUS = 8;
     public static final int SHADOW_OFFSET = 3;
 
+    // Margin around the handles that contains everything painted by an overlay: handle images, shadow, and strokes
+    // or arrowheads extending past the handles
+    public static final int PAINT_MARGIN = 16;
+
     // Caching
     private Rectangle shadowBoundsCache;
     private BufferedImage shadowImageCache;
+    private HitMask hitMaskCache;
     private BufferedImage handleImg;
 
     // State
     protected boolean editInProgress = true; // Upon creation, the drag/drop is an edit.
     private boolean selected = false;
+    private Point dragOffset = new Point(0, 0);
+    private OverlayListener listener;
 
     // Actual fields to persist and restore
     private Color color;
 
 
-    ////////////////////////////////
-    // Constructor
-
-    public Overlay() {
-        setOpaque(false);
-        setLayout(null);
-    }
-
-
     ////////////////////////////////
     // Accessors
 
@@ -49,7 +51,9 @@ public abstract class Overlay extends JPanel {
     }
 
     public void setColor(Color color) {
+        final Rectangle oldBounds = getBoundsBeforeChange();
         this.color = color;
+        fireChanged(oldBounds);
     }
 
     public boolean isSelected() {
@@ -66,44 +70,133 @@ public abstract class Overlay extends JPanel {
 
     public void setEditInProgress(boolean editInProgress) {
         this.editInProgress = editInProgress;
-        // purge shadow image so that it is redrawn when editing is finished
-        if (editInProgress) {
-            clearShadow();
-        }
     }
 
     /**
-     * This is the main drawing method called to render the component.
+     * Returns the offset by which the overlay is currently shifted while being dragged, before the move is applied
+     * @return the drag offset, (0,0) when not dragging
+     */
+    @java.beans.Transient
+    public Point getDragOffset() {
+        return dragOffset;
+    }
+
+    @java.beans.Transient
+    public void setDragOffset(Point dragOffset) {
+        final Rectangle oldBounds = getBoundsBeforeChange();
+        this.dragOffset = dragOffset;
+        fireChanged(oldBounds);
+    }
+
+    @java.beans.Transient
+    public OverlayListener getListener() {
+        return listener;
+    }
+
+    @java.beans.Transient
+    public void setListener(OverlayListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Called when this overlay is added to the given pane.
+     * Can be overridden by overlays that need real Swing components (e.g. the text area of the "text" overlay)
+     * @param imagePane the pane the overlay is added to
+     */
+    public void addedTo(ImageEditorPane imagePane) {
+        // default empty implementation
+    }
+
+    /**
+     * Called when this overlay is removed from the given pane
+     * @param imagePane the pane the overlay is removed from
+     */
+    public void removedFrom(ImageEditorPane imagePane) {
+        // default empty implementation
+    }
+
+    /**
+     * Called before rendering, with the captured image this overlay is drawn over.
+     * Can be overridden by overlays that transform the pixels under them (e.g. the "redact" overlay)
+     * @param capturedImage the captured image, without overlays
+     */
+    public void prepareRendering(BufferedImage capturedImage) {
+        // default empty implementation
+    }
+
+    /**
+     * Called when the zoom factor of the pane displaying this overlay changes
+     * @param imagePane the pane displaying the overlay
+     */
+    public void zoomChanged(ImageEditorPane imagePane) {
+        // default empty implementation
+    }
+
+    /**
+     * This is the main drawing method called to render the overlay.
      * This method draws:
-     * 1. the drop shadow (if required by the overlay and if not dragging/resizing),
+     * 1. the drop shadow (if required by the overlay),
      * 2. the overlay itself
-     * 3. its handles (if selected)
-     * @param g the graphics canvas to draw on
+     * Handles are drawn separately by renderHandles(), as they are not part of the image.
+     * @param g2d the graphics canvas to draw on, in image coordinates
      */
-    @Override
-    protected void paintComponent(Graphics g) {
-        super.paintComponent(g);
-        Graphics2D g2d = (Graphics2D) g;
+    public void render(Graphics2D g2d) {
         g2d.setRenderingHints(ANTI_ALIASING_ON);
 
         // Draw shadow
-        if (!isEditInProgress() && mustDrawShadow()) {
+        if (mustDrawShadow()) {
             final Rectangle shadowBounds = getShadowBounds();
             final BufferedImage shadowImage = getShadowImage();
-            g2d.drawImage(shadowImage, shadowBounds.x, shadowBounds.y, this);
+            g2d.drawImage(shadowImage, shadowBounds.x + dragOffset.x, shadowBounds.y + dragOffset.y, null);
         }
 
         // Draw component
-        drawComponent(g2d, 0, 0);
+        drawComponent(g2d, dragOffset.x, dragOffset.y);
+    }
 
-        // Draw handles
+    /**
+     * Draws the handles of this overlay, if it is selected
+     * @param g2d the graphics canvas to draw on, in image coordinates
+     */
+    public void renderHandles(Graphics2D g2d) {
+        renderHandles(g2d, 1);
+    }
+
+    /**
+     * Draws the handles of this overlay, if it is selected, at their normal size whatever the zoom
+     * @param g2d the graphics canvas to draw on, in view coordinates
+     * @param zoom the zoom factor from image to view coordinates
+     */
+    public void renderHandles(Graphics2D g2d, double zoom) {
         if (selected) {
             for (Point handle : getHandles()) {
-                drawHandle(g2d, handle);
+                drawHandle(g2d, new Point((int) Math.round((handle.x + dragOffset.x) * zoom), (int) Math.round((handle.y + dragOffset.y) * zoom)));
             }
         }
     }
 
+    /**
+     * Returns the area that contains everything painted by this overlay (including its shadow and handles), taking
+     * the current drag offset into account
+     * @return the painted bounds, in image coordinates
+     */
+    @java.beans.Transient
+    public Rectangle getPaintedBounds() {
+        Rectangle bounds = null;
+        for (Point handle : getHandles()) {
+            if (bounds == null) {
+                bounds = new Rectangle(handle);
+            }
+            else {
+                bounds.add(handle);
+            }
+        }
+        //noinspection ConstantConditions all overlays have handles
+        bounds.grow(PAINT_MARGIN, PAINT_MARGIN);
+        bounds.translate(dragOffset.x, dragOffset.y);
+        return bounds;
+    }
+
     private void drawHandle(Graphics2D graphics2D, Point point) {
         if (handleImg == null) {
             // Compute and cache handle graphics
@@ -135,8 +228,7 @@ public abstract class Overlay extends JPanel {
 
     /**
      * Hit detection: this method is called to know if a given point is on the overlay (and can be used to select or drag it).
-     * Note: this is similar to overriding contains(), except it is called only on click (and not on mouseover).
-     * TODO: ? see if we can get back to "contains()" and change mouse pointer onHover() now that it is optimized
+     * It is called on click and on mouse move, so it never draws anything, except the first time to build the hit mask.
      * @param point the point to test
      * @return true if the point is on the overlay
      */
@@ -144,36 +236,29 @@ public abstract class Overlay extends JPanel {
         // First see if we're in a handle
         if (isSelected() && getHandleIndexAt(point) != NO_INDEX) return true;
 
-        // Then see if we're in the bounding rectangle of the shadow
-        final Rectangle shadowBounds = getShadowBounds();
-        if (!shadowBounds.contains(point)) return false;
+        // Then see if we're in the bounding rectangle of the drawing
+        final Rectangle bounds = getPaintedBounds();
+        if (!bounds.contains(point)) return false;
 
-        // And Return true if the pixel at (x,y) is not transparent (incl shadow)
-        final BufferedImage shadowImage = getShadowImage();
-        final int rgb = shadowImage.getRGB(point.x - shadowBounds.x, point.y - shadowBounds.y);
-        return ((rgb & 0xFF000000) != 0);
+        // And test the mask of the drawing
+        if (hitMaskCache == null) {
+            hitMaskCache = HitMask.of(this, bounds);
+        }
+        return hitMaskCache.contains(point.x - bounds.x, point.y - bounds.y);
     }
 
+    // Synchronized, as overlays can be rendered by several threads at once when exporting
     @java.beans.Transient
     private synchronized BufferedImage getShadowImage() {
         if (shadowImageCache == null) {
             // Only redraw the area in the real overlay bounds (by scanning handles) + shadow margin
-            shadowBoundsCache = getShadowBounds();
-            BufferedImageOp op = new GaussianFilter(SHADOW_BLUR_RADIUS);
-            BufferedImage maskImage = new BufferedImage(shadowBoundsCache.width, shadowBoundsCache.height, BufferedImage.TYPE_INT_ARGB);
-            final Graphics2D maskImageG2D = maskImage.createGraphics();
-            drawComponent(maskImageG2D, SHADOW_OFFSET - shadowBoundsCache.x, SHADOW_OFFSET - shadowBoundsCache.y);
-            maskImageG2D.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_IN, 0.7f));
-            maskImageG2D.setColor(Color.BLACK);
-            maskImageG2D.fillRect(0, 0, shadowBoundsCache.width, shadowBoundsCache.height);
-            maskImageG2D.dispose();
-            shadowImageCache = op.filter(maskImage, null);
+            shadowImageCache = ShadowCache.getShadow(this, getShadowBounds(), getShapeKey());
         }
         return shadowImageCache;
     }
 
     @java.beans.Transient
-    private Rectangle getShadowBounds() {
+    private synchronized Rectangle getShadowBounds() {
         if (shadowBoundsCache == null) {
             // Recompute shadow bounds based on all handles
             for (Point handle : getHandles()) {
@@ -215,12 +300,24 @@ public abstract class Overlay extends JPanel {
      * @return the index of the found handle, or NO_INDEX if there is no handle at that position
      */
     public int getHandleIndexAt(Point position) {
+        return getHandleIndexAt(position, 1);
+    }
+
+    /**
+     * Same as getHandleIndexAt(Point), for handles displayed at the given zoom factor
+     * @param position the location to find a handle, in image coordinates
+     * @param zoom the zoom factor from image to view coordinates
+     * @return the index of the found handle, or NO_INDEX if there is no handle at that position
+     */
+    public int getHandleIndexAt(Point position, double zoom) {
+        // Handles have a fixed size on screen
+        final double halfWidth = HANDLE_WIDTH / 2.0 / zoom;
+        final double halfHeight = HANDLE_HEIGHT / 2.0 / zoom;
         final Point[] handles = getHandles();
         for (int i = 0; i < handles.length; i++) {
             Point handle = handles[i];
-            // Give tolerance: double handle sizes
-            if (position.x >= handle.x - HANDLE_WIDTH/2 && position.x <= handle.x + HANDLE_WIDTH/2
-                    && position.y >= handle.y - HANDLE_HEIGHT/2 && position.y <= handle.y + HANDLE_HEIGHT/2) {
+            if (position.x >= handle.x - halfWidth && position.x <= handle.x + halfWidth
+                    && position.y >= handle.y - halfHeight && position.y <= handle.y + halfHeight) {
                 return i;
             }
         }
@@ -237,8 +334,10 @@ public abstract class Overlay extends JPanel {
     public final void moveHandle(int handleIndex, Point newPosition) {
         if (handleIndex != NO_INDEX) {
             // This is a move of one handle
+            final Rectangle oldBounds = getBoundsBeforeChange();
             setHandlePosition(handleIndex, newPosition);
             clearShadow();
+            fireChanged(oldBounds);
         }
         else {
             System.err.print("moveHandle with a handleIndex = NO_INDEX");
@@ -246,11 +345,29 @@ public abstract class Overlay extends JPanel {
     }
 
     /**
-     * Clears the shadow image and bounds
+     * Returns the approximate memory retained by this overlay, excluding caches, e.g. when kept in the undo history
+     * @return the estimated size, in bytes
+     */
+    @java.beans.Transient
+    public long getEstimatedSize() {
+        // Object, color and handle positions
+        return 256;
+    }
+
+    /**
+     * Releases the images cached to draw this overlay. They are recomputed if the overlay is drawn again
+     */
+    public void releaseCaches() {
+        clearShadow();
+    }
+
+    /**
+     * Clears the shadow image and bounds, and the hit mask
      */
-    private void clearShadow() {
+    private synchronized void clearShadow() {
         shadowBoundsCache = null;
         shadowImageCache = null;
+        hitMaskCache = null;
     }
 
 
@@ -261,11 +378,42 @@ public abstract class Overlay extends JPanel {
      */
     public void moveDrawing(int deltaX, int deltaY) {
         // This is a drag'n'drop move => move all points
+        final Rectangle oldBounds = getBoundsBeforeChange();
         final Point[] handles = getHandles();
         for (int i = 0; i < handles.length; i++) {
             setHandlePosition(i, new Point(handles[i].x + deltaX, handles[i].y + deltaY));
         }
-        clearShadow();
+        // The shape is unchanged, so is its shadow image. Only its position must be recomputed
+        synchronized (this) {
+            shadowBoundsCache = null;
+        }
+        fireChanged(oldBounds);
+    }
+
+    /**
+     * @return the painted bounds before a change, or null if nobody listens to changes
+     */
+    protected Rectangle getBoundsBeforeChange() {
+        return listener == null ? null : getPaintedBounds();
+    }
+
+    /**
+     * Notifies the listener that this overlay changed
+     * @param oldBounds the painted bounds before the change, as returned by getBoundsBeforeChange()
+     */
+    protected void fireChanged(Rectangle oldBounds) {
+        onChange();
+        if (listener != null && oldBounds != null) {
+            listener.overlayChanged(this, oldBounds.union(getPaintedBounds()));
+        }
+    }
+
+    /**
+     * Called after each change of the overlay.
+     * Can be overridden to keep additional components in sync
+     */
+    protected void onChange() {
+        // default empty implementation
     }
 
 
@@ -278,6 +426,17 @@ public abstract class Overlay extends JPanel {
         return true;
     }
 
+    /**
+     * Returns a key identifying the shape of this overlay independently of its position, so that overlays with the
+     * same shape share the same shadow image.
+     * Can be overridden by overlays whose shape is fully determined by a few values (e.g. the size of a rectangle)
+     * @return the shape key, or null by default, meaning the shadow is not shared
+     */
+    @java.beans.Transient
+    protected Object getShapeKey() {
+        return null;
+    }
+
 
 
     //////////////////////////////////////////////////////
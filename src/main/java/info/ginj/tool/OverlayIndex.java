@@ -0,0 +1,112 @@
+package info.ginj.tool;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A uniform grid over the image, listing in each cell the overlays whose painted bounds cross it.
+ * Finding the overlays under a point then only requires looking at the few overlays of one cell instead of all of them.
+ */
+public class OverlayIndex {
+    private static final int CELL_SIZE = 64;
+
+    private final int columns;
+    private final int rows;
+    private final List<List<Overlay>> cells;
+    // The range of cells each overlay is currently listed in, in cell coordinates
+    private final Map<Overlay, Rectangle> indexedCells = new IdentityHashMap<>();
+
+    /**
+     * @param imageSize the size of the image the overlays are drawn on
+     */
+    public OverlayIndex(Dimension imageSize) {
+        columns = Math.max(1, (imageSize.width + CELL_SIZE - 1) / CELL_SIZE);
+        rows = Math.max(1, (imageSize.height + CELL_SIZE - 1) / CELL_SIZE);
+        cells = new ArrayList<>(columns * rows);
+        for (int i = 0; i < columns * rows; i++) {
+            cells.add(new ArrayList<>(0));
+        }
+    }
+
+    /**
+     * Adds an overlay to the index, or updates its position if it is already indexed
+     * @param overlay the overlay to (re)index
+     */
+    public void update(Overlay overlay) {
+        final Rectangle newCells = getCellRange(overlay.getPaintedBounds());
+        final Rectangle oldCells = indexedCells.get(overlay);
+        if (newCells.equals(oldCells)) {
+            return;
+        }
+        if (oldCells != null) {
+            removeFromCells(overlay, oldCells);
+        }
+        for (int row = newCells.y; row < newCells.y + newCells.height; row++) {
+            for (int column = newCells.x; column < newCells.x + newCells.width; column++) {
+                cells.get(row * columns + column).add(overlay);
+            }
+        }
+        indexedCells.put(overlay, newCells);
+    }
+
+    /**
+     * Removes an overlay from the index
+     * @param overlay the overlay to remove
+     */
+    public void remove(Overlay overlay) {
+        final Rectangle oldCells = indexedCells.remove(overlay);
+        if (oldCells != null) {
+            removeFromCells(overlay, oldCells);
+        }
+    }
+
+    /**
+     * Returns the overlays that may cover the given point, in no particular order
+     * @param point the point, in image coordinates
+     * @return the candidate overlays, which must still be hit-tested
+     */
+    public List<Overlay> getCandidates(Point point) {
+        if (point.x < 0 || point.y < 0) {
+            return Collections.emptyList();
+        }
+        final int column = point.x / CELL_SIZE;
+        final int row = point.y / CELL_SIZE;
+        if (column >= columns || row >= rows) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(cells.get(row * columns + column));
+    }
+
+    private void removeFromCells(Overlay overlay, Rectangle cellRange) {
+        for (int row = cellRange.y; row < cellRange.y + cellRange.height; row++) {
+            for (int column = cellRange.x; column < cellRange.x + cellRange.width; column++) {
+                final List<Overlay> cell = cells.get(row * columns + column);
+                for (int i = 0; i < cell.size(); i++) {
+                    if (cell.get(i) == overlay) {
+                        cell.remove(i);
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the range of cells crossed by the given bounds, clamped to the grid
+     */
+    private Rectangle getCellRange(Rectangle bounds) {
+        final int firstColumn = clamp(Math.floorDiv(bounds.x, CELL_SIZE), columns);
+        final int lastColumn = clamp(Math.floorDiv(bounds.x + bounds.width - 1, CELL_SIZE), columns);
+        final int firstRow = clamp(Math.floorDiv(bounds.y, CELL_SIZE), rows);
+        final int lastRow = clamp(Math.floorDiv(bounds.y + bounds.height - 1, CELL_SIZE), rows);
+        return new Rectangle(firstColumn, firstRow, lastColumn - firstColumn + 1, lastRow - firstRow + 1);
+    }
+
+    private static int clamp(int value, int count) {
+        return Math.max(0, Math.min(count - 1, value));
+    }
+}
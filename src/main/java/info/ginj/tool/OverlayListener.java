@@ -0,0 +1,15 @@
+package info.ginj.tool;
+
+import java.awt.*;
+
+/**
+ * Receives notifications of changes to an overlay, so that only the affected area is redrawn
+ */
+public interface OverlayListener {
+    /**
+     * Called after an overlay changed (moved, resized, changed color...)
+     * @param overlay the overlay that changed
+     * @param area the area to redraw, covering the overlay both before and after the change, in image coordinates
+     */
+    void overlayChanged(Overlay overlay, Rectangle area);
+}
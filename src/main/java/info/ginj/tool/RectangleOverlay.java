@@ -3,6 +3,7 @@ package info.ginj.tool;
 import info.ginj.util.Coords;
 
 import java.awt.*;
+import java.util.Arrays;
 
 public abstract class RectangleOverlay extends Overlay {
     public static final int HANDLE_EXTERNAL_OFFSET = 2;
@@ -27,6 +28,12 @@ public abstract class RectangleOverlay extends Overlay {
         this.rectangle = rectangle;
     }
 
+    @Override
+    @java.beans.Transient
+    protected Object getShapeKey() {
+        return Arrays.asList(getClass(), rectangle.width, rectangle.height);
+    }
+
     /**
      * Returns all handles of the component
      * By convention, handle index 0 is the release position when first drawing a component (arrow head or end of rectangle diagonal)
@@ -0,0 +1,177 @@
+package info.ginj.tool;
+
+import info.ginj.util.Rasters;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Computes the drop shadows of overlays.
+ * A shadow is the alpha mask of the overlay, blurred and drawn in translucent black. The gaussian blur is approximated
+ * by 3 successive box blurs, each done as two "blur and transpose" passes on an int[] alpha plane, so that the cost
+ * does not depend on the blur radius. Scratch buffers are reused from one shadow to the next, unless they grew beyond
+ * MAX_SCRATCH_PIXELS, so that a huge shadow does not keep them allocated for the life of the application.
+ * As a shadow only depends on the shape of its overlay, not on its position, shadows are shared between overlays of
+ * the same shape (e.g. arrows with the same length and direction) in an LRU cache.
+ * Shadows are computed one at a time, as the scratch buffers are shared, so that overlays can also be rendered from
+ * other threads (e.g. by the CaptureRenderer).
+ */
+public class ShadowCache {
+    private static final int BOX_PASSES = 3;
+    private static final float SHADOW_OPACITY = 0.7f;
+    // About 32MB of ARGB shadows
+    private static final long MAX_CACHED_PIXELS = 8_000_000L;
+    // About 4MB per scratch buffer, enough for the overlays of a full HD capture
+    private static final long MAX_SCRATCH_PIXELS = 1_000_000L;
+
+    private static final int[] boxRadii = computeBoxRadii(Overlay.SHADOW_BLUR_RADIUS / 3.0, BOX_PASSES);
+
+    private static final Map<Object, BufferedImage> cache = new LinkedHashMap<>(64, 0.75f, true);
+    private static long cachedPixels = 0;
+
+    // Scratch buffers
+    private static BufferedImage maskImage;
+    private static int[] alphaBuffer = new int[0];
+    private static int[] transposedBuffer = new int[0];
+
+    /**
+     * Returns the shadow of the given overlay
+     * @param overlay the overlay casting the shadow
+     * @param bounds the bounds of the shadow
+     * @param shapeKey a key identifying the shape of the overlay relative to the shadow bounds, or null if the shadow
+     *                 must not be shared
+     * @return the shadow image, of the size of the bounds. It must not be modified as it may be shared
+     */
+    public static synchronized BufferedImage getShadow(Overlay overlay, Rectangle bounds, Object shapeKey) {
+        if (shapeKey == null) {
+            return computeShadow(overlay, bounds);
+        }
+        final Object key = Arrays.asList(shapeKey, bounds.width, bounds.height);
+        BufferedImage shadow = cache.get(key);
+        if (shadow == null) {
+            shadow = computeShadow(overlay, bounds);
+            cache.put(key, shadow);
+            cachedPixels += (long) bounds.width * bounds.height;
+            // Evict least recently used shadows
+            final Iterator<BufferedImage> iterator = cache.values().iterator();
+            while (cachedPixels > MAX_CACHED_PIXELS && cache.size() > 1) {
+                final BufferedImage evicted = iterator.next();
+                cachedPixels -= (long) evicted.getWidth() * evicted.getHeight();
+                iterator.remove();
+            }
+        }
+        return shadow;
+    }
+
+    private static synchronized BufferedImage computeShadow(Overlay overlay, Rectangle bounds) {
+        final int width = Math.max(1, bounds.width);
+        final int height = Math.max(1, bounds.height);
+        final int size = width * height;
+
+        // Draw the mask
+        if (maskImage == null || maskImage.getWidth() < width || maskImage.getHeight() < height) {
+            maskImage = new BufferedImage(Math.max(width, maskImage == null ? 0 : maskImage.getWidth()),
+                    Math.max(height, maskImage == null ? 0 : maskImage.getHeight()), BufferedImage.TYPE_INT_ARGB);
+        }
+        final Graphics2D g2d = maskImage.createGraphics();
+        g2d.setComposite(AlphaComposite.Clear);
+        g2d.fillRect(0, 0, width, height);
+        g2d.setComposite(AlphaComposite.SrcOver);
+        g2d.setClip(0, 0, width, height);
+        overlay.drawComponent(g2d, Overlay.SHADOW_OFFSET - bounds.x, Overlay.SHADOW_OFFSET - bounds.y);
+        g2d.dispose();
+
+        // Extract its alpha plane
+        if (alphaBuffer.length < size) {
+            alphaBuffer = new int[size];
+            transposedBuffer = new int[size];
+        }
+        final int[] maskPixels = Rasters.getData(maskImage);
+        final int maskWidth = maskImage.getWidth();
+        for (int y = 0; y < height; y++) {
+            final int maskOffset = y * maskWidth;
+            final int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                alphaBuffer[offset + x] = maskPixels[maskOffset + x] >>> 24;
+            }
+        }
+
+        // Blur it
+        for (int radius : boxRadii) {
+            blurAndTranspose(alphaBuffer, transposedBuffer, width, height, radius);
+            blurAndTranspose(transposedBuffer, alphaBuffer, height, width, radius);
+        }
+
+        // And make it a translucent black image
+        final BufferedImage shadow = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        final int[] shadowPixels = Rasters.getData(shadow);
+        for (int i = 0; i < size; i++) {
+            shadowPixels[i] = Math.round(alphaBuffer[i] * SHADOW_OPACITY) << 24;
+        }
+
+        releaseLargeScratchBuffers();
+        return shadow;
+    }
+
+    private static void releaseLargeScratchBuffers() {
+        if ((long) maskImage.getWidth() * maskImage.getHeight() > MAX_SCRATCH_PIXELS) {
+            maskImage = null;
+        }
+        if (alphaBuffer.length > MAX_SCRATCH_PIXELS) {
+            alphaBuffer = new int[0];
+            transposedBuffer = new int[0];
+        }
+    }
+
+    /**
+     * Applies a horizontal box blur to the source and writes the result transposed, so that calling it twice blurs in
+     * both directions. Pixels outside the source are considered transparent.
+     * @param source the alpha plane to blur, of width x height
+     * @param target the transposed result, of height x width
+     */
+    private static void blurAndTranspose(int[] source, int[] target, int width, int height, int radius) {
+        final int divisor = 2 * radius + 1;
+        for (int y = 0; y < height; y++) {
+            final int rowOffset = y * width;
+            int sum = 0;
+            for (int x = 0; x < radius && x < width; x++) {
+                sum += source[rowOffset + x];
+            }
+            for (int x = 0; x < width; x++) {
+                // Slide the window [x - radius, x + radius]
+                if (x + radius < width) {
+                    sum += source[rowOffset + x + radius];
+                }
+                if (x - radius - 1 >= 0) {
+                    sum -= source[rowOffset + x - radius - 1];
+                }
+                target[x * height + y] = (sum + divisor / 2) / divisor;
+            }
+        }
+    }
+
+    /**
+     * Computes the radii of successive box blurs approximating a gaussian blur.
+     * See "Fast Almost-Gaussian Filtering", W. Jarosz / P. Kovesi
+     * @param sigma the standard deviation of the gaussian
+     * @param passes the number of box blurs
+     * @return the radius of each box blur
+     */
+    public static int[] computeBoxRadii(double sigma, int passes) {
+        final double idealWidth = Math.sqrt(12 * sigma * sigma / passes + 1);
+        int lowerWidth = (int) Math.floor(idealWidth);
+        if (lowerWidth % 2 == 0) lowerWidth--;
+        final int upperWidth = lowerWidth + 2;
+        final double idealLowerCount = (12 * sigma * sigma - passes * lowerWidth * lowerWidth - 4.0 * passes * lowerWidth - 3 * passes) / (-4.0 * lowerWidth - 4);
+        final long lowerCount = Math.round(idealLowerCount);
+        int[] radii = new int[passes];
+        for (int i = 0; i < passes; i++) {
+            radii[i] = ((i < lowerCount ? lowerWidth : upperWidth) - 1) / 2;
+        }
+        return radii;
+    }
+}
@@ -5,6 +5,7 @@ import info.ginj.tool.Overlay;
 import java.awt.*;
 import java.awt.geom.GeneralPath;
 import java.awt.geom.Line2D;
+import java.util.Arrays;
 
 public class ArrowOverlay extends Overlay {
 
@@ -47,6 +48,12 @@ public class ArrowOverlay extends Overlay {
         drawArrowLine(g2d, start.x + xOffset, start.y + yOffset, end.x + xOffset, end.y + yOffset);
     }
 
+    @Override
+    @java.beans.Transient
+    protected Object getShapeKey() {
+        return Arrays.asList(getClass(), end.x - start.x, end.y - start.y);
+    }
+
     /**
      * Returns all handles of the component. Handles are squares displayed over the selected overlay, providing ways to change its shape.
      * By convention, when a component is first drawn, getHandles()[0] is the end of the drawing (arrowhead or second point of rectangle)
@@ -0,0 +1,91 @@
+package info.ginj.tool.redact;
+
+import info.ginj.tool.RectangleOverlay;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * Hides the part of the capture under a rectangle, by pixelating or blurring it.
+ * The redacted pixels are taken from the captured image (see RedactionCache), so they replace the original ones in
+ * the rendered image. Note that other overlays under this one are not redacted.
+ */
+public class RedactOverlay extends RectangleOverlay {
+
+    public enum Mode {PIXELATE, BLUR}
+
+    private Mode mode = Mode.PIXELATE;
+
+    private BufferedImage capturedImage;
+    private RedactionCache redactionCache;
+
+    // Getter and setter for persistence
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public void setMode(Mode mode) {
+        final Rectangle oldBounds = getBoundsBeforeChange();
+        this.mode = mode;
+        fireChanged(oldBounds);
+    }
+
+    @Override
+    public RedactOverlay initialize(Point initialPoint, Color initialColor) {
+        super.initialize(initialPoint, initialColor);
+        return this;
+    }
+
+    @Override
+    public void prepareRendering(BufferedImage capturedImage) {
+        if (capturedImage != this.capturedImage) {
+            this.capturedImage = capturedImage;
+            redactionCache = RedactionCache.of(capturedImage);
+        }
+    }
+
+    @Override
+    public String getPresentationName() {
+        return "Redact";
+    }
+
+    /**
+     * Simplified version as redactions don't have a shadow
+     * @param point the point to test
+     * @return true if the point is on the overlay
+     */
+    @Override
+    public boolean containsPoint(Point point) {
+        // First see if we're in a handle
+        if (isSelected() && getHandleIndexAt(point) != NO_INDEX) return true;
+
+        // Otherwise, see if we're in the rectangle
+        return rectangle.contains(point);
+    }
+
+    /**
+     * Draws the redacted pixels of the area under the rectangle. The graphics must be in image coordinates
+     */
+    @Override
+    public void drawComponent(Graphics2D g2d, int xOffset, int yOffset) {
+        final Rectangle area = new Rectangle(rectangle);
+        area.translate(xOffset, yOffset);
+        if (redactionCache == null) {
+            // Not rendered over an image yet
+            g2d.setColor(Color.BLACK);
+            g2d.fill(area);
+        }
+        else if (mode == Mode.BLUR) {
+            redactionCache.drawBlurred(g2d, capturedImage, area);
+        }
+        else {
+            redactionCache.drawPixelated(g2d, capturedImage, area);
+        }
+    }
+
+    @Override
+    protected boolean mustDrawShadow() {
+        return false;
+    }
+}
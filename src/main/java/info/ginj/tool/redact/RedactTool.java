@@ -0,0 +1,23 @@
+package info.ginj.tool.redact;
+
+import info.ginj.model.Prefs;
+import info.ginj.tool.GinjTool;
+import info.ginj.tool.Overlay;
+import info.ginj.ui.CaptureEditingFrame;
+import info.ginj.ui.ImageEditorPane;
+
+import java.awt.*;
+
+public class RedactTool implements GinjTool {
+    @Override
+    public String getName() {
+        return "Redact";
+    }
+
+    @Override
+    public Overlay createComponent(Point initalPosition, Color initialColor, CaptureEditingFrame frame, ImageEditorPane imagePane) {
+        final RedactOverlay overlay = new RedactOverlay().initialize(initalPosition, initialColor);
+        overlay.setMode("blur".equalsIgnoreCase(Prefs.get(Prefs.Key.REDACT_MODE)) ? RedactOverlay.Mode.BLUR : RedactOverlay.Mode.PIXELATE);
+        return overlay;
+    }
+}
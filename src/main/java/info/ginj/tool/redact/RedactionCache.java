@@ -0,0 +1,216 @@
+package info.ginj.tool.redact;
+
+import info.ginj.tool.ShadowCache;
+import info.ginj.util.PerfLog;
+import info.ginj.util.Rasters;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * The redacted versions of a captured image, computed lazily and shared by all "redact" overlays drawn over it:
+ * - pixelated: a downsampled copy of the image, one pixel per block, drawn enlarged without interpolation.
+ * Blocks are aligned on the image, not on the overlay, and computed a row of blocks at a time when first covered by
+ * an overlay, so moving or resizing an overlay only computes the newly exposed rows;
+ * - blurred: computed by tiles, only when they first get covered by an overlay, so dragging an overlay only blurs the
+ * newly exposed tiles. Each tile is blurred with a margin of source pixels around it, so that tiles join seamlessly.
+ * Like shadows, the gaussian blur is approximated by 3 box blurs, so that its cost does not depend on its radius.
+ * The cache does not keep a reference to the image, which must be passed to each call.
+ * Methods are synchronized as overlays can be rendered by several threads when exporting.
+ */
+public class RedactionCache {
+    private static final int PIXEL_BLOCK_SIZE = 12;
+    private static final double BLUR_SIGMA = 8;
+    private static final int BLUR_TILE_SIZE = 128;
+
+    private static final int[] boxRadii = ShadowCache.computeBoxRadii(BLUR_SIGMA, 3);
+    // The successive box blurs extend that far around each pixel
+    private static final int BLUR_MARGIN = Arrays.stream(boxRadii).sum();
+
+    private static final Map<BufferedImage, RedactionCache> caches = new WeakHashMap<>();
+
+    private final int width;
+    private final int height;
+    private final int blurColumns;
+    private final BufferedImage pixelatedImage;
+    private final boolean[] pixelatedRows;
+    private final BufferedImage[] blurredTiles;
+
+    private RedactionCache(BufferedImage image) {
+        width = image.getWidth();
+        height = image.getHeight();
+        pixelatedImage = new BufferedImage((width + PIXEL_BLOCK_SIZE - 1) / PIXEL_BLOCK_SIZE, (height + PIXEL_BLOCK_SIZE - 1) / PIXEL_BLOCK_SIZE, BufferedImage.TYPE_INT_RGB);
+        pixelatedRows = new boolean[pixelatedImage.getHeight()];
+        blurColumns = (width + BLUR_TILE_SIZE - 1) / BLUR_TILE_SIZE;
+        final int blurRows = (height + BLUR_TILE_SIZE - 1) / BLUR_TILE_SIZE;
+        blurredTiles = new BufferedImage[blurColumns * blurRows];
+    }
+
+    /**
+     * @param image a captured image
+     * @return the cache of redacted versions of that image, kept as long as the image is
+     */
+    public static synchronized RedactionCache of(BufferedImage image) {
+        return caches.computeIfAbsent(image, RedactionCache::new);
+    }
+
+    /**
+     * Draws the given area of the image, pixelated
+     * @param g2d the graphics to draw on, in image coordinates
+     * @param image the captured image
+     * @param area the area to draw, in image coordinates
+     */
+    public void drawPixelated(Graphics2D g2d, BufferedImage image, Rectangle area) {
+        final Rectangle clippedArea = area.intersection(new Rectangle(0, 0, width, height));
+        if (clippedArea.isEmpty()) {
+            return;
+        }
+        final int firstColumn = clippedArea.x / PIXEL_BLOCK_SIZE;
+        final int firstRow = clippedArea.y / PIXEL_BLOCK_SIZE;
+        final int lastColumn = (clippedArea.x + clippedArea.width - 1) / PIXEL_BLOCK_SIZE;
+        final int lastRow = (clippedArea.y + clippedArea.height - 1) / PIXEL_BLOCK_SIZE;
+        final BufferedImage blocks = getPixelatedImage(image, firstRow, lastRow);
+        final Graphics2D blocksG2d = (Graphics2D) g2d.create();
+        blocksG2d.clip(clippedArea);
+        blocksG2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        blocksG2d.drawImage(blocks,
+                firstColumn * PIXEL_BLOCK_SIZE, firstRow * PIXEL_BLOCK_SIZE, (lastColumn + 1) * PIXEL_BLOCK_SIZE, (lastRow + 1) * PIXEL_BLOCK_SIZE,
+                firstColumn, firstRow, lastColumn + 1, lastRow + 1, null);
+        blocksG2d.dispose();
+    }
+
+    /**
+     * Draws the given area of the image, blurred
+     * @param g2d the graphics to draw on, in image coordinates
+     * @param image the captured image
+     * @param area the area to draw, in image coordinates
+     */
+    public void drawBlurred(Graphics2D g2d, BufferedImage image, Rectangle area) {
+        final Rectangle clippedArea = area.intersection(new Rectangle(0, 0, width, height));
+        if (clippedArea.isEmpty()) {
+            return;
+        }
+        final int firstColumn = clippedArea.x / BLUR_TILE_SIZE;
+        final int firstRow = clippedArea.y / BLUR_TILE_SIZE;
+        final int lastColumn = (clippedArea.x + clippedArea.width - 1) / BLUR_TILE_SIZE;
+        final int lastRow = (clippedArea.y + clippedArea.height - 1) / BLUR_TILE_SIZE;
+        computeBlurredTiles(image, firstColumn, firstRow, lastColumn, lastRow);
+        final Graphics2D tilesG2d = (Graphics2D) g2d.create();
+        tilesG2d.clip(clippedArea);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                tilesG2d.drawImage(blurredTiles[row * blurColumns + column], column * BLUR_TILE_SIZE, row * BLUR_TILE_SIZE, null);
+            }
+        }
+        tilesG2d.dispose();
+    }
+
+    /**
+     * @return the downsampled image, after computing the rows of blocks of the given range that are not computed yet
+     */
+    private synchronized BufferedImage getPixelatedImage(BufferedImage image, int firstRow, int lastRow) {
+        final int columns = pixelatedImage.getWidth();
+        final int[] blockPixels = Rasters.getData(pixelatedImage);
+        final long[] sums = new long[columns * 3];
+        for (int row = firstRow; row <= lastRow; row++) {
+            if (pixelatedRows[row]) {
+                continue;
+            }
+            // Sum each channel of each block of the row
+            final int startY = row * PIXEL_BLOCK_SIZE;
+            final int endY = Math.min(startY + PIXEL_BLOCK_SIZE, height);
+            final int[] rowPixels = image.getRGB(0, startY, width, endY - startY, null, 0, width);
+            Arrays.fill(sums, 0);
+            for (int i = 0; i < rowPixels.length; i++) {
+                final int pixel = rowPixels[i];
+                final int sumIndex = ((i % width) / PIXEL_BLOCK_SIZE) * 3;
+                sums[sumIndex] += (pixel >> 16) & 0xFF;
+                sums[sumIndex + 1] += (pixel >> 8) & 0xFF;
+                sums[sumIndex + 2] += pixel & 0xFF;
+            }
+            for (int column = 0; column < columns; column++) {
+                // Blocks on the right and bottom edges may be smaller
+                final int count = (Math.min((column + 1) * PIXEL_BLOCK_SIZE, width) - column * PIXEL_BLOCK_SIZE) * (endY - startY);
+                final int red = (int) (sums[column * 3] / count);
+                final int green = (int) (sums[column * 3 + 1] / count);
+                final int blue = (int) (sums[column * 3 + 2] / count);
+                blockPixels[row * columns + column] = 0xFF000000 | (red << 16) | (green << 8) | blue;
+            }
+            pixelatedRows[row] = true;
+        }
+        return pixelatedImage;
+    }
+
+    /**
+     * Blurs the tiles of the given range that are not blurred yet, in parallel
+     */
+    private synchronized void computeBlurredTiles(BufferedImage image, int firstColumn, int firstRow, int lastColumn, int lastRow) {
+        final int rangeColumns = lastColumn - firstColumn + 1;
+        final int[] missingTiles = IntStream.range(0, rangeColumns * (lastRow - firstRow + 1))
+                .map(i -> (firstRow + i / rangeColumns) * blurColumns + firstColumn + i % rangeColumns)
+                .filter(index -> blurredTiles[index] == null)
+                .toArray();
+        if (missingTiles.length == 0) {
+            return;
+        }
+        final long startNanos = System.nanoTime();
+        Arrays.stream(missingTiles).parallel().forEach(index -> blurredTiles[index] = blurTile(image, index % blurColumns, index / blurColumns));
+        PerfLog.log("Redact", String.format("Blurred %d tiles in %.1f ms", missingTiles.length, (System.nanoTime() - startNanos) / 1e6));
+    }
+
+    private BufferedImage blurTile(BufferedImage image, int column, int row) {
+        final Rectangle imageBounds = new Rectangle(0, 0, width, height);
+        final Rectangle tileBounds = new Rectangle(column * BLUR_TILE_SIZE, row * BLUR_TILE_SIZE, BLUR_TILE_SIZE, BLUR_TILE_SIZE).intersection(imageBounds);
+        // Blur the tile and its margin, then only keep the tile. Pixels beyond the edges of the image repeat the edges
+        final Rectangle sourceBounds = new Rectangle(tileBounds);
+        sourceBounds.grow(BLUR_MARGIN, BLUR_MARGIN);
+        final Rectangle clippedSourceBounds = sourceBounds.intersection(imageBounds);
+        final int sourceWidth = clippedSourceBounds.width;
+        final int sourceHeight = clippedSourceBounds.height;
+        int[] pixels = image.getRGB(clippedSourceBounds.x, clippedSourceBounds.y, sourceWidth, sourceHeight, null, 0, sourceWidth);
+        int[] transposedPixels = new int[pixels.length];
+        for (int radius : boxRadii) {
+            blurAndTranspose(pixels, transposedPixels, sourceWidth, sourceHeight, radius);
+            blurAndTranspose(transposedPixels, pixels, sourceHeight, sourceWidth, radius);
+        }
+        final BufferedImage tile = new BufferedImage(tileBounds.width, tileBounds.height, BufferedImage.TYPE_INT_RGB);
+        tile.setRGB(0, 0, tileBounds.width, tileBounds.height, pixels,
+                (tileBounds.y - clippedSourceBounds.y) * sourceWidth + tileBounds.x - clippedSourceBounds.x, sourceWidth);
+        return tile;
+    }
+
+    /**
+     * Applies a horizontal box blur to the RGB source and writes the result transposed, so that calling it twice blurs
+     * in both directions.
+     * @param source the pixels to blur, of width x height
+     * @param target the transposed result, of height x width
+     */
+    private static void blurAndTranspose(int[] source, int[] target, int width, int height, int radius) {
+        final int divisor = 2 * radius + 1;
+        final int lastX = width - 1;
+        for (int y = 0; y < height; y++) {
+            final int rowOffset = y * width;
+            // Start with the window [-radius, radius], the left edge being repeated
+            int red = 0, green = 0, blue = 0;
+            for (int x = -radius; x <= radius; x++) {
+                final int pixel = source[rowOffset + Math.min(Math.max(x, 0), lastX)];
+                red += (pixel >> 16) & 0xFF;
+                green += (pixel >> 8) & 0xFF;
+                blue += pixel & 0xFF;
+            }
+            for (int x = 0; x < width; x++) {
+                target[x * height + y] = 0xFF000000 | ((red + divisor / 2) / divisor << 16) | ((green + divisor / 2) / divisor << 8) | (blue + divisor / 2) / divisor;
+                // Slide the window to [x + 1 - radius, x + 1 + radius]
+                final int added = source[rowOffset + Math.min(x + radius + 1, lastX)];
+                final int removed = source[rowOffset + Math.max(x - radius, 0)];
+                red += ((added >> 16) & 0xFF) - ((removed >> 16) & 0xFF);
+                green += ((added >> 8) & 0xFF) - ((removed >> 8) & 0xFF);
+                blue += (added & 0xFF) - (removed & 0xFF);
+            }
+        }
+    }
+}
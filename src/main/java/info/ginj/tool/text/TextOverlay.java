@@ -1,35 +1,61 @@
 package info.ginj.tool.text;
 
+import info.ginj.action.ChangeTextAction;
 import info.ginj.tool.RectangleOverlay;
-import info.ginj.ui.CaptureEditingFrame;
 import info.ginj.ui.ImageEditorPane;
 import info.ginj.util.UI;
 
 import javax.swing.*;
 import java.awt.*;
-import java.awt.event.FocusAdapter;
-import java.awt.event.FocusEvent;
+import java.awt.font.FontRenderContext;
+import java.awt.font.LineBreakMeasurer;
+import java.awt.font.TextAttribute;
+import java.awt.font.TextLayout;
+import java.text.AttributedString;
+import java.util.ArrayList;
+import java.util.List;
 
+/**
+ * A text callout.
+ * The text is part of the model, and is drawn from TextLayouts that are cached as long as the text, the font and the
+ * wrapping width do not change, so that drawing many callouts (on screen or when exporting) costs almost nothing.
+ * A real text area is only created while the overlay is selected, to type the text.
+ */
 public class TextOverlay extends RectangleOverlay {
+    private static final String DEFAULT_FONT_NAME = "Arial";
+    private static final int DEFAULT_FONT_SIZE = 18;
+    // Antialiased, like the text drawn by Swing components
+    private static final FontRenderContext FONT_RENDER_CONTEXT = new FontRenderContext(null, true, false);
 
     // TODO Implement use of the following fields (popup to select font and color)
     protected Color textColor = UI.TEXT_TOOL_DEFAULT_FOREGROUND_COLOR;
     protected String fontName;
     protected int fontSize;
     protected int fontStyle;
+    private String text = "";
 
+    // Caching
+    private Font font;
+    private volatile TextLines textLines;
+
+    // Editing
     private JTextArea textArea;
+    private String textBeforeEditing;
     private ImageEditorPane imagePane;
-    private CaptureEditingFrame frame;
 
     // Getters and setters required for XMLEncoder/XMLDecoder (de)serialization
 
-    public JTextArea getTextArea() {
-        return textArea;
+    public String getText() {
+        return text;
     }
 
-    public void setTextArea(JTextArea textArea) {
-        this.textArea = textArea;
+    public void setText(String text) {
+        final Rectangle oldBounds = getBoundsBeforeChange();
+        this.text = text == null ? "" : text;
+        if (textArea != null && !textArea.getText().equals(this.text)) {
+            textArea.setText(this.text);
+        }
+        fireChanged(oldBounds);
     }
 
     public Color getTextColor() {
@@ -38,7 +64,6 @@ public class TextOverlay extends RectangleOverlay {
 
     public void setTextColor(Color textColor) {
         this.textColor = textColor;
-        textArea.setForeground(textColor);
     }
 
     public String getFontName() {
@@ -46,10 +71,8 @@ public class TextOverlay extends RectangleOverlay {
     }
 
     public void setFontName(String fontName) {
-        // Store it
         this.fontName = fontName;
-        // And update the text area
-        textArea.setFont(new Font(fontName, fontStyle, fontSize));
+        fontChanged();
     }
 
     public int getFontSize() {
@@ -57,10 +80,8 @@ public class TextOverlay extends RectangleOverlay {
     }
 
     public void setFontSize(int fontSize) {
-        // Store it
         this.fontSize = fontSize;
-        // And update the text area
-        textArea.setFont(new Font(fontName, fontStyle, fontSize));
+        fontChanged();
     }
 
     public int getFontStyle() {
@@ -68,48 +89,147 @@ public class TextOverlay extends RectangleOverlay {
     }
 
     public void setFontStyle(int fontStyle) {
-        // Store it
         this.fontStyle = fontStyle;
-        // And update the text area
-        textArea.setFont(new Font(fontName, fontStyle, fontSize));
+        fontChanged();
+    }
+
+    /**
+     * Only kept to read captures saved when the whole text area was persisted with the overlay
+     * @param textArea the deserialized text area, from which the text and font are taken
+     * @deprecated the text and font are now persisted as properties of the overlay
+     */
+    @Deprecated
+    public void setTextArea(JTextArea textArea) {
+        final Font textAreaFont = textArea.getFont();
+        fontName = textAreaFont.getName();
+        fontStyle = textAreaFont.getStyle();
+        fontSize = textAreaFont.getSize();
+        fontChanged();
+        setText(textArea.getText());
     }
 
     @Override
     public void setSelected(boolean selected) {
         super.setSelected(selected);
         if (selected) {
-            if (!textArea.hasFocus()) {
-                textArea.requestFocusInWindow();
-            }
+            startEditing();
+        }
+        else {
+            stopEditing();
         }
     }
 
     @Override
     public TextOverlay initialize(Point initialPoint, Color initialColor) {
         super.initialize(initialPoint, initialColor);
-        textArea = new JTextArea();
-        textArea.setForeground(initialColor);
         // TODO current font of overlay should be a variable, initialized with the Tool's default
-        textArea.setFont(new Font("Arial", Font.PLAIN, 18));
+        fontName = DEFAULT_FONT_NAME;
+        fontStyle = Font.PLAIN;
+        fontSize = DEFAULT_FONT_SIZE;
+        return this;
+    }
 
-        textArea.addFocusListener(new FocusAdapter() {
-            @Override
-            public void focusGained(FocusEvent e) {
+    @Override
+    public void addedTo(ImageEditorPane imagePane) {
+        this.imagePane = imagePane;
+        if (isSelected()) {
+            startEditing();
+        }
+    }
 
-// TODO what happens after de/serialization of the overlay ?
+    @Override
+    public void removedFrom(ImageEditorPane imagePane) {
+        if (textArea != null) {
+            // Keep what was typed, e.g. to restore it if the removal is undone
+            setText(textArea.getText());
+            closeTextArea();
+        }
+    }
 
-                if (!isSelected()) {
-                    // Set this one as selected, but also deselect others
-                    imagePane.setSelectedOverlay(TextOverlay.this);
-                }
+    @Override
+    public void zoomChanged(ImageEditorPane imagePane) {
+        if (textArea != null) {
+            layoutTextArea();
+        }
+    }
+
+    @Override
+    protected void onChange() {
+        if (textArea != null && rectangle != null) {
+            layoutTextArea();
+        }
+    }
+
+    /**
+     * Shows a text area over the overlay to type the text.
+     * Note: while editing, the text is therefore drawn above other overlays, whatever their order.
+     */
+    private void startEditing() {
+        if (imagePane == null) {
+            return;
+        }
+        if (textArea == null) {
+            textArea = new JTextArea(text);
+            textArea.setLineWrap(true);
+            textArea.setWrapStyleWord(true);
+            // No border nor margin, so that the text is at the same place as when drawn by the overlay
+            textArea.setBorder(BorderFactory.createEmptyBorder());
+            textArea.setMargin(new Insets(0, 0, 0, 0));
+            textBeforeEditing = text;
+            imagePane.add(textArea);
+            layoutTextArea();
+        }
+        if (!textArea.hasFocus()) {
+            textArea.requestFocusInWindow();
+        }
+    }
+
+    /**
+     * Takes the typed text into the model, and closes the text area. The change can be undone as a whole
+     */
+    private void stopEditing() {
+        if (textArea == null) {
+            return;
+        }
+        final String typedText = textArea.getText();
+        closeTextArea();
+        if (!typedText.equals(textBeforeEditing)) {
+            setText(typedText);
+            if (imagePane != null && imagePane.getFrame() != null) {
+                imagePane.getFrame().addUndoableAction(new ChangeTextAction(imagePane, this, textBeforeEditing, typedText));
             }
-        });
-        textArea.setFocusable(true);
-        textArea.requestFocusInWindow();
-        textArea.getDocument().addUndoableEditListener(
-                e -> frame.addUndoableEdit(e.getEdit()));
-        add(textArea);
-        return this;
+        }
+        else {
+            // The text area was hiding the text drawn with the overlay
+            fireChanged(getBoundsBeforeChange());
+        }
+    }
+
+    private void closeTextArea() {
+        imagePane.remove(textArea);
+        imagePane.repaint(textArea.getBounds());
+        textArea = null;
+    }
+
+    private void layoutTextArea() {
+        Rectangle textRectangle = getTextRectangle(getDragOffset().x, getDragOffset().y);
+        final double zoom = imagePane == null ? 1 : imagePane.getZoom();
+        if (imagePane != null) {
+            textRectangle = imagePane.toViewArea(textRectangle);
+        }
+        final Font unzoomedFont = getFont();
+        textArea.setFont(zoom == 1 ? unzoomedFont : unzoomedFont.deriveFont((float) (unzoomedFont.getSize2D() * zoom)));
+        textArea.setBounds(textRectangle);
+        textArea.setForeground(getColor());
+    }
+
+    private void fontChanged() {
+        final Rectangle oldBounds = getBoundsBeforeChange();
+        font = null;
+        if (textArea != null) {
+            layoutTextArea();
+        }
+        fireChanged(oldBounds);
     }
 
     @Override
@@ -117,17 +237,87 @@ public class TextOverlay extends RectangleOverlay {
         return "Text";
     }
 
+    @Override
+    @java.beans.Transient
+    public long getEstimatedSize() {
+        return super.getEstimatedSize() + 2L * text.length();
+    }
+
     @Override
     public void drawComponent(Graphics2D g2d, int xOffset, int yOffset) {
-        Rectangle textRectangle = new Rectangle(rectangle);
-        textRectangle.grow(-10, -8);
-        textArea.setBounds(textRectangle);
-        textArea.setForeground(getColor());
         g2d.setColor(Color.WHITE);
         g2d.fillRoundRect(rectangle.x + 2 + xOffset, rectangle.y + 2 + yOffset, rectangle.width - 4, rectangle.height - 4, 8, 8);
         g2d.setColor(getColor());
         g2d.setStroke(new BasicStroke(6));
         g2d.drawRoundRect(rectangle.x + xOffset, rectangle.y + yOffset, rectangle.width, rectangle.height, 16, 16);
+        drawText(g2d, xOffset, yOffset);
+    }
+
+    /**
+     * Draws the text from the cached layouts. When editing, the text area hides the text drawn here.
+     */
+    private void drawText(Graphics2D g2d, int xOffset, int yOffset) {
+        if (text.isEmpty()) {
+            return;
+        }
+        final Rectangle textRectangle = getTextRectangle(xOffset, yOffset);
+        final TextLines lines = getTextLines(textRectangle.width);
+        final Graphics2D textG2d = (Graphics2D) g2d.create();
+        textG2d.clip(textRectangle);
+        textG2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        textG2d.setColor(getColor());
+        float y = textRectangle.y;
+        for (TextLayout layout : lines.layouts) {
+            if (layout == null) {
+                // Empty line
+                y += lines.emptyLineHeight;
+            }
+            else {
+                layout.draw(textG2d, textRectangle.x, y + layout.getAscent());
+                y += layout.getAscent() + layout.getDescent() + layout.getLeading();
+            }
+            if (y > textRectangle.y + textRectangle.height) {
+                break;
+            }
+        }
+        textG2d.dispose();
+    }
+
+    /**
+     * Returns the text laid out in lines, from the cache if the text, font and wrapping width did not change
+     * @param wrapWidth the width of the lines
+     * @return the laid out lines
+     */
+    private TextLines getTextLines(int wrapWidth) {
+        TextLines lines = textLines;
+        final Font currentFont = getFont();
+        if (lines == null || lines.wrapWidth != wrapWidth || !lines.text.equals(text) || !lines.font.equals(currentFont)) {
+            lines = new TextLines(text, currentFont, wrapWidth);
+            textLines = lines;
+        }
+        return lines;
+    }
+
+    /**
+     * @return the area of the text inside the box, in image coordinates
+     */
+    private Rectangle getTextRectangle(int xOffset, int yOffset) {
+        final Rectangle textRectangle = new Rectangle(rectangle);
+        textRectangle.grow(-10, -8);
+        textRectangle.translate(xOffset, yOffset);
+        return textRectangle;
+    }
+
+    /**
+     * @return the font of the text, at full size
+     */
+    private Font getFont() {
+        Font currentFont = font;
+        if (currentFont == null) {
+            currentFont = new Font(fontName == null ? DEFAULT_FONT_NAME : fontName, fontStyle, fontSize > 0 ? fontSize : DEFAULT_FONT_SIZE);
+            font = currentFont;
+        }
+        return currentFont;
     }
 
     @java.beans.Transient
@@ -140,13 +330,37 @@ public class TextOverlay extends RectangleOverlay {
         return imagePane;
     }
 
-    @java.beans.Transient
-    public void setFrame(CaptureEditingFrame frame) {
-        this.frame = frame;
-    }
 
-    @java.beans.Transient
-    public CaptureEditingFrame getFrame() {
-        return frame;
+    /**
+     * A text laid out in lines, wrapped at word boundaries like in the text area. Immutable, so it can be shared by
+     * threads rendering the overlay
+     */
+    private static class TextLines {
+        private final String text;
+        private final Font font;
+        private final int wrapWidth;
+        // One layout per line, null for empty lines
+        private final List<TextLayout> layouts = new ArrayList<>();
+        private final float emptyLineHeight;
+
+        TextLines(String text, Font font, int wrapWidth) {
+            this.text = text;
+            this.font = font;
+            this.wrapWidth = wrapWidth;
+            emptyLineHeight = font.getLineMetrics(" ", FONT_RENDER_CONTEXT).getHeight();
+            final float width = Math.max(1, wrapWidth);
+            for (String paragraph : text.split("\n", -1)) {
+                if (paragraph.isEmpty()) {
+                    layouts.add(null);
+                    continue;
+                }
+                final AttributedString attributedParagraph = new AttributedString(paragraph);
+                attributedParagraph.addAttribute(TextAttribute.FONT, font);
+                final LineBreakMeasurer measurer = new LineBreakMeasurer(attributedParagraph.getIterator(), FONT_RENDER_CONTEXT);
+                while (measurer.getPosition() < paragraph.length()) {
+                    layouts.add(measurer.nextLayout(width));
+                }
+            }
+        }
     }
 }
@@ -31,7 +31,6 @@ public class TextTool implements GinjTool {
         final TextOverlay overlay = new TextOverlay().initialize(initalPosition, initialColor);
         overlay.setTextColor(getTextColor());
         overlay.setImagePane(imagePane);
-        overlay.setFrame(frame);
         return overlay;
     }
 }
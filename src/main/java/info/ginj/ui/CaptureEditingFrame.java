@@ -2,27 +2,31 @@ package info.ginj.ui;
 
 import info.ginj.Ginj;
 import info.ginj.action.AbstractUndoableAction;
+import info.ginj.action.UndoHistory;
 import info.ginj.export.Exporter;
 import info.ginj.model.Capture;
 import info.ginj.model.Prefs;
 import info.ginj.model.Target;
+import info.ginj.tool.CaptureRenderer;
 import info.ginj.tool.GinjTool;
 import info.ginj.tool.Overlay;
 import info.ginj.tool.arrow.ArrowTool;
 import info.ginj.tool.frame.FrameTool;
 import info.ginj.tool.highlight.HighlightTool;
+import info.ginj.tool.redact.RedactTool;
+import info.ginj.tool.text.TextOverlay;
 import info.ginj.tool.text.TextTool;
 import info.ginj.ui.component.*;
 import info.ginj.util.Misc;
+import info.ginj.util.PerfLog;
 import info.ginj.util.UI;
+import info.ginj.video.Videos;
 
 import javax.imageio.ImageIO;
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
-import javax.swing.event.UndoableEditEvent;
 import javax.swing.undo.CannotRedoException;
-import javax.swing.undo.UndoManager;
-import javax.swing.undo.UndoableEdit;
+import javax.swing.undo.CannotUndoException;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
@@ -46,7 +50,7 @@ public class CaptureEditingFrame extends JFrame implements TargetListChangeListe
     private final ImageEditorPane imagePane;
     private final GinjMiniToolButton undoButton;
     private final GinjMiniToolButton redoButton;
-    private final UndoManager undoManager = new UndoManager();
+    private final UndoHistory undoHistory = new UndoHistory(Prefs.getInt(Prefs.Key.UNDO_MAX_EDITS, 500, 1, 100_000), Prefs.getInt(Prefs.Key.UNDO_MAX_MEMORY_KB, 8192, 0, Integer.MAX_VALUE) * 1024L);
     private final GinjToolButton colorToolButton;
     private final JTextField nameTextField;
 
@@ -85,7 +89,17 @@ public class CaptureEditingFrame extends JFrame implements TargetListChangeListe
         // Prepare main image panel first because it will be needed in ActionHandlers
         BufferedImage originalImage;
         if (capture.isVideo()) {
-            throw new RuntimeException("TODO Video");
+            // Videos cannot be annotated (yet). Just show their first frame
+            originalImage = capture.getOriginalImage();
+            if (originalImage == null) {
+                try {
+                    originalImage = Videos.readPosterFrame(capture.getOriginalFile());
+                }
+                catch (IOException e) {
+                    UI.alertException(this, "Load error", "Error loading video file '" + capture.getOriginalFile() + "'", e);
+                    originalImage = new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB);
+                }
+            }
         }
         else {
             originalImage = capture.getOriginalImage();
@@ -98,16 +112,18 @@ public class CaptureEditingFrame extends JFrame implements TargetListChangeListe
                     originalImage = new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB);
                 }
             }
+            PerfLog.log("Capture", capture.getId() + " retains " + Misc.getPrettySize(capture.getRetainedImageBytes()) + " of image data");
         }
         imagePane = new ImageEditorPane(this, originalImage);
+        imagePane.setEditable(!capture.isVideo());
 
 
-        // Absolute positioning of components over the image
+        // Absolute positioning of components hosted by overlays over the image
         imagePane.setLayout(null);
 
         // Restore overlays, if any
         for (Overlay overlay : capture.getOverlays()) {
-            imagePane.add(overlay);
+            imagePane.addOverlay(overlay);
         }
 
         final Container contentPane = getContentPane();
@@ -129,7 +145,7 @@ public class CaptureEditingFrame extends JFrame implements TargetListChangeListe
         toolBar.setBorder(new EmptyBorder(6, 6, 6, 6));
 
         ButtonGroup toolButtonGroup = new ButtonGroup();
-        GinjTool[] tools = new GinjTool[]{new ArrowTool(), new TextTool(), new FrameTool(), new HighlightTool()};
+        GinjTool[] tools = new GinjTool[]{new ArrowTool(), new TextTool(), new FrameTool(), new HighlightTool(), new RedactTool()};
         for (GinjTool tool : tools) {
             addToolButton(toolBar, tool, toolButtonGroup);
         }
@@ -157,6 +173,8 @@ public class CaptureEditingFrame extends JFrame implements TargetListChangeListe
         undoRedoPanel.add(redoButton);
         toolBar.add(undoRedoPanel);
 
+        toolBar.setVisible(!capture.isVideo());
+
         c = new GridBagConstraints();
         c.gridx = 0;
         c.gridy = 1;
@@ -263,6 +281,7 @@ public class CaptureEditingFrame extends JFrame implements TargetListChangeListe
         }
 
         // See if a resize is needed or not
+        JScrollPane scrollableImagePanel = null;
         if (mustResize) {
             // Replace the imagePane by a JScrollPane filling the whole space and containing in turn the imagePane
             c = new GridBagConstraints();
@@ -271,7 +290,7 @@ public class CaptureEditingFrame extends JFrame implements TargetListChangeListe
             c.fill = GridBagConstraints.BOTH;
             c.weightx = 1;
             c.weighty = 1;
-            JScrollPane scrollableImagePanel = new JScrollPane(imagePane);
+            scrollableImagePanel = new JScrollPane(imagePane);
             mainPanel.add(scrollableImagePanel, c);
         }
         // Lay out components again
@@ -279,6 +298,12 @@ public class CaptureEditingFrame extends JFrame implements TargetListChangeListe
         // And limit size
         setSize(size);
 
+        if (scrollableImagePanel != null) {
+            // Start with the whole image visible. The user can then zoom with Ctrl+wheel or Ctrl+/-/0
+            validate();
+            imagePane.zoomToFit(scrollableImagePanel.getViewport().getExtentSize());
+        }
+
         // Center window
         starWindow.centerFrameOnStarIconDisplay(this);
     }
@@ -299,7 +324,7 @@ public class CaptureEditingFrame extends JFrame implements TargetListChangeListe
 
         for (Target target : Ginj.getTargetPrefs().getTargetList()) {
             Exporter exporter = target.getExporter();
-            if (exporter.isImageSupported() && (!exporter.isOnlineService() || Prefs.isTrue(Prefs.Key.USE_SMALL_BUTTONS_FOR_ONLINE_TARGETS))) {
+            if (isSupported(exporter) && (!exporter.isOnlineService() || Prefs.isTrue(Prefs.Key.USE_SMALL_BUTTONS_FOR_ONLINE_TARGETS))) {
                 GinjLowerButton targetButton = new GinjLowerButton(target.getDisplayName(), exporter.getButtonIcon(16));
                 targetButton.addActionListener(e -> onExport(target));
                 buttonBar.add(targetButton);
@@ -375,20 +400,21 @@ public class CaptureEditingFrame extends JFrame implements TargetListChangeListe
     }
 
     private void refreshUndoRedoButtons() {
-        undoButton.setEnabled(undoManager.canUndo());
-        redoButton.setEnabled(undoManager.canRedo());
+        undoButton.setEnabled(undoHistory.canUndo());
+        redoButton.setEnabled(undoHistory.canRedo());
         // ENHANCEMENT
-        undoButton.setToolTipText(undoManager.canUndo() ? undoManager.getUndoPresentationName() : null);
-        redoButton.setToolTipText(undoManager.canRedo() ? undoManager.getRedoPresentationName() : null);
+        undoButton.setToolTipText(undoHistory.canUndo() ? undoHistory.getUndoPresentationName() : null);
+        redoButton.setToolTipText(undoHistory.canRedo() ? undoHistory.getRedoPresentationName() : null);
     }
 
     public void attemptUndo() {
-        if (undoManager.canUndo()) {
+        stopTextEditing();
+        if (undoHistory.canUndo()) {
             try {
-                undoManager.undo();
+                undoHistory.undo();
             }
-            catch (CannotRedoException cre) {
-                cre.printStackTrace();
+            catch (CannotUndoException cue) {
+                cue.printStackTrace();
             }
             imagePane.repaint();
             refreshUndoRedoButtons();
@@ -396,9 +422,10 @@ public class CaptureEditingFrame extends JFrame implements TargetListChangeListe
     }
 
     public void attemptRedo() {
-        if (undoManager.canRedo()) {
+        stopTextEditing();
+        if (undoHistory.canRedo()) {
             try {
-                undoManager.redo();
+                undoHistory.redo();
             }
             catch (CannotRedoException cre) {
                 cre.printStackTrace();
@@ -416,43 +443,67 @@ public class CaptureEditingFrame extends JFrame implements TargetListChangeListe
      */
     public void addUndoableAction(AbstractUndoableAction action) {
         //System.out.println("Adding undoable action: " + action.getPresentationName());
-        undoManager.undoableEditHappened(new UndoableEditEvent(imagePane, action));
+        undoHistory.addEdit(action);
         refreshUndoRedoButtons();
     }
 
     /**
-     * Add a standard edit in a textArea to the Undo stack
-     * <p>
-     *
-     * @param edit The undoable edit
+     * Text typed in a text overlay is only added to the undo history when the overlay is deselected.
+     * Deselect it, so that the typed text can be undone
      */
-    public void addUndoableEdit(UndoableEdit edit) {
-        undoManager.addEdit(edit);
-        refreshUndoRedoButtons();
+    private void stopTextEditing() {
+        if (imagePane.getSelectedOverlay() instanceof TextOverlay) {
+            imagePane.setSelectedOverlay(null);
+        }
     }
 
+    private boolean isSupported(Exporter exporter) {
+        return capture.isVideo() ? exporter.isVideoSupported() : exporter.isImageSupported();
+    }
 
     private void onExport(Target target) {
-        // Render image and overlays, but no handles
-        imagePane.setSelectedOverlay(null);
-        BufferedImage renderedImage = new BufferedImage(imagePane.getWidth(), imagePane.getHeight(), BufferedImage.TYPE_INT_RGB);
-        Graphics g = renderedImage.getGraphics();
-        imagePane.paint(g);
-        g.dispose();
-        capture.setRenderedImage(renderedImage);
-
         // Save name and overlays
         capture.setName(nameTextField.getText());
 
-        List<Overlay> overlays = new ArrayList<>();
-        for (Component component : imagePane.getComponents()) {
-            if (component instanceof Overlay) {
-                overlays.add((Overlay) component);
-            }
-        }
+        final List<Overlay> overlays = new ArrayList<>(imagePane.getOverlays());
         capture.setOverlays(overlays);
 
-        // Perform export
+        if (capture.isVideo()) {
+            // Nothing to render, the video is exported as is. Its first frame is used for the thumbnail
+            capture.setRenderedFile(capture.getOriginalFile());
+            capture.setRenderedImage(imagePane.getCapturedImage());
+            startExport(target);
+        }
+        else {
+            // Render image and overlays, but no handles. This also ends text editing
+            imagePane.setSelectedOverlay(null);
+            final BufferedImage capturedImage = imagePane.getCapturedImage();
+            // Overlays are rendered from the model, in a background thread. Freeze the window meanwhile
+            setEnabled(false);
+            setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+            Thread rendererThread = new Thread(() -> {
+                try {
+                    final BufferedImage renderedImage = CaptureRenderer.render(capturedImage, overlays);
+                    SwingUtilities.invokeLater(() -> {
+                        setEnabled(true);
+                        setCursor(Cursor.getDefaultCursor());
+                        capture.setRenderedImage(renderedImage);
+                        startExport(target);
+                    });
+                }
+                catch (RuntimeException e) {
+                    SwingUtilities.invokeLater(() -> {
+                        setEnabled(true);
+                        setCursor(Cursor.getDefaultCursor());
+                        UI.alertException(this, "Export error", "Error rendering the capture", e);
+                    });
+                }
+            }, "Ginj export renderer");
+            rendererThread.start();
+        }
+    }
+
+    private void startExport(Target target) {
         Exporter exporter = target.getExporter();
         ExportFrame exportFrame = new ExportFrame(this, capture, exporter);
         exporter.initialize(this, exportFrame);
@@ -481,7 +532,7 @@ public class CaptureEditingFrame extends JFrame implements TargetListChangeListe
         JMenuItem menuItem;
         for (Target target : Ginj.getTargetPrefs().getTargetList()) {
             Exporter exporter = target.getExporter();
-            if (exporter.isOnlineService()) {
+            if (exporter.isOnlineService() && isSupported(exporter)) {
                 menuItem = new JMenuItem(target.getDisplayName(), exporter.getButtonIcon(24));
                 menuItem.addActionListener(e -> onExport(target));
                 popup.add(menuItem);
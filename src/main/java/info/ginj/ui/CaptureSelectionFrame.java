@@ -1,10 +1,15 @@
 package info.ginj.ui;
 
 import info.ginj.Ginj;
+import info.ginj.capture.ScreenGrab;
+import info.ginj.capture.ScreenGrabber;
+import info.ginj.model.Prefs;
 import info.ginj.ui.component.GinjBorderedLabel;
 import info.ginj.ui.component.GinjLowerButton;
 import info.ginj.ui.component.GinjLowerButtonBar;
 import info.ginj.util.Coords;
+import info.ginj.util.Misc;
+import info.ginj.util.PerfLog;
 import info.ginj.util.UI;
 
 import javax.swing.*;
@@ -16,8 +21,9 @@ import java.awt.event.MouseEvent;
 import java.awt.font.FontRenderContext;
 import java.awt.font.LineMetrics;
 import java.awt.font.TextAttribute;
-import java.awt.geom.Rectangle2D;
+import java.awt.geom.Area;
 import java.awt.image.BufferedImage;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -34,10 +40,13 @@ import java.util.Map;
  * If secondary displays are positioned to the right and/or below it, all their points are in the (+,+) quadrant,
  * but if a secondary display is above or to the left, its coordinates will be negative.
  * The logic is that all physical displays' bounds are first union'ed to create a mega-rectangle encompassing all displays.
- * Then, that mega-rectangle is captured to create a mega-image.
+ * Then, each display is captured to its own image (see ScreenGrabber): the one under the mouse first, the other ones
+ * in background.
  * Finally, a mega-window is created and displayed at the top-left corner of the mega-rectangle (maybe in negative space)
- * and painted with the mega-image, so it gives the impression you're selecting part of the screen while in fact
- * you're selecting part of the already captured image.
+ * and painted with the screen images, so it gives the impression you're selecting part of the screen while in fact
+ * you're selecting part of the already captured images.
+ * As long as a display is not captured yet, the corresponding part of the mega-window is left transparent (and
+ * nothing is drawn over it) so that it does not end up in the capture.
  * Note that it is possible that the top left corner in question is outside of all displays (e.g. the leftmost display
  * could be a small one with its bottom aligned with a large central one)
  * Anyway, inside that mega-window, the whole image is in a positive coordinate system, so an offset must be applied
@@ -58,23 +67,25 @@ public class CaptureSelectionFrame extends JFrame {
     private static final int OPERATION_NONE = -1;
 
     // Caching
-    private final List<Rectangle> visibleAreas = new ArrayList<>();
+    private List<Rectangle> visibleAreas;
     // See https://stackoverflow.com/a/10687248
     private final Cursor CURSOR_NONE = Toolkit.getDefaultToolkit().createCustomCursor(new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB), new Point(), null);
 
 
     // Current state
+    private ScreenGrabber screenGrabber;
     private Rectangle capturedArea;
-    private BufferedImage capturedScreenImg;
     private Point rememberedReferenceOffset = null; // filled when selecting or dragging
     private Rectangle selection; // filled when selection is done
     private int currentOperation = OPERATION_NONE;
     private boolean isInitialSelectionDone;
 
+    private final CaptureMainPane mainPane;
     private final JPanel actionPanel;
     private final GinjBorderedLabel captureSizeLabel;
     private final JButton imageButton;
     private final JButton videoButton;
+    private final JButton scrollingButton;
     private final StarWindow starWindow;
 
     public CaptureSelectionFrame(StarWindow starWindow) {
@@ -84,13 +95,15 @@ public class CaptureSelectionFrame extends JFrame {
         // No window title bar or border.
         // Note: setDefaultLookAndFeelDecorated(true); must not have been called anywhere for this to work
         setUndecorated(true);
+        // Make it transparent, so that screens which are not grabbed yet remain visible "as is"
+        setBackground(new Color(0, 0, 0, 0));
 
         // For Alt+Tab behaviour
         this.setTitle(Ginj.getAppName() + " Selection");
         this.setIconImage(StarWindow.getAppIcon());
 
-        JComponent contentPane = new CaptureMainPane();
-        setContentPane(contentPane);
+        mainPane = new CaptureMainPane();
+        setContentPane(mainPane);
         addMouseBehaviour();
 
         setLayout(null); // Allow absolute positioning of button bar
@@ -106,6 +119,9 @@ public class CaptureSelectionFrame extends JFrame {
         videoButton = new GinjLowerButton("Capture video", UI.createIcon(getClass().getResource("/img/icon/video.png"), 16, 16, UI.ICON_ENABLED_COLOR));
         videoButton.addActionListener(e -> onCaptureVideo());
         buttonBar.add(videoButton);
+        scrollingButton = new GinjLowerButton("Capture scrolling", UI.createIcon(getClass().getResource("/img/icon/scroll.png"), 16, 16, UI.ICON_ENABLED_COLOR));
+        scrollingButton.addActionListener(e -> onCaptureScrolling());
+        buttonBar.add(scrollingButton);
         final JButton redoButton = new GinjLowerButton("Redo selection", UI.createIcon(getClass().getResource("/img/icon/redo_selection.png"), 16, 16, UI.ICON_ENABLED_COLOR));
         redoButton.addActionListener(e -> onRedo());
         buttonBar.add(redoButton);
@@ -117,7 +133,7 @@ public class CaptureSelectionFrame extends JFrame {
 
         actionPanel.add(buttonBar);
         UI.packPanel(actionPanel);
-        contentPane.add(actionPanel);
+        mainPane.add(actionPanel);
 
         addKeyboardShortcuts();
 
@@ -145,36 +161,32 @@ public class CaptureSelectionFrame extends JFrame {
 
     public class CaptureMainPane extends JPanel {
         // Caching
-        private final Image dimmedScreenImg;
         private Font font;
         private FontRenderContext fontRenderContext;
 
+        // Bounds of the decorations (selection, cross lines, size box) as they were last painted
+        private List<Rectangle> paintedDecorations = List.of();
+        // Number of pixels painted since last frame was logged
+        private long paintedPixels = 0;
+
         public CaptureMainPane() {
-            try {
-                Robot robot = new Robot();
-                Rectangle2D areaToCapture = new Rectangle2D.Double(0,0,-1,-1);
-                GraphicsEnvironment graphicsEnvironment = GraphicsEnvironment.getLocalGraphicsEnvironment();
-                for (GraphicsDevice screenDevice : graphicsEnvironment.getScreenDevices()) {
-                    GraphicsConfiguration screenConfiguration = screenDevice.getDefaultConfiguration();
-                    //System.out.println(screenConfiguration.getBounds());
-                    visibleAreas.add(screenConfiguration.getBounds());
-                    Rectangle2D.union(areaToCapture, screenConfiguration.getBounds(), areaToCapture);
-                }
-                capturedArea = areaToCapture.getBounds();
+            setOpaque(false);
+            screenGrabber = new ScreenGrabber(Misc.isTrue(Prefs.get(Prefs.Key.CAPTURE_PER_DEVICE, "true")));
+            capturedArea = screenGrabber.getCapturedArea();
+            visibleAreas = screenGrabber.getScreenBounds();
 
 // Simulate small screen to be able to debug in parallel of "full screen" capture window on top
 //capturedArea = new Rectangle(0,0,800,600);
 //visibleAreas.clear();
 //visibleAreas.add(capturedArea);
 
-                capturedScreenImg = robot.createScreenCapture(capturedArea);
+            try {
+                // Screen under the mouse is grabbed now, other ones will repaint when they become available
+                screenGrabber.start(this::repaint);
             }
             catch (AWTException e) {
                 e.printStackTrace();
             }
-
-            // Prepared a dimmed & greyscale version to be used for "unselected area"
-            dimmedScreenImg = UI.makeDimmedImage(capturedScreenImg);
         }
 
         @Override
@@ -182,10 +194,67 @@ public class CaptureSelectionFrame extends JFrame {
             return new Dimension(capturedArea.width, capturedArea.height);
         }
 
+        /**
+         * Repaints only the areas covered by the decorations before and after the last change, instead of the whole
+         * (possibly 8K wide) window.
+         * Areas are painted right away instead of calling repaint(), because the RepaintManager would merge them into
+         * their bounding box, which is the whole window as soon as the cross lines are displayed.
+         */
+        public void repaintDecorations() {
+            List<Rectangle> dirtyAreas = new ArrayList<>(paintedDecorations);
+            dirtyAreas.addAll(getDecorationBounds(getMousePosition()));
+            for (Rectangle dirtyArea : Coords.mergeOverlapping(dirtyAreas)) {
+                paintImmediately(dirtyArea);
+            }
+            if (PerfLog.isEnabled()) {
+                PerfLog.log("Selection frame", paintedPixels + " pixels painted ("
+                        + (100 * paintedPixels / ((long) getWidth() * getHeight())) + "% of window)");
+            }
+            paintedPixels = 0;
+        }
+
+        /**
+         * @return the areas where decorations must be painted for the current state and the given mouse position
+         */
+        private List<Rectangle> getDecorationBounds(Point mousePosition) {
+            List<Rectangle> decorations = new ArrayList<>();
+            if (selection != null) {
+                // Everything inside is affected as well (bright vs dimmed), plus the stroke width around it
+                decorations.add(new Rectangle(selection.x - 2, selection.y - 2, selection.width + 5, selection.height + 5));
+            }
+            if (mousePosition != null) {
+                if (!isInitialSelectionDone) {
+                    decorations.add(new Rectangle(mousePosition.x - 2, 0, 5, getHeight()));
+                    decorations.add(new Rectangle(0, mousePosition.y - 2, getWidth(), 5));
+                }
+                if (getSizeText() != null) {
+                    final Rectangle sizeBox = getSizeBoxBounds(mousePosition);
+                    // Margin for antialiasing
+                    sizeBox.grow(1, 1);
+                    decorations.add(sizeBox);
+                }
+            }
+            return decorations;
+        }
+
         @Override
         protected void paintComponent(Graphics g) {
             super.paintComponent(g);
             Graphics2D g2d = (Graphics2D) g.create();
+
+            final Rectangle clipBounds = g2d.getClipBounds();
+            paintedPixels += (clipBounds == null) ? (long) getWidth() * getHeight() : (long) clipBounds.width * clipBounds.height;
+
+            // Only paint over screens that are already grabbed. The other ones must stay transparent for now.
+            final List<ScreenGrab> grabs = screenGrabber.getGrabs();
+            Area readyArea = new Area();
+            for (ScreenGrab grab : grabs) {
+                if (grab.isReady()) {
+                    readyArea.add(new Area(toWindowCoordinates(grab.getBounds())));
+                }
+            }
+            g2d.clip(readyArea);
+
             Point mousePosition = getMousePosition();
             Rectangle rectangleToDraw = null;
 
@@ -196,13 +265,14 @@ public class CaptureSelectionFrame extends JFrame {
             }
 
             if (rectangleToDraw != null) {
-                // Draw the dimmed image as background
-                g2d.drawImage(dimmedScreenImg, 0, 0, this);
+                // Draw the dimmed images as background
+                drawGrabs(g2d, true);
 
-                // Draw part of the original image over the dimmed image
-                g2d.setClip(rectangleToDraw);
-                g2d.drawImage(capturedScreenImg, 0, 0, this);
-                g2d.setClip(0, 0, capturedArea.width, capturedArea.height);
+                // Draw part of the original images over the dimmed images
+                final Shape clip = g2d.getClip();
+                g2d.clip(rectangleToDraw);
+                drawGrabs(g2d, false);
+                g2d.setClip(clip);
 
                 // Draw the selection rectangle
                 g2d.setColor(UI.AREA_SELECTION_COLOR);
@@ -210,8 +280,8 @@ public class CaptureSelectionFrame extends JFrame {
                 g2d.drawRect(rectangleToDraw.x, rectangleToDraw.y, rectangleToDraw.width, rectangleToDraw.height);
             }
             else {
-                // Draw the non-dimmed image on the whole screen
-                g2d.drawImage(capturedScreenImg, 0, 0, this);
+                // Draw the non-dimmed images on the whole screen
+                drawGrabs(g2d, false);
             }
 
             if (!isInitialSelectionDone && mousePosition != null) {
@@ -225,35 +295,16 @@ public class CaptureSelectionFrame extends JFrame {
             }
 
             // Determine size to print in size box
-            String sizeText = null;
-            if (selection == null) {
-                if (rectangleToDraw == null) {
-                    // No (partial) selection yet, show screen size
-                    // TODO : "capturedArea" to be replaced by "hovered window" when window detection is implemented
-                    sizeText = capturedArea.width + " x " + capturedArea.height;
-                }
-                else {
-                    // We're dragging, show current size
-                    sizeText = rectangleToDraw.width + " x " + rectangleToDraw.height;
-                }
-            }
-            else if (currentOperation != OPERATION_NONE && currentOperation != Cursor.DEFAULT_CURSOR && currentOperation != Cursor.MOVE_CURSOR) {
-                sizeText = selection.width + " x " + selection.height;
-            }
+            String sizeText = getSizeText();
 
             if (sizeText != null && mousePosition != null) {
                 // Use antialiasing
                 g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
                 // Draw the selection size box
                 g2d.setColor(UI.SELECTION_SIZE_BOX_COLOR);
-                int sizeBoxX = mousePosition.x + SIZE_BOX_OFFSET;
-                if (sizeBoxX + SIZE_BOX_WIDTH > capturedArea.width) {
-                    sizeBoxX = mousePosition.x - SIZE_BOX_OFFSET - SIZE_BOX_WIDTH;
-                }
-                int sizeBoxY = mousePosition.y + SIZE_BOX_OFFSET;
-                if (sizeBoxY + SIZE_BOX_HEIGHT > capturedArea.height) {
-                    sizeBoxY = mousePosition.y - SIZE_BOX_OFFSET - SIZE_BOX_HEIGHT;
-                }
+                final Rectangle sizeBox = getSizeBoxBounds(mousePosition);
+                int sizeBoxX = sizeBox.x;
+                int sizeBoxY = sizeBox.y;
                 g2d.fillRoundRect(sizeBoxX, sizeBoxY, SIZE_BOX_WIDTH, SIZE_BOX_HEIGHT, 4, 4);
 
                 // And print size
@@ -277,8 +328,68 @@ public class CaptureSelectionFrame extends JFrame {
             }
 
             g2d.dispose();
+
+            paintedDecorations = getDecorationBounds(mousePosition);
         }
 
+        /**
+         * @return the text to print in the size box, or null if no size box must be shown
+         */
+        private String getSizeText() {
+            if (selection == null) {
+                // No (partial) selection yet, show screen size
+                // TODO : "capturedArea" to be replaced by "hovered window" when window detection is implemented
+                return capturedArea.width + " x " + capturedArea.height;
+            }
+            else if (currentOperation != OPERATION_NONE && currentOperation != Cursor.DEFAULT_CURSOR && currentOperation != Cursor.MOVE_CURSOR) {
+                return selection.width + " x " + selection.height;
+            }
+            return null;
+        }
+
+        private Rectangle getSizeBoxBounds(Point mousePosition) {
+            int sizeBoxX = mousePosition.x + SIZE_BOX_OFFSET;
+            if (sizeBoxX + SIZE_BOX_WIDTH > capturedArea.width) {
+                sizeBoxX = mousePosition.x - SIZE_BOX_OFFSET - SIZE_BOX_WIDTH;
+            }
+            int sizeBoxY = mousePosition.y + SIZE_BOX_OFFSET;
+            if (sizeBoxY + SIZE_BOX_HEIGHT > capturedArea.height) {
+                sizeBoxY = mousePosition.y - SIZE_BOX_OFFSET - SIZE_BOX_HEIGHT;
+            }
+            return new Rectangle(sizeBoxX, sizeBoxY, SIZE_BOX_WIDTH, SIZE_BOX_HEIGHT);
+        }
+
+        private void drawGrabs(Graphics2D g2d, boolean dimmed) {
+            final Rectangle clipBounds = g2d.getClipBounds();
+            for (ScreenGrab grab : screenGrabber.getGrabs()) {
+                final BufferedImage image = grab.getImage();
+                final Rectangle bounds = toWindowCoordinates(grab.getBounds());
+                if (image != null && (clipBounds == null || clipBounds.intersects(bounds))) {
+                    if (dimmed) {
+                        // Only draws (and if needed computes) the dimmed tiles intersecting the clip
+                        grab.getDimmedImage().draw(g2d, bounds.x, bounds.y, this);
+                    }
+                    else {
+                        g2d.drawImage(image, bounds.x, bounds.y, this);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Converts a rectangle from virtual desktop coordinates to the coordinates of this mega-window
+     */
+    private Rectangle toWindowCoordinates(Rectangle rectangle) {
+        return new Rectangle(rectangle.x - capturedArea.x, rectangle.y - capturedArea.y, rectangle.width, rectangle.height);
+    }
+
+    /**
+     * Registers a task to run once all screens are grabbed. Used to restore windows that must not appear in the capture
+     * Note: the task is not run in the EDT
+     */
+    public void whenScreensGrabbed(Runnable task) {
+        screenGrabber.whenComplete(task);
     }
 
     private void addMouseBehaviour() {
@@ -399,7 +510,7 @@ public class CaptureSelectionFrame extends JFrame {
                     }
                 }
                 // Paint rectangle (and cross lines if making selection)
-                window.repaint();
+                mainPane.repaintDecorations();
             }
 
             @Override
@@ -407,7 +518,7 @@ public class CaptureSelectionFrame extends JFrame {
                 if (selection == null) {
                     // Selection not done yet
                     // Paint cross lines
-                    window.repaint();
+                    mainPane.repaintDecorations();
                 }
                 else {
                     // Selection done
@@ -505,6 +616,7 @@ public class CaptureSelectionFrame extends JFrame {
             boolean isValidArea = (croppedSelection.width > 5) && (croppedSelection.height > 5);
             imageButton.setEnabled(isValidArea);
             videoButton.setEnabled(isValidArea);
+            scrollingButton.setEnabled(isValidArea);
             positionActionPanel();
             revalidate();
         }
@@ -587,15 +699,43 @@ public class CaptureSelectionFrame extends JFrame {
     private void onCaptureImage() {
         // Crop image
         final Rectangle croppedSelection = selection.intersection(new Rectangle(0, 0, capturedArea.width, capturedArea.height));
-        final BufferedImage capturedImg = capturedScreenImg.getSubimage(croppedSelection.x, croppedSelection.y, croppedSelection.width, croppedSelection.height);
+        croppedSelection.translate(capturedArea.x, capturedArea.y);
+        final BufferedImage capturedImg = screenGrabber.crop(croppedSelection);
+        // The cropped image has its own raster, so the full screen images can be dropped
+        screenGrabber.whenComplete(screenGrabber::release);
         final CaptureEditingFrame captureEditingFrame = new CaptureEditingFrame(starWindow, capturedImg);
         captureEditingFrame.setVisible(true);
         dispose();
     }
 
     private void onCaptureVideo() {
-        UI.featureNotImplementedDialog(this);
-        // TODO
+        final Rectangle croppedSelection = selection.intersection(new Rectangle(0, 0, capturedArea.width, capturedArea.height));
+        croppedSelection.translate(capturedArea.x, capturedArea.y);
+        // Screen images are useless from now on, and this window must not appear in the recording
+        screenGrabber.whenComplete(screenGrabber::release);
+        dispose();
+        try {
+            final RecordingFrame recordingFrame = new RecordingFrame(starWindow, croppedSelection);
+            recordingFrame.setVisible(true);
+        }
+        catch (IOException | AWTException e) {
+            UI.alertException(null, "Recording error", "Could not start recording", e);
+        }
+    }
+
+    private void onCaptureScrolling() {
+        final Rectangle croppedSelection = selection.intersection(new Rectangle(0, 0, capturedArea.width, capturedArea.height));
+        croppedSelection.translate(capturedArea.x, capturedArea.y);
+        // Screen images are useless from now on, and this window must not appear in the grabs
+        screenGrabber.whenComplete(screenGrabber::release);
+        dispose();
+        try {
+            final ScrollingCaptureFrame scrollingCaptureFrame = new ScrollingCaptureFrame(starWindow, croppedSelection);
+            scrollingCaptureFrame.setVisible(true);
+        }
+        catch (AWTException e) {
+            UI.alertException(null, "Capture error", "Could not start scrolling capture", e);
+        }
     }
 
     private void onRedo() {
@@ -603,6 +743,7 @@ public class CaptureSelectionFrame extends JFrame {
     }
 
     private void onCancel() {
+        screenGrabber.whenComplete(screenGrabber::release);
         dispose();
     }
 
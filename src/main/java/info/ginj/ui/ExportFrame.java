@@ -4,23 +4,15 @@ import info.ginj.Ginj;
 import info.ginj.export.ExportMonitor;
 import info.ginj.export.Exporter;
 import info.ginj.model.Capture;
+import info.ginj.model.CaptureHistory;
 import info.ginj.model.Target;
 import info.ginj.ui.component.GinjLabel;
 import info.ginj.util.Misc;
 import info.ginj.util.UI;
 
-import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
-import java.awt.geom.AffineTransform;
-import java.awt.image.AffineTransformOp;
-import java.awt.image.BufferedImage;
-import java.beans.XMLEncoder;
-import java.io.BufferedOutputStream;
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.file.Files;
 
 /**
  * This "small" progress window is responsible for starting, monitoring, and controlling an export in background.
@@ -204,98 +196,14 @@ public class ExportFrame extends JFrame implements ExportMonitor {
 
     // TODO Should probably be in a separate thread
     private boolean saveToHistory(Capture capture) {
-        File historyFolder = Ginj.getHistoryFolder();
-        if (!historyFolder.exists()) {
-            if (!historyFolder.mkdirs()) {
-                UI.alertError(this, "Save error", "Could not create history folder (" + historyFolder.getAbsolutePath() + ")");
-                return false;
-            }
-        }
-
-        // Save the original file to history
-        // ENHANCEMENT we store the source, not the rendered version !
-        // Compute filename (no version involved here)
-        File originalFile = new File(historyFolder, capture.getId() + (capture.isVideo()? Misc.VIDEO_EXTENSION: Misc.IMAGE_EXTENSION));
         try {
-            // Original file could be shared between multiple captures, only store it once
-            if (!originalFile.exists()) {
-                // Save capture itself
-                if (capture.getOriginalFile() != null) {
-                    // Move file to history
-                    Files.move(capture.getOriginalFile().toPath(), originalFile.toPath());
-                }
-                else {
-                    // No original file on disk, write image from memory (should not be null !)
-                    if (!ImageIO.write(capture.getOriginalImage(), Misc.IMAGE_FORMAT_PNG, originalFile)) {
-                        UI.alertError(this, "Save error", "Writing capture to history failed (" + originalFile.getAbsolutePath() + ")");
-                        return false;
-                    }
-                }
-            }
+            CaptureHistory.save(capture);
         }
         catch (IOException e) {
-            UI.alertException(this, "Save error", "Saving capture to history failed (" + originalFile.getAbsolutePath() + ")", e);
-            return false;
-        }
-
-        // Save metadata and overlays to XML
-        // Compute filename (including version)
-        File metadataFile = new File(historyFolder, capture.getBaseFilename() + Misc.METADATA_EXTENSION);
-        try (XMLEncoder xmlEncoder = new XMLEncoder(new BufferedOutputStream(new FileOutputStream(metadataFile)))) {
-            xmlEncoder.writeObject(capture);
-        }
-        catch (Exception e) {
-            UI.alertError(this, "Save error", "Saving metadata and overlays to history failed (" + metadataFile.getAbsolutePath() + ")");
+            UI.alertException(this, "Save error", e.getMessage(), e);
             return false;
         }
 
-
-        // Save thumbnail
-        if (capture.isVideo()) {
-            throw new RuntimeException("TODO video thumbnail");
-        }
-        else {
-            BufferedImage thumbnailSourceImage = capture.getRenderedImage();
-            BufferedImage thumbnailImage;
-
-            int sourceImageWidth = thumbnailSourceImage.getWidth();
-            int sourceImageHeight = thumbnailSourceImage.getHeight();
-            int thumbnailWidth = HistoryFrame.THUMBNAIL_SIZE.width;
-            int thumbnailHeight = HistoryFrame.THUMBNAIL_SIZE.height;
-
-            if (sourceImageWidth > thumbnailWidth || sourceImageHeight > thumbnailHeight) {
-                // Resize
-                double hScale = thumbnailWidth / ((double) sourceImageWidth);
-                double vScale = thumbnailHeight / ((double) sourceImageHeight);
-                double scale = Math.min(hScale, vScale);
-
-                int targetWidth = (int) (sourceImageWidth * scale);
-                int targetHeight = (int) (sourceImageHeight * scale);
-
-                thumbnailImage = new BufferedImage(targetWidth, targetHeight, thumbnailSourceImage.getType());
-                AffineTransform scaleInstance = AffineTransform.getScaleInstance(scale, scale);
-                AffineTransformOp scaleOp = new AffineTransformOp(scaleInstance, AffineTransformOp.TYPE_BILINEAR);
-                scaleOp.filter(thumbnailSourceImage, thumbnailImage);
-            }
-            else {
-                thumbnailImage = thumbnailSourceImage;
-            }
-
-            // Write the thumbnail to disk
-            // Compute filename (including version)
-            File thumbnailFile = new File(historyFolder, capture.getBaseFilename() + Misc.THUMBNAIL_EXTENSION);
-            try {
-                if (!ImageIO.write(thumbnailImage, Misc.IMAGE_FORMAT_PNG, thumbnailFile)) {
-                    UI.alertError(this, "Save error", "Saving thumbnail to history failed (" + thumbnailFile.getAbsolutePath() + ")");
-                    return false;
-                }
-            }
-            catch (IOException e) {
-                UI.alertException(this, "Save error", "Saving thumbnail to history failed (" + thumbnailFile.getAbsolutePath() + ")", e);
-                return false;
-            }
-        }
-
         if (Ginj.starWindow.getHistoryFrame() != null) {
             Ginj.starWindow.getHistoryFrame().refreshHistoryList();
         }
@@ -1,11 +1,17 @@
 package info.ginj.ui;
 
 import info.ginj.Ginj;
+import info.ginj.export.Exporter;
 import info.ginj.model.Capture;
+import info.ginj.model.HistoryEntry;
+import info.ginj.model.HistoryStore;
+import info.ginj.model.Target;
+import info.ginj.tool.CaptureRenderer;
 import info.ginj.ui.component.GinjBorderedLabel;
 import info.ginj.ui.component.GinjLabel;
-import info.ginj.ui.layout.WrapLayout;
 import info.ginj.util.Misc;
+import info.ginj.util.PerfLog;
+import info.ginj.util.ThumbnailCache;
 import info.ginj.util.UI;
 
 import javax.imageio.ImageIO;
@@ -15,13 +21,13 @@ import java.awt.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.image.BufferedImage;
-import java.beans.XMLDecoder;
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.io.IOException;
 import java.util.List;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * This window displays and manages the historized captures
@@ -36,8 +42,14 @@ public class HistoryFrame extends JFrame {
     private final ImageIcon deleteIcon;
 
     private final StarWindow starWindow;
-    private HistoryItemWidget selectedItem;
-    private final JPanel historyList;
+    private HistoryEntry selectedEntry;
+    private final HistoryGrid historyGrid;
+    // Loads the list and the thumbnails in the background, one at a time so that thumbnails load in display order
+    private final ExecutorService historyLoader = Executors.newSingleThreadExecutor(runnable -> {
+        Thread loaderThread = new Thread(runnable, "Ginj history loader");
+        loaderThread.setDaemon(true);
+        return loaderThread;
+    });
 
     public HistoryFrame(StarWindow starWindow) {
         super();
@@ -96,18 +108,17 @@ public class HistoryFrame extends JFrame {
         c.gridy = 1;
         contentPane.add(filterBar, c);
 
-        JComponent historyPanel;
-        historyList = new JPanel(new WrapLayout(WrapLayout.LEFT));
+        historyGrid = new HistoryGrid();
+        JScrollPane historyPanel = new JScrollPane(historyGrid);
+        historyPanel.setPreferredSize(MAIN_AREA_DEFAULT_SIZE);
+        historyPanel.getViewport().addChangeListener(e -> historyGrid.updateVisibleWidgets());
 
         refreshHistoryList();
 
-        historyPanel = new JScrollPane(historyList);
-        historyPanel.setPreferredSize(MAIN_AREA_DEFAULT_SIZE);
-
         historyPanel.addMouseListener(new MouseAdapter() {
             @Override
             public void mouseReleased(MouseEvent e) {
-                setSelectedItem(null);
+                setSelectedEntry(null);
             }
         });
 
@@ -144,118 +155,315 @@ public class HistoryFrame extends JFrame {
         starWindow.centerFrameOnStarIconDisplay(this);
     }
 
+    /**
+     * Reloads the list of captures in the background. Meanwhile, the current list remains displayed
+     */
     public void refreshHistoryList() {
-        historyList.removeAll();
-        final File[] files = Ginj.getHistoryFolder().listFiles((dir, name) -> name.toLowerCase().endsWith(Misc.METADATA_EXTENSION));
-
-        if (files == null) {
-            UI.alertError(this, "History error", "Could not list files in history folder '" + Ginj.getHistoryFolder().getAbsolutePath() +"'");
-            historyList.add(new JLabel("Error"));
-        }
-        else {
-            Arrays.sort(files, (o1, o2) -> (int) (o2.lastModified() - o1.lastModified())); // Sort most recent first
-
-            for (File file : files) {
-                historyList.add(new HistoryItemWidget(this, file));
+        final long startNanos = System.nanoTime();
+        historyLoader.submit(() -> {
+            try {
+                // Most recent first
+                final List<HistoryEntry> entries = HistoryStore.getInstance().getEntries();
+                SwingUtilities.invokeLater(() -> {
+                    historyGrid.setEntries(entries);
+                    PerfLog.log("History", String.format("Listed %d captures in %.1f ms", entries.size(), (System.nanoTime() - startNanos) / 1e6));
+                });
             }
-        }
-        historyList.validate();
+            catch (IOException e) {
+                SwingUtilities.invokeLater(() -> UI.alertException(this, "History error", "Could not open history in folder '" + Ginj.getHistoryFolder().getAbsolutePath() + "'", e));
+            }
+        });
     }
 
 
     private void onClose() {
         starWindow.setHistoryFrame(null);
+        historyLoader.shutdownNow();
         // Close window
         dispose();
     }
 
-    private void onEdit(Capture capture) {
+    /**
+     * @return the full capture of the given entry, with its overlays, or null if it could not be loaded
+     */
+    private Capture loadCapture(HistoryEntry entry) {
         try {
-            Capture newCapture = capture.clone();
-            newCapture.setVersion(capture.getVersion() + 1);
-            newCapture.setOriginalFile(getCaptureFile(capture));
-            final CaptureEditingFrame captureEditingFrame = new CaptureEditingFrame(starWindow, newCapture);
-            captureEditingFrame.setVisible(true);
+            return HistoryStore.getInstance().load(entry);
+        }
+        catch (IOException e) {
+            UI.alertException(this, "Load error", "Error loading capture '" + entry.getDefaultName() + "'", e);
+            return null;
+        }
+    }
+
+    private void onEdit(HistoryEntry entry) {
+        // The loaded capture is a new instance, that becomes the next version
+        Capture newCapture = loadCapture(entry);
+        if (newCapture == null) {
+            return;
         }
-        catch (CloneNotSupportedException e) {
-            UI.alertException(this, "Clone error", "Error creating clone of previous capture", e);
+        newCapture.setVersion(entry.getVersion() + 1);
+        newCapture.setOriginalFile(getCaptureFile(entry));
+        final CaptureEditingFrame captureEditingFrame = new CaptureEditingFrame(starWindow, newCapture);
+        captureEditingFrame.setVisible(true);
+    }
+
+    private void onExport(HistoryEntry entry, JButton button) {
+        // TODO for captures already shared online, could also copy the shared URL back to the clipboard
+        if (entry.isVideo()) {
+            UI.featureNotImplementedDialog(this);
+            return;
         }
+        JPopupMenu popup = new JPopupMenu();
+        for (Target target : Ginj.getTargetPrefs().getTargetList()) {
+            Exporter exporter = target.getExporter();
+            if (exporter.isImageSupported()) {
+                JMenuItem menuItem = new JMenuItem(target.getDisplayName(), exporter.getButtonIcon(24));
+                menuItem.addActionListener(e -> onExport(entry, target));
+                popup.add(menuItem);
+            }
+        }
+        popup.show(button, button.getWidth() / 2, button.getHeight() / 2);
     }
 
-    private void onExport(Capture capture) {
-        // TODO should copy the shared URL back to the clipboard, except for Clipboard that should re-execute an "export"
-        UI.featureNotImplementedDialog(this);
+    /**
+     * Re-exports a historized capture: the image is rendered from the original file and the saved overlays, in a
+     * background thread, without opening the editor
+     */
+    private void onExport(HistoryEntry entry, Target target) {
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        final File captureFile = getCaptureFile(entry);
+        Thread rendererThread = new Thread(() -> {
+            try {
+                final Capture capture = HistoryStore.getInstance().load(entry);
+                final BufferedImage originalImage = ImageIO.read(captureFile);
+                if (originalImage == null) {
+                    throw new IOException("Could not read " + captureFile.getAbsolutePath());
+                }
+                final BufferedImage renderedImage = CaptureRenderer.render(originalImage, capture.getOverlays());
+                SwingUtilities.invokeLater(() -> {
+                    setCursor(Cursor.getDefaultCursor());
+                    capture.setOriginalImage(originalImage);
+                    capture.setRenderedImage(renderedImage);
+                    Exporter exporter = target.getExporter();
+                    // No parent window: the history remains open during and after the export
+                    ExportFrame exportFrame = new ExportFrame(null, capture, exporter);
+                    exporter.initialize(this, exportFrame);
+                    exportFrame.setVisible(true);
+                    exportFrame.startExport(target);
+                });
+            }
+            catch (IOException | RuntimeException e) {
+                SwingUtilities.invokeLater(() -> {
+                    setCursor(Cursor.getDefaultCursor());
+                    UI.alertException(this, "Export error", "Error rendering capture " + entry.getDefaultName(), e);
+                });
+            }
+        }, "Ginj export renderer");
+        rendererThread.start();
     }
 
 
-    private void onDelete(Capture capture) {
+    private void onDelete(HistoryEntry entry) {
         // TODO ask the question: Also delete from storages (and list them) ?
         // TODO if re-exported captures point to the same source, only delete the source media when it's the last one
-        final List<String> sharingCaptures = getCapturesSharingSourceFile(capture);
+        final List<String> sharingCaptures = getCapturesSharingSourceFile(entry);
         String message = "The selected capture will be deleted from the history.\n";
         message += "(For now, the exported version (if any) will remain untouched.)\n";
         if (!sharingCaptures.isEmpty()) {
             message += "NOTE: the source file will remain on disk because it is shared with the following capture(s): " + sharingCaptures + "\n";
         }
-        message += "Are you sure you want to delete capture '" + capture.getName() + "'?";
+        message += "Are you sure you want to delete capture '" + entry.getDefaultName() + "'?";
         if (JOptionPane.YES_OPTION == JOptionPane.showConfirmDialog(this, message, "Delete Capture", JOptionPane.YES_NO_OPTION)) {
-            boolean ok = new File(Ginj.getHistoryFolder(), capture.getBaseFilename() + Misc.METADATA_EXTENSION).delete();
-            ok = ok && new File(Ginj.getHistoryFolder(), capture.getBaseFilename() + Misc.THUMBNAIL_EXTENSION).delete();
-            if (sharingCaptures.isEmpty()) {
-                ok = ok && getCaptureFile(capture).delete();
+            boolean ok;
+            try {
+                HistoryStore.getInstance().delete(entry);
+                ok = new File(Ginj.getHistoryFolder(), entry.getBaseFilename() + Misc.THUMBNAIL_EXTENSION).delete();
+                // Metadata file written by previous versions, if any
+                final File legacyMetadataFile = new File(Ginj.getHistoryFolder(), entry.getBaseFilename() + Misc.METADATA_EXTENSION);
+                ok = ok && (!legacyMetadataFile.exists() || legacyMetadataFile.delete());
+                if (sharingCaptures.isEmpty()) {
+                    ok = ok && getCaptureFile(entry).delete();
+                }
+            }
+            catch (IOException e) {
+                e.printStackTrace();
+                ok = false;
             }
             if (!ok) {
-                UI.alertError(this, "Delete error", "There was an error deleting history files for capture\n" + capture.toString());
+                UI.alertError(this, "Delete error", "There was an error deleting history files for capture\n" + entry.toString());
             }
             refreshHistoryList();
         }
     }
 
-    private List<String> getCapturesSharingSourceFile(Capture captureToDelete) {
-        // Find all other metadata files sharing the same ID
-        final File[] metadataFiles = Ginj.getHistoryFolder().listFiles((dir, name) -> name.startsWith(captureToDelete.getId()) && name.endsWith(Misc.METADATA_EXTENSION) && !name.startsWith(captureToDelete.getBaseFilename()));
+    private List<String> getCapturesSharingSourceFile(HistoryEntry entryToDelete) {
+        // Find all other versions of the same capture
         List<String> siblingCaptureNames = new ArrayList<>();
         try {
-            for (File metadataFile : metadataFiles) {
-                try (XMLDecoder xmlDecoder = new XMLDecoder(new BufferedInputStream(new FileInputStream(metadataFile)))) {
-                    Capture siblingCapture = (Capture) xmlDecoder.readObject();
-                    siblingCaptureNames.add(siblingCapture.getName());
+            for (HistoryEntry siblingEntry : HistoryStore.getInstance().getVersions(entryToDelete.getId())) {
+                if (siblingEntry.getVersion() != entryToDelete.getVersion()) {
+                    siblingCaptureNames.add(siblingEntry.getName());
                 }
             }
         }
-        catch (Exception e) {
+        catch (IOException e) {
             UI.alertException(this, "Error", "Error determining captures sharing the same file", e);
         }
         return siblingCaptureNames;
     }
 
-    private File getCaptureFile(Capture capture) {
-        return new File(Ginj.getHistoryFolder(), capture.getId() + (capture.isVideo() ? Misc.VIDEO_EXTENSION : Misc.IMAGE_EXTENSION));
+    private File getCaptureFile(HistoryEntry entry) {
+        return new File(Ginj.getHistoryFolder(), entry.getId() + (entry.isVideo() ? Misc.VIDEO_EXTENSION : Misc.IMAGE_EXTENSION));
     }
 
-    public HistoryItemWidget getSelectedItem() {
-        return selectedItem;
+    public HistoryEntry getSelectedEntry() {
+        return selectedEntry;
     }
 
-    public void setSelectedItem(HistoryItemWidget selectedItem) {
-        // Deselect previous one, if any
-        if (this.selectedItem != null) {
-            this.selectedItem.setSelected(false);
-        }
-        // Select new one, if any
-        if (selectedItem != null) {
-            selectedItem.setSelected(true);
-        }
-        // and remember it
-        this.selectedItem = selectedItem;
+    public void setSelectedEntry(HistoryEntry selectedEntry) {
+        this.selectedEntry = selectedEntry;
+        historyGrid.updateSelection();
+    }
+
+    private boolean isSelected(HistoryEntry entry) {
+        return selectedEntry != null && entry != null && selectedEntry.getBaseFilename().equals(entry.getBaseFilename());
     }
 
 
     //////////////////////////////
     // Inner classes
 
+    /**
+     * The grid of history items. Only the visible rows have widgets: widgets scrolled out of view are recycled for the
+     * entries scrolled into view, so the cost of displaying the history does not depend on its size.
+     */
+    private class HistoryGrid extends JPanel implements Scrollable {
+        private List<HistoryEntry> entries = Collections.emptyList();
+        // Widgets of the visible entries, by index of the entry
+        private final Map<Integer, HistoryItemWidget> visibleWidgets = new HashMap<>();
+        private final Deque<HistoryItemWidget> spareWidgets = new ArrayDeque<>();
+        private int columnCount = 1;
+
+        public HistoryGrid() {
+            // Widgets are positioned by updateVisibleWidgets()
+            super(null);
+        }
+
+        public void setEntries(List<HistoryEntry> entries) {
+            this.entries = entries;
+            // Indices changed, rebind all widgets
+            for (HistoryItemWidget widget : visibleWidgets.values()) {
+                recycle(widget);
+            }
+            visibleWidgets.clear();
+            revalidate();
+            updateVisibleWidgets();
+            repaint();
+        }
+
+        /**
+         * Binds widgets to the entries in view, and recycles the others. Called each time the view scrolls or resizes
+         */
+        public void updateVisibleWidgets() {
+            final int columns = getColumnCount();
+            if (columns != columnCount) {
+                // The number of rows, hence the height, changed
+                columnCount = columns;
+                revalidate();
+            }
+            final Rectangle visibleRect = getVisibleRect();
+            final int firstIndex = Math.min(entries.size(), (visibleRect.y / HISTORY_CELL_SIZE.height) * columns);
+            final int endIndex = Math.min(entries.size(), ((visibleRect.y + visibleRect.height + HISTORY_CELL_SIZE.height - 1) / HISTORY_CELL_SIZE.height) * columns);
+
+            // Recycle the widgets scrolled out of view, which also cancels the loading of their thumbnails
+            final Iterator<Map.Entry<Integer, HistoryItemWidget>> iterator = visibleWidgets.entrySet().iterator();
+            while (iterator.hasNext()) {
+                final Map.Entry<Integer, HistoryItemWidget> visibleWidget = iterator.next();
+                if (visibleWidget.getKey() < firstIndex || visibleWidget.getKey() >= endIndex) {
+                    recycle(visibleWidget.getValue());
+                    iterator.remove();
+                }
+            }
+
+            // Bind widgets to the entries scrolled into view, in display order so that thumbnails load in that order
+            for (int index = firstIndex; index < endIndex; index++) {
+                HistoryItemWidget widget = visibleWidgets.get(index);
+                if (widget == null) {
+                    widget = spareWidgets.poll();
+                    if (widget == null) {
+                        widget = new HistoryItemWidget();
+                        add(widget);
+                    }
+                    final HistoryEntry entry = entries.get(index);
+                    widget.bind(entry);
+                    widget.setSelected(isSelected(entry));
+                    widget.setVisible(true);
+                    visibleWidgets.put(index, widget);
+                }
+                widget.setBounds((index % columns) * HISTORY_CELL_SIZE.width, (index / columns) * HISTORY_CELL_SIZE.height, HISTORY_CELL_SIZE.width, HISTORY_CELL_SIZE.height);
+                widget.validate();
+            }
+        }
+
+        public void updateSelection() {
+            for (HistoryItemWidget widget : visibleWidgets.values()) {
+                widget.setSelected(isSelected(widget.getEntry()));
+            }
+        }
+
+        private void recycle(HistoryItemWidget widget) {
+            widget.unbind();
+            widget.setVisible(false);
+            spareWidgets.push(widget);
+        }
+
+        private int getColumnCount() {
+            // The grid tracks the width of the viewport
+            final Container parent = getParent();
+            final int width = (parent instanceof JViewport) ? parent.getWidth() : getWidth();
+            return Math.max(1, width / HISTORY_CELL_SIZE.width);
+        }
+
+        @Override
+        public Dimension getPreferredSize() {
+            final int columns = getColumnCount();
+            final int rows = (entries.size() + columns - 1) / columns;
+            return new Dimension(columns * HISTORY_CELL_SIZE.width, rows * HISTORY_CELL_SIZE.height);
+        }
+
+        @Override
+        public Dimension getPreferredScrollableViewportSize() {
+            return MAIN_AREA_DEFAULT_SIZE;
+        }
+
+        @Override
+        public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+            return HISTORY_CELL_SIZE.height / 4;
+        }
+
+        @Override
+        public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+            return orientation == SwingConstants.VERTICAL ? visibleRect.height : visibleRect.width;
+        }
+
+        @Override
+        public boolean getScrollableTracksViewportWidth() {
+            return true;
+        }
+
+        @Override
+        public boolean getScrollableTracksViewportHeight() {
+            return false;
+        }
+    }
+
+    /**
+     * A cell of the history grid. Widgets are recycled while scrolling, each one being bound to successive entries
+     */
     private class HistoryItemWidget extends JPanel {
-        private Capture capture = null;
+        private HistoryEntry entry;
+        private final ThumbnailPanel thumbnailPanel;
         private final JLabel nameLabel;
         private final JLabel sizeLabel;
         private final JButton editButton;
@@ -267,40 +475,30 @@ public class HistoryFrame extends JFrame {
             return HISTORY_CELL_SIZE;
         }
 
-        public HistoryItemWidget(HistoryFrame historyFrame, File file) {
+        public HistoryItemWidget() {
             super();
-            String xmlFilename = file.getAbsolutePath();
 
             setLayout(new GridBagLayout());
             setBorder(new EmptyBorder(5, 5, 5, 5));
 
-            final JPanel imageLabel = new ThumbnailPanel(xmlFilename.substring(0, xmlFilename.lastIndexOf('.')) + Misc.THUMBNAIL_EXTENSION);
-            imageLabel.setBackground(null);
+            thumbnailPanel = new ThumbnailPanel(historyLoader);
+            thumbnailPanel.setBackground(null);
             GridBagConstraints c = new GridBagConstraints();
             c.gridx = 0;
             c.gridy = 0;
             c.gridwidth = 2;
             c.insets = new Insets(10, 10, 10, 10);
-            add(imageLabel, c);
+            add(thumbnailPanel, c);
 
             nameLabel = new GinjLabel("?");
             nameLabel.setBackground(null);
             nameLabel.setPreferredSize(new Dimension(90, 16));
-            try (XMLDecoder xmlDecoder = new XMLDecoder(new BufferedInputStream(new FileInputStream(file)))) {
-                capture = (Capture) xmlDecoder.readObject();
-                nameLabel.setText(capture.getName());
-                nameLabel.setToolTipText(capture.getName());
-                nameLabel.addMouseListener(new MouseAdapter() {
-                    // Trick to keep clickability while showing tooltip, taken from https://stackoverflow.com/a/14932443/13551878
-                    public void mouseReleased(MouseEvent e) {
-                        HistoryItemWidget.this.dispatchEvent(SwingUtilities.convertMouseEvent(e.getComponent(), e, HistoryItemWidget.this));
-                    }
-                });
-            }
-            catch (Exception e) {
-                UI.alertException(HistoryFrame.this, "Load error", "Error loading capture '" + file.getAbsolutePath() + "'", e);
-                e.printStackTrace();
-            }
+            nameLabel.addMouseListener(new MouseAdapter() {
+                // Trick to keep clickability while showing tooltip, taken from https://stackoverflow.com/a/14932443/13551878
+                public void mouseReleased(MouseEvent e) {
+                    HistoryItemWidget.this.dispatchEvent(SwingUtilities.convertMouseEvent(e.getComponent(), e, HistoryItemWidget.this));
+                }
+            });
             c = new GridBagConstraints();
             c.gridx = 0;
             c.gridy = 1;
@@ -311,8 +509,6 @@ public class HistoryFrame extends JFrame {
             sizeLabel = new GinjLabel("?");
             sizeLabel.setBackground(null);
             sizeLabel.setPreferredSize(new Dimension(55, 16));
-            File captureFile = new File(xmlFilename.substring(0, xmlFilename.lastIndexOf('.')) + (capture.isVideo()? Misc.VIDEO_EXTENSION : Misc.IMAGE_EXTENSION));
-            sizeLabel.setText(Misc.getPrettySize(captureFile.length()));
             sizeLabel.setHorizontalAlignment(SwingConstants.RIGHT);
             c = new GridBagConstraints();
             c.gridx = 1;
@@ -325,13 +521,13 @@ public class HistoryFrame extends JFrame {
             buttonBar.setBackground(null);
             buttonBar.setBorder(new EmptyBorder(2, 0, 0, 0));
             editButton = new JButton(editIcon);
-            editButton.addActionListener(e -> onEdit(capture));
+            editButton.addActionListener(e -> onEdit(entry));
 
             exportButton = new JButton(exportIcon);
-            exportButton.addActionListener(e -> onExport(capture));
+            exportButton.addActionListener(e -> onExport(entry, exportButton));
 
             deleteButton = new JButton(deleteIcon);
-            deleteButton.addActionListener(e -> onDelete(capture));
+            deleteButton.addActionListener(e -> onDelete(entry));
             // Hide buttons by default
             editButton.setVisible(false);
             exportButton.setVisible(false);
@@ -351,14 +547,34 @@ public class HistoryFrame extends JFrame {
             addMouseListener(new MouseAdapter() {
                 @Override
                 public void mouseClicked(MouseEvent e) {
-                    historyFrame.setSelectedItem(HistoryItemWidget.this);
+                    setSelectedEntry(entry);
                     if (e.getClickCount() == 2) {
-                        onEdit(HistoryItemWidget.this.capture);
+                        onEdit(entry);
                     }
                 }
             });
         }
 
+        /**
+         * Shows the given entry. Its thumbnail is loaded in the background
+         */
+        public void bind(HistoryEntry entry) {
+            this.entry = entry;
+            nameLabel.setText(entry.getName());
+            nameLabel.setToolTipText(entry.getName());
+            sizeLabel.setText(Misc.getPrettySize(entry.getFileSize()));
+            thumbnailPanel.load(new File(Ginj.getHistoryFolder(), entry.getBaseFilename() + Misc.THUMBNAIL_EXTENSION));
+        }
+
+        public void unbind() {
+            entry = null;
+            thumbnailPanel.cancel();
+        }
+
+        public HistoryEntry getEntry() {
+            return entry;
+        }
+
         public void setSelected(boolean selected) {
             if (selected) {
                 this.setBackground(UI.HISTORY_SELECTED_ITEM_BACKGROUND_COLOR);
@@ -379,18 +595,57 @@ public class HistoryFrame extends JFrame {
         }
     }
 
+    /**
+     * Shows a thumbnail, loaded in the background. A placeholder is drawn until it is loaded
+     */
     private static class ThumbnailPanel extends JPanel {
-
+        private final ExecutorService loader;
         private BufferedImage image = null;
+        private boolean loadFailed = false;
+        private Future<?> loading = null;
+        // Incremented for each request, so that the result of a previous one is ignored
+        private int loadRequest = 0;
 
-        public ThumbnailPanel(String imagePath) {
-            try {
-                image = ImageIO.read(new File(imagePath));
-            }
-            catch (Exception e) {
-                System.err.println("Error reading '" + imagePath + "'...");
-                e.printStackTrace();
+        public ThumbnailPanel(ExecutorService loader) {
+            this.loader = loader;
+        }
+
+        public void load(File imageFile) {
+            cancel();
+            final int request = loadRequest;
+            loading = loader.submit(() -> {
+                BufferedImage loadedImage = null;
+                try {
+                    loadedImage = ThumbnailCache.getInstance().get(imageFile, THUMBNAIL_SIZE);
+                }
+                catch (Exception e) {
+                    System.err.println("Error reading '" + imageFile.getAbsolutePath() + "'...");
+                    e.printStackTrace();
+                }
+                final BufferedImage result = loadedImage;
+                SwingUtilities.invokeLater(() -> {
+                    if (request == loadRequest) {
+                        image = result;
+                        loadFailed = (result == null);
+                        loading = null;
+                        repaint();
+                    }
+                });
+            });
+        }
+
+        /**
+         * Forgets the thumbnail, and cancels its loading if it did not start yet
+         */
+        public void cancel() {
+            loadRequest++;
+            if (loading != null) {
+                loading.cancel(false);
+                loading = null;
             }
+            image = null;
+            loadFailed = false;
+            repaint();
         }
 
         public Dimension getPreferredSize() {
@@ -405,10 +660,15 @@ public class HistoryFrame extends JFrame {
                 int y = (THUMBNAIL_SIZE.height - image.getHeight())/2;
                 g.drawImage(image, x, y, image.getWidth(), image.getHeight(), this);
             }
-            else {
+            else if (loadFailed) {
                 // Draw Text
                 g.drawString("Error reading image", 0, 0);
             }
+            else {
+                // Placeholder until loaded
+                g.setColor(Color.GRAY);
+                g.drawRect(0, 0, THUMBNAIL_SIZE.width - 1, THUMBNAIL_SIZE.height - 1);
+            }
         }
     }
 }
@@ -1,8 +1,12 @@
 package info.ginj.ui;
 
 import info.ginj.action.*;
+import info.ginj.tool.CaptureRenderer;
 import info.ginj.tool.Overlay;
+import info.ginj.tool.OverlayIndex;
+import info.ginj.tool.OverlayListener;
 import info.ginj.ui.listener.DragInsensitiveMouseClickListener;
+import info.ginj.util.MipmapPyramid;
 
 import javax.swing.*;
 import javax.swing.event.MouseInputAdapter;
@@ -12,19 +16,63 @@ import java.awt.event.ActionEvent;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseEvent;
 import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The pane displaying a capture and its overlays, and handling their edition.
+ * Overlays are model objects rendered by this pane, in two layers:
+ * - the "composited" layer, made of the captured image with all overlays drawn over it, cached as tiles which are
+ * only re-composited when an overlay touching them changes,
+ * - the "live" layer, with the overlay being created, moved or resized and the selection handles, drawn over the
+ * tiles at each repaint.
+ * When an overlay is grabbed, it leaves the composited layer, so that dragging it only costs blitting the tiles it
+ * covers and drawing it, however many overlays are below or above.
+ * Similarly, hit detection only tests the overlays listed in the grid cell under the mouse, against their hit mask.
+ * When hosted in a scroll pane, the pane can be zoomed. Overlays always remain in image coordinates. Zoomed out, the
+ * image is drawn from the closest level of a mipmap pyramid, and overlays are drawn scaled over it.
+ */
+public class ImageEditorPane extends JLayeredPane implements OverlayListener {
+    private static final int TILE_SIZE = CaptureRenderer.TILE_SIZE;
+    private static final double MIN_ZOOM = 1.0 / 32;
+    private static final double MAX_ZOOM = 8;
+    private static final double ZOOM_STEP = 1.25;
 
-public class ImageEditorPane extends JLayeredPane {
     private final CaptureEditingFrame frame;
     private final BufferedImage capturedImg;
     private final Dimension capturedImgSize;
 
+    // Overlays, from bottom to top
+    private final List<Overlay> overlays = new ArrayList<>();
+    // Position of each overlay in the list above, to find the top one among hit candidates
+    private final Map<Overlay, Integer> zOrders = new IdentityHashMap<>();
+    private final OverlayIndex overlayIndex;
+
+    // Composited layer. Tiles are allocated when first painted
+    private final int tileColumns;
+    private final int tileRows;
+    private final BufferedImage[] tiles;
+    private final boolean[] dirtyTiles;
+
+    private MipmapPyramid mipmapPyramid;
+    private double zoom = 1;
+
     private Overlay selectedOverlay;
+    private boolean editable = true;
 
     public ImageEditorPane(CaptureEditingFrame frame, BufferedImage capturedImg) {
         super();
         this.frame = frame;
         this.capturedImg = capturedImg;
         capturedImgSize = new Dimension(capturedImg.getWidth(), capturedImg.getHeight());
+        tileColumns = (capturedImgSize.width + TILE_SIZE - 1) / TILE_SIZE;
+        tileRows = (capturedImgSize.height + TILE_SIZE - 1) / TILE_SIZE;
+        tiles = new BufferedImage[tileColumns * tileRows];
+        dirtyTiles = new boolean[tiles.length];
+        overlayIndex = new OverlayIndex(capturedImgSize);
         addMouseEditingBehaviour();
         addKeyboardShortcuts(this);
     }
@@ -33,17 +81,351 @@ public class ImageEditorPane extends JLayeredPane {
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
         Graphics2D g2d = (Graphics2D) g.create();
-        g2d.drawImage(capturedImg, 0, 0, this);
+        Rectangle clip = g2d.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(getPreferredSize());
+        }
+        final Rectangle imageClip = toImageArea(clip);
+
+        final Graphics2D imageG2d = (Graphics2D) g2d.create();
+        imageG2d.scale(zoom, zoom);
+        if (zoom >= 1) {
+            // Composited layer, magnified if needed
+            final int firstColumn = Math.max(0, imageClip.x / TILE_SIZE);
+            final int lastColumn = Math.min(tileColumns - 1, (imageClip.x + imageClip.width - 1) / TILE_SIZE);
+            final int firstRow = Math.max(0, imageClip.y / TILE_SIZE);
+            final int lastRow = Math.min(tileRows - 1, (imageClip.y + imageClip.height - 1) / TILE_SIZE);
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    imageG2d.drawImage(getTile(column, row), column * TILE_SIZE, row * TILE_SIZE, null);
+                }
+            }
+
+            // Live layer
+            for (Overlay overlay : overlays) {
+                if (overlay.isEditInProgress() && overlay.getPaintedBounds().intersects(imageClip)) {
+                    overlay.render(imageG2d);
+                }
+            }
+        }
+        else {
+            // Zoomed out: sample the image from the closest mipmap level, and draw all overlays over it
+            if (mipmapPyramid == null) {
+                mipmapPyramid = new MipmapPyramid(capturedImg, this::repaint);
+            }
+            final BufferedImage levelImage = mipmapPyramid.getImage(zoom);
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            final Dimension viewSize = getPreferredSize();
+            g2d.drawImage(levelImage, 0, 0, viewSize.width, viewSize.height, 0, 0, levelImage.getWidth(), levelImage.getHeight(), null);
+            for (Overlay overlay : overlays) {
+                if (overlay.getPaintedBounds().intersects(imageClip)) {
+                    overlay.render(imageG2d);
+                }
+            }
+        }
+        imageG2d.dispose();
+
+        // Handles keep their size whatever the zoom
+        if (selectedOverlay != null) {
+            selectedOverlay.renderHandles(g2d, zoom);
+        }
+        g2d.dispose();
+    }
+
+    /**
+     * Returns the given tile of the composited layer, re-compositing it if needed
+     */
+    private BufferedImage getTile(int column, int row) {
+        final int index = row * tileColumns + column;
+        BufferedImage tile = tiles[index];
+        if (tile == null || dirtyTiles[index]) {
+            final Rectangle tileBounds = CaptureRenderer.getTileBounds(column, row, capturedImgSize.width, capturedImgSize.height);
+            final int width = tileBounds.width;
+            final int height = tileBounds.height;
+            final boolean opaque = capturedImg.getTransparency() == Transparency.OPAQUE;
+            if (tile == null) {
+                tile = new BufferedImage(width, height, opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+                tiles[index] = tile;
+            }
+            final Graphics2D g2d = tile.createGraphics();
+            if (!opaque) {
+                g2d.setComposite(AlphaComposite.Clear);
+                g2d.fillRect(0, 0, width, height);
+                g2d.setComposite(AlphaComposite.SrcOver);
+            }
+            // Work in image coordinates. Overlays being edited are drawn in the live layer
+            g2d.translate(-tileBounds.x, -tileBounds.y);
+            CaptureRenderer.composite(g2d, capturedImg, overlays, tileBounds, false);
+            g2d.dispose();
+            dirtyTiles[index] = false;
+        }
+        return tile;
+    }
+
+    /**
+     * Marks the tiles covering the given area as needing to be re-composited, and schedules a repaint of that area
+     * @param area the area to redraw, in image coordinates
+     */
+    private void invalidateArea(Rectangle area) {
+        final Rectangle clippedArea = area.intersection(new Rectangle(capturedImgSize));
+        if (clippedArea.isEmpty()) {
+            return;
+        }
+        final int lastColumn = (clippedArea.x + clippedArea.width - 1) / TILE_SIZE;
+        final int lastRow = (clippedArea.y + clippedArea.height - 1) / TILE_SIZE;
+        for (int row = clippedArea.y / TILE_SIZE; row <= lastRow; row++) {
+            for (int column = clippedArea.x / TILE_SIZE; column <= lastColumn; column++) {
+                dirtyTiles[row * tileColumns + column] = true;
+            }
+        }
+        repaintImageArea(clippedArea);
+    }
+
+    /**
+     * Schedules a repaint of the given area
+     * @param area the area to redraw, in image coordinates
+     */
+    private void repaintImageArea(Rectangle area) {
+        final Rectangle viewArea = toViewArea(area);
+        // Handles are drawn at a fixed size in view coordinates, so they may extend past the painted bounds when zoomed out
+        viewArea.grow(Overlay.HANDLE_WIDTH, Overlay.HANDLE_HEIGHT);
+        repaint(viewArea);
+    }
+
+    /**
+     * @return the zoom factor, 1 being the full size
+     */
+    public double getZoom() {
+        return zoom;
+    }
+
+    /**
+     * Changes the zoom factor, keeping the image point under the given view position in place.
+     * Zoom is only possible when this pane is in a scroll pane.
+     * @param newZoom the new zoom factor, 1 being the full size
+     * @param anchor the fixed point, in view coordinates, or null for the top left corner of the visible area
+     */
+    public void setZoom(double newZoom, Point anchor) {
+        newZoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, newZoom));
+        final JViewport viewport = (JViewport) SwingUtilities.getAncestorOfClass(JViewport.class, this);
+        if (viewport == null || newZoom == zoom) {
+            return;
+        }
+        final Point viewPosition = viewport.getViewPosition();
+        if (anchor == null) {
+            anchor = viewPosition;
+        }
+        final double anchorImageX = anchor.x / zoom;
+        final double anchorImageY = anchor.y / zoom;
+        zoom = newZoom;
+        for (Overlay overlay : overlays) {
+            overlay.zoomChanged(this);
+        }
+        revalidate();
+        viewport.validate();
+        final Dimension viewSize = getPreferredSize();
+        final Dimension extentSize = viewport.getExtentSize();
+        final int x = (int) Math.round(anchorImageX * zoom) - (anchor.x - viewPosition.x);
+        final int y = (int) Math.round(anchorImageY * zoom) - (anchor.y - viewPosition.y);
+        viewport.setViewPosition(new Point(Math.max(0, Math.min(x, viewSize.width - extentSize.width)),
+                Math.max(0, Math.min(y, viewSize.height - extentSize.height))));
+        repaint();
+    }
+
+    /**
+     * Zooms so that the whole image fits in the given size, without magnifying it
+     * @param available the available size, in view coordinates
+     */
+    public void zoomToFit(Dimension available) {
+        setZoom(Math.min(1, Math.min(available.getWidth() / capturedImgSize.width, available.getHeight() / capturedImgSize.height)), null);
+    }
+
+    /**
+     * @param viewPoint a point in view (mouse) coordinates
+     * @return the corresponding point in image coordinates
+     */
+    public Point toImagePoint(Point viewPoint) {
+        return new Point((int) Math.floor(viewPoint.x / zoom), (int) Math.floor(viewPoint.y / zoom));
+    }
+
+    /**
+     * @param viewArea an area in view coordinates
+     * @return the smallest area in image coordinates containing it
+     */
+    public Rectangle toImageArea(Rectangle viewArea) {
+        final int x1 = (int) Math.floor(viewArea.x / zoom);
+        final int y1 = (int) Math.floor(viewArea.y / zoom);
+        final int x2 = (int) Math.ceil((viewArea.x + viewArea.width) / zoom);
+        final int y2 = (int) Math.ceil((viewArea.y + viewArea.height) / zoom);
+        return new Rectangle(x1, y1, x2 - x1, y2 - y1);
+    }
+
+    /**
+     * @param imageArea an area in image coordinates
+     * @return the smallest area in view coordinates containing it
+     */
+    public Rectangle toViewArea(Rectangle imageArea) {
+        final int x1 = (int) Math.floor(imageArea.x * zoom);
+        final int y1 = (int) Math.floor(imageArea.y * zoom);
+        final int x2 = (int) Math.ceil((imageArea.x + imageArea.width) * zoom);
+        final int y2 = (int) Math.ceil((imageArea.y + imageArea.height) * zoom);
+        return new Rectangle(x1, y1, x2 - x1, y2 - y1);
+    }
+
+    /**
+     * Called by overlays when they change
+     */
+    @Override
+    public void overlayChanged(Overlay overlay, Rectangle area) {
+        overlayIndex.update(overlay);
+        if (overlay.isEditInProgress()) {
+            // The overlay is in the live layer, the tiles below are unaffected
+            repaintImageArea(area);
+        }
+        else {
+            invalidateArea(area);
+        }
+    }
+
+    /**
+     * Moves the given overlay to the live layer when an edit starts, and back to the composited layer when it ends
+     */
+    private void setEditInProgress(Overlay overlay, boolean editInProgress) {
+        if (overlay.isEditInProgress() != editInProgress) {
+            overlay.setEditInProgress(editInProgress);
+            invalidateArea(overlay.getPaintedBounds());
+        }
+    }
+
+    /**
+     * Returns the overlays of this pane, from bottom to top
+     * @return an unmodifiable view of the overlays
+     */
+    public List<Overlay> getOverlays() {
+        return Collections.unmodifiableList(overlays);
+    }
+
+    /**
+     * Adds an overlay on top of all others
+     * @param overlay the overlay to add
+     */
+    public void addOverlay(Overlay overlay) {
+        addOverlay(overlay, overlays.size());
+    }
+
+    /**
+     * Adds an overlay at the given position in the stack of overlays
+     * @param overlay the overlay to add
+     * @param index the position, 0 being the bottom
+     */
+    public void addOverlay(Overlay overlay, int index) {
+        overlays.add(index, overlay);
+        refreshZOrders();
+        overlayIndex.update(overlay);
+        overlay.setListener(this);
+        overlay.prepareRendering(capturedImg);
+        overlay.addedTo(this);
+        invalidateArea(overlay.getPaintedBounds());
+    }
+
+    /**
+     * Removes an overlay
+     * @param overlay the overlay to remove
+     * @return its former position in the stack of overlays, or -1 if it was not in this pane
+     */
+    public int removeOverlay(Overlay overlay) {
+        final int index = overlays.indexOf(overlay);
+        if (index >= 0) {
+            overlays.remove(index);
+            refreshZOrders();
+            overlayIndex.remove(overlay);
+            overlay.setListener(null);
+            overlay.removedFrom(this);
+            // It may be kept by the undo history, so only keep its model
+            overlay.releaseCaches();
+            if (selectedOverlay == overlay) {
+                setSelectedOverlay(null);
+            }
+            invalidateArea(overlay.getPaintedBounds());
+        }
+        return index;
+    }
+
+    /**
+     * Moves an overlay to the given position in the stack of overlays
+     * @param overlay the overlay to move
+     * @param index the new position, 0 being the bottom
+     */
+    public void moveOverlay(Overlay overlay, int index) {
+        if (overlays.remove(overlay)) {
+            overlays.add(index, overlay);
+            refreshZOrders();
+            invalidateArea(overlay.getPaintedBounds());
+        }
+    }
+
+    /**
+     * @param overlay an overlay
+     * @return its position in the stack of overlays, 0 being the bottom, or -1 if it is not in this pane
+     */
+    public int getOverlayIndex(Overlay overlay) {
+        final Integer zOrder = zOrders.get(overlay);
+        return zOrder == null ? -1 : zOrder;
+    }
+
+    private void refreshZOrders() {
+        zOrders.clear();
+        for (int i = 0; i < overlays.size(); i++) {
+            zOrders.put(overlays.get(i), i);
+        }
+    }
+
+    /**
+     * Returns the top overlay at the given position
+     * @param point the position, in image coordinates
+     * @return the overlay, or null if there is none
+     */
+    public Overlay getOverlayAt(Point point) {
+        // Handles of the selected overlay have a fixed size in view coordinates
+        if (selectedOverlay != null && selectedOverlay.getHandleIndexAt(point, zoom) != Overlay.NO_INDEX) {
+            return selectedOverlay;
+        }
+        Overlay foundOverlay = null;
+        int foundZOrder = -1;
+        for (Overlay overlay : overlayIndex.getCandidates(point)) {
+            final int zOrder = zOrders.get(overlay);
+            if (zOrder > foundZOrder && overlay.containsPoint(point)) {
+                foundOverlay = overlay;
+                foundZOrder = zOrder;
+            }
+        }
+        return foundOverlay;
+    }
+
+    public BufferedImage getCapturedImage() {
+        return capturedImg;
+    }
+
+    public CaptureEditingFrame getFrame() {
+        return frame;
+    }
+
+    public Overlay getSelectedOverlay() {
+        return selectedOverlay;
+    }
+
+    public void setEditable(boolean editable) {
+        this.editable = editable;
     }
 
     @Override
     public Dimension getPreferredSize() {
-        return capturedImgSize;
+        return new Dimension((int) Math.ceil(capturedImgSize.width * zoom), (int) Math.ceil(capturedImgSize.height * zoom));
     }
 
     @Override
     public Dimension getMaximumSize() {
-        return capturedImgSize;
+        return getPreferredSize();
     }
 
     private void addMouseEditingBehaviour() {
@@ -53,98 +435,104 @@ public class ImageEditorPane extends JLayeredPane {
             AbstractUndoableAction currentAction = null;
 
             public void mousePressed(MouseEvent e) {
-                clicked = e.getPoint();
-
-                // Find clicked component
-                Overlay foundOverlay = null;
-                // Iterate in reverse direction to check closest first
-                // Note: JLayeredPane guarantees components are returned based on their layer order. See implementation of JLayeredPane.highestLayer()
-                for (Component component : ImageEditorPane.this.getComponents()) {
-                    if (component instanceof Overlay) {
-                        Overlay overlay = (Overlay) component;
-                        if (overlay.containsPoint(clicked)) {
-                            foundOverlay = overlay;
-                            break;
-                        }
-                    }
-                    else {
-                        System.err.println("Encountered unexpected component: " + component);
-                    }
-                }
-                setSelectedOverlay(foundOverlay);
+                if (!editable) return;
+                clicked = toImagePoint(e.getPoint());
+
+                // Find clicked overlay
+                setSelectedOverlay(getOverlayAt(clicked));
 
                 if (selectedOverlay != null) {
                     // OK, we're in a component.
                     // See if it's in a handle
 
-                    selectedOverlay.setEditInProgress(true);
+                    setEditInProgress(selectedOverlay, true);
 
-                    selectedHandleIndex = selectedOverlay.getHandleIndexAt(clicked);
+                    selectedHandleIndex = selectedOverlay.getHandleIndexAt(clicked, zoom);
                     if (selectedHandleIndex == Overlay.NO_INDEX) {
                         // Initate a move
-                        currentAction = new MoveOverlayAction(selectedOverlay, e.getPoint());
+                        currentAction = new MoveOverlayAction(ImageEditorPane.this, selectedOverlay, clicked);
                     }
                     else {
                         // Initiate a resize
-                        currentAction = new ResizeOverlayAction(selectedOverlay, selectedHandleIndex, selectedOverlay.getHandles()[selectedHandleIndex]);
+                        currentAction = new ResizeOverlayAction(ImageEditorPane.this, selectedOverlay, selectedHandleIndex, selectedOverlay.getHandles()[selectedHandleIndex]);
                     }
                 }
                 else {
                     // Out of all components.
                     // Create a new one
                     final Overlay overlay = frame.currentTool.createComponent(clicked, frame.getCurrentColor(), frame, ImageEditorPane.this);
-                    overlay.setBounds(0, 0, capturedImgSize.width, capturedImgSize.height);
                     currentAction = new AddOverlayAction(overlay, ImageEditorPane.this);
                     currentAction.execute();
                     selectedHandleIndex = 0;
                 }
-                repaint();
+            }
+
+            @Override
+            public void mouseMoved(MouseEvent e) {
+                if (!editable) return;
+                // Hover feedback
+                final Point mousePosition = toImagePoint(e.getPoint());
+                int cursorType = Cursor.DEFAULT_CURSOR;
+                if (selectedOverlay != null && selectedOverlay.getHandleIndexAt(mousePosition, zoom) != Overlay.NO_INDEX) {
+                    cursorType = Cursor.HAND_CURSOR;
+                }
+                else if (getOverlayAt(mousePosition) != null) {
+                    cursorType = Cursor.MOVE_CURSOR;
+                }
+                if (getCursor().getType() != cursorType) {
+                    setCursor(Cursor.getPredefinedCursor(cursorType));
+                }
             }
 
             public void mouseDragged(MouseEvent e) {
-                final Point mousePosition = e.getPoint();
+                if (!editable) return;
+                final Point mousePosition = toImagePoint(e.getPoint());
                 if (selectedHandleIndex == Overlay.NO_INDEX) {
                     // Whole component is dragged
-                    // During drag, we move the whole component (which is a canvas of the same size as the image) to follow the mouse
-                    selectedOverlay.setLocation(mousePosition.x - clicked.x, mousePosition.y - clicked.y);
+                    // During drag, the overlay is just drawn with an offset to follow the mouse
+                    selectedOverlay.setDragOffset(new Point(mousePosition.x - clicked.x, mousePosition.y - clicked.y));
                 }
                 else {
                     // Only a handle is dragged
                     selectedOverlay.moveHandle(selectedHandleIndex, mousePosition);
                 }
-                repaint();
             }
 
             public void mouseReleased(MouseEvent e) {
+                if (!editable) return;
                 if (currentAction == null) {
                     System.err.println("Mouse released with no currentAction !");
                 }
                 else {
-                    final Point released = e.getPoint();
+                    final Point released = toImagePoint(e.getPoint());
                     if (!hasMouseMoved(clicked, released)) {
                         if (currentAction instanceof AddOverlayAction) {
                             // False operation
-                            ImageEditorPane.this.remove(selectedOverlay);
+                            removeOverlay(selectedOverlay);
+                        }
+                        else {
+                            selectedOverlay.setDragOffset(new Point(0, 0));
+                            setEditInProgress(selectedOverlay, false);
                         }
                     }
                     else {
                         currentAction.setTargetPoint(released);
                         if (currentAction instanceof MoveOverlayAction) {
-                            // Upon release, we reset the canvas position to 0,0 and execute the action that moves the drawing itself on the canvas
-                            selectedOverlay.setLocation(0, 0);
+                            // Upon release, we reset the drag offset and execute the action that moves the drawing itself
+                            selectedOverlay.setDragOffset(new Point(0, 0));
                             currentAction.execute();
                         }
                         selectedOverlay.setSelected(true); // Seems useless but makes sure focus is given to the textarea of Text overlays
                         frame.addUndoableAction(currentAction);
                         currentAction = null;
+                        setEditInProgress(selectedOverlay, false);
                     }
-                    selectedOverlay.setEditInProgress(false);
-                    repaint();
                 }
             }
 
             @Override
             public void mouseClicked(MouseEvent e){
+                if (!editable) return;
                 if(e.getClickCount()==2) {
                     if (selectedOverlay != null) {
                         // ENHANCEMENT
@@ -161,6 +549,17 @@ public class ImageEditorPane extends JLayeredPane {
         });
         addMouseListener(mouseListener);
         addMouseMotionListener(mouseListener);
+
+        // Ctrl + wheel zooms, plain wheel scrolls as usual
+        addMouseWheelListener(e -> {
+            if (e.isControlDown()) {
+                setZoom(zoom * Math.pow(ZOOM_STEP, -e.getPreciseWheelRotation()), e.getPoint());
+            }
+            else if (getParent() != null) {
+                // Having a wheel listener prevents the event from reaching the scroll pane, so forward it
+                getParent().dispatchEvent(SwingUtilities.convertMouseEvent(this, e, getParent()));
+            }
+        });
     }
 
 
@@ -189,6 +588,39 @@ public class ImageEditorPane extends JLayeredPane {
             }
         });
 
+        KeyStroke zoomInKey1 = KeyStroke.getKeyStroke(KeyEvent.VK_PLUS, KeyEvent.CTRL_DOWN_MASK);
+        KeyStroke zoomInKey2 = KeyStroke.getKeyStroke(KeyEvent.VK_EQUALS, KeyEvent.CTRL_DOWN_MASK);
+        KeyStroke zoomInKey3 = KeyStroke.getKeyStroke(KeyEvent.VK_ADD, KeyEvent.CTRL_DOWN_MASK);
+        inputMap.put(zoomInKey1, "zoomIn");
+        inputMap.put(zoomInKey2, "zoomIn");
+        inputMap.put(zoomInKey3, "zoomIn");
+        getActionMap().put("zoomIn", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                setZoom(zoom * ZOOM_STEP, null);
+            }
+        });
+
+        KeyStroke zoomOutKey1 = KeyStroke.getKeyStroke(KeyEvent.VK_MINUS, KeyEvent.CTRL_DOWN_MASK);
+        KeyStroke zoomOutKey2 = KeyStroke.getKeyStroke(KeyEvent.VK_SUBTRACT, KeyEvent.CTRL_DOWN_MASK);
+        inputMap.put(zoomOutKey1, "zoomOut");
+        inputMap.put(zoomOutKey2, "zoomOut");
+        getActionMap().put("zoomOut", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                setZoom(zoom / ZOOM_STEP, null);
+            }
+        });
+
+        KeyStroke actualSizeKey = KeyStroke.getKeyStroke(KeyEvent.VK_0, KeyEvent.CTRL_DOWN_MASK);
+        inputMap.put(actualSizeKey, "actualSize");
+        getActionMap().put("actualSize", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                setZoom(1, null);
+            }
+        });
+
         KeyStroke deleteKey = KeyStroke.getKeyStroke(KeyEvent.VK_DELETE, 0);
         inputMap.put(deleteKey, "delete");
         getActionMap().put("delete", new AbstractAction() {
@@ -198,14 +630,10 @@ public class ImageEditorPane extends JLayeredPane {
                     final DeleteOverlayAction deleteOverlayAction = new DeleteOverlayAction(selectedOverlay, imageEditorPane);
                     deleteOverlayAction.execute();
                     frame.addUndoableAction(deleteOverlayAction);
-                    // Reselect previous one -- ENHANCEMENT
-                    if (getComponentCount() > 0) {
-                        final Component component = getComponent(0);
-                        if (component instanceof Overlay) {
-                            setSelectedOverlay((Overlay) component);
-                        }
+                    // Reselect top one -- ENHANCEMENT
+                    if (!overlays.isEmpty()) {
+                        setSelectedOverlay(overlays.get(overlays.size() - 1));
                     }
-                    repaint();
                 }
             }
         });
@@ -224,22 +652,23 @@ public class ImageEditorPane extends JLayeredPane {
             // De-select previous one
             if (selectedOverlay != null) {
                 selectedOverlay.setSelected(false);
+                // Handles are in the live layer, no need to re-composite
+                repaintImageArea(selectedOverlay.getPaintedBounds());
             }
             selectedOverlay = overlay;
             if (overlay != null) {
                 overlay.setSelected(true);
                 frame.setCurrentColor(overlay.getColor());
+                repaintImageArea(overlay.getPaintedBounds());
             }
         }
-        repaint();
     }
 
     public void setColorOfSelectedOverlay(Color color) {
         if (selectedOverlay != null && !selectedOverlay.getColor().equals(color)) {
-            final ChangeOverlayColorAction action = new ChangeOverlayColorAction(selectedOverlay, color);
+            final ChangeOverlayColorAction action = new ChangeOverlayColorAction(this, selectedOverlay, color);
             frame.addUndoableAction(action);
             action.execute();
-            repaint();
         }
     }
 }
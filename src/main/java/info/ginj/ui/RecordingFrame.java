@@ -0,0 +1,167 @@
+package info.ginj.ui;
+
+import info.ginj.Ginj;
+import info.ginj.model.Capture;
+import info.ginj.model.Prefs;
+import info.ginj.ui.component.GinjLabel;
+import info.ginj.ui.component.GinjLowerButton;
+import info.ginj.ui.component.GinjLowerButtonBar;
+import info.ginj.util.Misc;
+import info.ginj.util.PerfLog;
+import info.ginj.util.UI;
+import info.ginj.video.AviMjpegWriter;
+import info.ginj.video.JpegFrameEncoder;
+import info.ginj.video.RecordingEngine;
+import info.ginj.video.RecordingStats;
+
+import javax.swing.*;
+import java.awt.*;
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * This small window controls a screen recording in progress, and shows its live stats.
+ * It is positioned outside the recorded area whenever possible, so that it does not appear in the video.
+ */
+public class RecordingFrame extends JFrame {
+
+    private static final int STATS_REFRESH_PERIOD_MS = 500;
+
+    private final StarWindow starWindow;
+    private final Rectangle area;
+    private final String captureId;
+    private final File videoFile;
+    private final RecordingEngine engine;
+    private final JLabel stateLabel;
+    private final JLabel statsLabel;
+    private final JButton stopButton;
+    private final Timer statsTimer;
+    private final long startTime;
+
+    public RecordingFrame(StarWindow starWindow, Rectangle area) throws IOException, AWTException {
+        super();
+        this.starWindow = starWindow;
+        this.area = area;
+
+        // For Alt+Tab behaviour
+        this.setTitle(Ginj.getAppName() + " Recording");
+        setIconImage(StarWindow.getAppIcon());
+
+        // No window title bar or border.
+        // Note: setDefaultLookAndFeelDecorated(true); must not have been called anywhere for this to work
+        setUndecorated(true);
+        setAlwaysOnTop(true);
+
+        JPanel mainPanel = new JPanel();
+        mainPanel.setLayout(new GridBagLayout());
+
+        // Add state label
+        stateLabel = new GinjLabel("Recording " + area.width + " x " + area.height);
+
+        GridBagConstraints c = new GridBagConstraints();
+        c.gridx = 0;
+        c.gridy = 0;
+        c.anchor = GridBagConstraints.WEST;
+        c.insets = new Insets(4, 16, 0, 16);
+        mainPanel.add(stateLabel, c);
+
+        // Add stats label
+        statsLabel = new GinjLabel(" ");
+
+        c = new GridBagConstraints();
+        c.gridx = 0;
+        c.gridy = 1;
+        c.anchor = GridBagConstraints.WEST;
+        c.insets = new Insets(0, 16, 4, 16);
+        mainPanel.add(statsLabel, c);
+
+        // Add stop button
+        JPanel buttonBar = new GinjLowerButtonBar();
+        stopButton = new GinjLowerButton("Stop", UI.createIcon(getClass().getResource("/img/icon/video.png"), 16, 16, UI.ICON_ENABLED_COLOR));
+        stopButton.addActionListener(e -> onStop());
+        buttonBar.add(stopButton);
+
+        c = new GridBagConstraints();
+        c.gridx = 0;
+        c.gridy = 2;
+        c.insets = new Insets(0, 16, 8, 16);
+        mainPanel.add(buttonBar, c);
+
+        // Add default "draggable window" behaviour
+        UI.addDraggableWindowMouseBehaviour(this, mainPanel);
+
+        getContentPane().add(mainPanel);
+
+        pack();
+        setSize(Math.max(getWidth(), 460), getHeight());
+        if (!UI.positionOutsideArea(this, area)) {
+            // No room outside the area, the window will appear in the video...
+            starWindow.positionFrameNextToStarIcon(this);
+        }
+
+        // Prepare and start recording
+        captureId = new SimpleDateFormat(Misc.DATETIME_FORMAT_PATTERN).format(new Date());
+        videoFile = new File(Ginj.getTempDir(), captureId + Misc.VIDEO_EXTENSION);
+        videoFile.deleteOnExit();
+        final int frameRate = Prefs.getInt(Prefs.Key.VIDEO_FRAME_RATE, 10, RecordingEngine.MIN_FRAME_RATE, RecordingEngine.MAX_FRAME_RATE);
+        float quality = 0.8f;
+        try {
+            quality = Float.parseFloat(Prefs.get(Prefs.Key.VIDEO_JPEG_QUALITY, String.valueOf(quality)));
+        }
+        catch (NumberFormatException e) {
+            e.printStackTrace();
+        }
+        // Preallocate the index for 10 minutes
+        final AviMjpegWriter writer = new AviMjpegWriter(videoFile, area.width, area.height, frameRate, frameRate * 600);
+        engine = new RecordingEngine(area, frameRate, new JpegFrameEncoder(quality), writer);
+        engine.start();
+        startTime = System.currentTimeMillis();
+
+        statsTimer = new Timer(STATS_REFRESH_PERIOD_MS, e -> refreshStats());
+        statsTimer.start();
+    }
+
+    private void refreshStats() {
+        final long seconds = (System.currentTimeMillis() - startTime) / 1000;
+        stateLabel.setText(String.format("Recording %d x %d - %d:%02d - %d frame(s) buffered",
+                area.width, area.height, seconds / 60, seconds % 60, engine.getBufferedFrames()));
+        final RecordingStats stats = engine.getStats();
+        statsLabel.setText(stats.getSummary());
+        if (!engine.isRecording() && stopButton.isEnabled()) {
+            // Recording stopped by itself (error)
+            onStop();
+        }
+    }
+
+    private void onStop() {
+        stopButton.setEnabled(false);
+        stateLabel.setText("Finishing encoding...");
+        statsTimer.stop();
+        // Remaining frames may take a while to encode, don't block the EDT meanwhile
+        Thread stopThread = new Thread(() -> {
+            try {
+                engine.stop();
+                PerfLog.log("Recording", engine.getStats().getSummary());
+                SwingUtilities.invokeLater(this::openEditor);
+            }
+            catch (IOException e) {
+                SwingUtilities.invokeLater(() -> {
+                    UI.alertException(this, "Recording error", "Error encoding video", e);
+                    dispose();
+                });
+            }
+        }, "Ginj recording stop");
+        stopThread.start();
+    }
+
+    private void openEditor() {
+        Capture capture = new Capture(captureId, engine.getPosterFrame());
+        capture.setVideo(true);
+        capture.setOriginalFile(videoFile);
+        final CaptureEditingFrame captureEditingFrame = new CaptureEditingFrame(starWindow, capture);
+        captureEditingFrame.setVisible(true);
+        dispose();
+    }
+}
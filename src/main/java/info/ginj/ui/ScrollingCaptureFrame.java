@@ -0,0 +1,113 @@
+package info.ginj.ui;
+
+import info.ginj.Ginj;
+import info.ginj.capture.ImageStitcher;
+import info.ginj.capture.ScrollingCapture;
+import info.ginj.ui.component.GinjLabel;
+import info.ginj.ui.component.GinjLowerButton;
+import info.ginj.ui.component.GinjLowerButtonBar;
+import info.ginj.util.UI;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * This small window controls a scrolling capture in progress: the user scrolls the contents of the selected area
+ * down, and clicks "Done" once everything was shown.
+ * It is positioned outside the captured area whenever possible, so that it does not appear in the grabs.
+ */
+public class ScrollingCaptureFrame extends JFrame {
+
+    private static final int STATUS_REFRESH_PERIOD_MS = 200;
+
+    private final StarWindow starWindow;
+    private final ScrollingCapture scrollingCapture;
+    private final JLabel statusLabel;
+    private final JButton doneButton;
+    private final Timer statusTimer;
+
+    public ScrollingCaptureFrame(StarWindow starWindow, Rectangle area) throws AWTException {
+        super();
+        this.starWindow = starWindow;
+
+        // For Alt+Tab behaviour
+        this.setTitle(Ginj.getAppName() + " Scrolling capture");
+        setIconImage(StarWindow.getAppIcon());
+
+        // No window title bar or border.
+        // Note: setDefaultLookAndFeelDecorated(true); must not have been called anywhere for this to work
+        setUndecorated(true);
+        setAlwaysOnTop(true);
+
+        JPanel mainPanel = new JPanel();
+        mainPanel.setLayout(new GridBagLayout());
+
+        // Add status label
+        statusLabel = new GinjLabel("Scroll down slowly, then click Done");
+
+        GridBagConstraints c = new GridBagConstraints();
+        c.gridx = 0;
+        c.gridy = 0;
+        c.anchor = GridBagConstraints.WEST;
+        c.insets = new Insets(4, 16, 4, 16);
+        mainPanel.add(statusLabel, c);
+
+        // Add buttons
+        JPanel buttonBar = new GinjLowerButtonBar();
+        doneButton = new GinjLowerButton("Done", UI.createIcon(getClass().getResource("/img/icon/scroll.png"), 16, 16, UI.ICON_ENABLED_COLOR));
+        doneButton.addActionListener(e -> onDone());
+        buttonBar.add(doneButton);
+        final JButton cancelButton = new GinjLowerButton("Cancel", UI.createIcon(getClass().getResource("/img/icon/cancel.png"), 16, 16, UI.ICON_ENABLED_COLOR));
+        cancelButton.addActionListener(e -> onCancel());
+        buttonBar.add(cancelButton);
+
+        c = new GridBagConstraints();
+        c.gridx = 0;
+        c.gridy = 1;
+        c.insets = new Insets(0, 16, 8, 16);
+        mainPanel.add(buttonBar, c);
+
+        // Add default "draggable window" behaviour
+        UI.addDraggableWindowMouseBehaviour(this, mainPanel);
+
+        getContentPane().add(mainPanel);
+
+        pack();
+        setSize(Math.max(getWidth(), 400), getHeight());
+        if (!UI.positionOutsideArea(this, area)) {
+            // No room outside the area, the window could hide part of it...
+            starWindow.positionFrameNextToStarIcon(this);
+        }
+
+        scrollingCapture = new ScrollingCapture(area);
+        scrollingCapture.start();
+
+        statusTimer = new Timer(STATUS_REFRESH_PERIOD_MS, e -> refreshStatus());
+        statusTimer.start();
+    }
+
+    private void refreshStatus() {
+        String status = "Captured " + scrollingCapture.getStitchedHeight() + " px";
+        if (scrollingCapture.getLastResult() == ImageStitcher.Result.NO_MATCH) {
+            status += " - Lost track, scroll back up a little";
+        }
+        statusLabel.setText(status);
+    }
+
+    private void onDone() {
+        statusTimer.stop();
+        final BufferedImage image = scrollingCapture.stop();
+        dispose();
+        if (image != null) {
+            final CaptureEditingFrame captureEditingFrame = new CaptureEditingFrame(starWindow, image);
+            captureEditingFrame.setVisible(true);
+        }
+    }
+
+    private void onCancel() {
+        statusTimer.stop();
+        scrollingCapture.stop();
+        dispose();
+    }
+}
@@ -1,9 +1,17 @@
 package info.ginj.ui;
 
 import info.ginj.Ginj;
+import info.ginj.SingleInstance;
+import info.ginj.model.Capture;
+import info.ginj.model.CaptureHistory;
 import info.ginj.model.Prefs;
 import info.ginj.ui.listener.DragInsensitiveMouseClickListener;
+import info.ginj.util.Misc;
+import info.ginj.util.PerfLog;
 import info.ginj.util.UI;
+import info.ginj.video.InstantReplayBuffer;
+import info.ginj.video.JpegFrameEncoder;
+import info.ginj.video.RecordingEngine;
 
 import javax.imageio.ImageIO;
 import javax.swing.*;
@@ -11,7 +19,11 @@ import javax.swing.event.MouseInputAdapter;
 import javax.swing.event.MouseInputListener;
 import java.awt.*;
 import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.io.File;
 import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -43,6 +55,10 @@ public class StarWindow extends JWindow {
 
     public static final int STAR_ONLY_RADIUS = 25;
 
+    // The instant replay buffer favours duration over quality
+    public static final float INSTANT_REPLAY_JPEG_QUALITY = 0.7f;
+    public static final int MAX_INSTANT_REPLAY_DURATION = 3600;
+
     // Button sizes
     public static final int LARGE_SIZE_PIXELS = 40;
     public static final int MEDIUM_SIZE_PIXELS = 30;
@@ -91,6 +107,7 @@ public class StarWindow extends JWindow {
     private HistoryFrame historyFrame;
     private MoreFrame moreFrame;
     private TargetManagementFrame targetManagementFrame;
+    private InstantReplayBuffer instantReplayBuffer;
     private final Set<TargetListChangeListener> targetListChangeListener = new HashSet<>();
 
     public StarWindow() {
@@ -307,6 +324,10 @@ public class StarWindow extends JWindow {
 
             @Override
             public void mouseClicked(MouseEvent e) {
+                if (!isDragging && SwingUtilities.isRightMouseButton(e)) {
+                    onInstantReplayMenu(e.getComponent(), e.getPoint());
+                    return;
+                }
                 if (!isDragging) {
                     int clickedButtonId = getButtonIdAtLocation(e.getX(), e.getY());
                     // ignore other clicks
@@ -627,6 +648,24 @@ public class StarWindow extends JWindow {
     }
 
 
+    /**
+     * Executes a command received from the command line, or from a later launch
+     * @param command one of the SingleInstance commands
+     */
+    public void executeCommand(String command) {
+        switch (command) {
+            case SingleInstance.COMMAND_CAPTURE -> onCapture();
+            case SingleInstance.COMMAND_HISTORY -> onHistory();
+            case SingleInstance.COMMAND_MORE -> onMore();
+            case SingleInstance.COMMAND_SHOW -> {
+                // Just bring the star back, in case another window is over it
+                setVisible(true);
+                toFront();
+            }
+            default -> System.err.println("Unknown command: " + command);
+        }
+    }
+
     ////////////////////////////
     // EVENT HANDLERS
 
@@ -635,8 +674,8 @@ public class StarWindow extends JWindow {
         setVisible(false);
         // Creating the capture selection window will cause the screenshot to happen
         CaptureSelectionFrame frame = new CaptureSelectionFrame(this);
-        // Show star icon again
-        setVisible(true);
+        // Show star icon again, but only once all screens are grabbed so that it does not appear on any of them
+        frame.whenScreensGrabbed(() -> SwingUtilities.invokeLater(() -> setVisible(true)));
         // And show capture selection window
         frame.setVisible(true);
     }
@@ -646,6 +685,9 @@ public class StarWindow extends JWindow {
         if (historyFrame == null) {
             historyFrame = new HistoryFrame(this);
         }
+        else {
+            historyFrame.refreshHistoryList();
+        }
         historyFrame.setVisible(true);
         historyFrame.requestFocus();
     }
@@ -660,6 +702,82 @@ public class StarWindow extends JWindow {
     }
 
 
+    private void onInstantReplayMenu(Component invoker, Point point) {
+        JPopupMenu popup = new JPopupMenu();
+        JMenuItem menuItem;
+        if (instantReplayBuffer == null) {
+            menuItem = new JMenuItem("Start instant replay");
+            menuItem.addActionListener(e -> onStartInstantReplay());
+            popup.add(menuItem);
+        }
+        else {
+            final int duration = Prefs.getInt(Prefs.Key.INSTANT_REPLAY_DURATION, 30, 1, MAX_INSTANT_REPLAY_DURATION);
+            menuItem = new JMenuItem("Save last " + duration + " seconds");
+            menuItem.addActionListener(e -> onSaveInstantReplay(duration));
+            popup.add(menuItem);
+            menuItem = new JMenuItem("Stop instant replay");
+            menuItem.addActionListener(e -> onStopInstantReplay());
+            popup.add(menuItem);
+            // Show the overhead of the buffer
+            menuItem = new JMenuItem(instantReplayBuffer.getSummary());
+            menuItem.setEnabled(false);
+            popup.add(menuItem);
+        }
+        popup.show(invoker, point.x, point.y);
+    }
+
+    private void onStartInstantReplay() {
+        final long maxBytes = Prefs.getInt(Prefs.Key.INSTANT_REPLAY_MAX_MEMORY_MB, 64, 1, (int) (InstantReplayBuffer.MAX_BUFFER_BYTES / (1024 * 1024))) * 1024L * 1024;
+        final InstantReplayBuffer buffer;
+        try {
+            buffer = new InstantReplayBuffer(currentDisplayBounds,
+                    Prefs.getInt(Prefs.Key.INSTANT_REPLAY_FRAME_RATE, 2, RecordingEngine.MIN_FRAME_RATE, RecordingEngine.MAX_FRAME_RATE),
+                    Prefs.getInt(Prefs.Key.INSTANT_REPLAY_DURATION, 30, 1, MAX_INSTANT_REPLAY_DURATION),
+                    maxBytes,
+                    new JpegFrameEncoder(INSTANT_REPLAY_JPEG_QUALITY));
+        }
+        catch (OutOfMemoryError e) {
+            UI.alertException(this, "Instant replay error", "Could not reserve " + maxBytes / (1024 * 1024) + " MB for the instant replay buffer", new Exception(e.getMessage(), e));
+            return;
+        }
+        try {
+            buffer.start();
+            instantReplayBuffer = buffer;
+        }
+        catch (AWTException e) {
+            UI.alertException(this, "Instant replay error", "Could not start grabbing the screen", e);
+        }
+    }
+
+    private void onStopInstantReplay() {
+        instantReplayBuffer.stop();
+        PerfLog.log("Instant replay", instantReplayBuffer.getSummary());
+        instantReplayBuffer = null;
+    }
+
+    private void onSaveInstantReplay(int seconds) {
+        final InstantReplayBuffer buffer = instantReplayBuffer;
+        // Writing the video may take a moment, don't block the EDT meanwhile
+        Thread saveThread = new Thread(() -> {
+            final String captureId = new SimpleDateFormat(Misc.DATETIME_FORMAT_PATTERN).format(new Date());
+            final File videoFile = new File(Ginj.getTempDir(), captureId + Misc.VIDEO_EXTENSION);
+            try {
+                final BufferedImage poster = buffer.dump(videoFile, seconds);
+                Capture capture = new Capture(captureId, poster);
+                capture.setName("Instant replay " + captureId);
+                capture.setVideo(true);
+                capture.setOriginalFile(videoFile);
+                capture.setRenderedImage(poster);
+                CaptureHistory.save(capture);
+                SwingUtilities.invokeLater(this::onHistory);
+            }
+            catch (IOException e) {
+                SwingUtilities.invokeLater(() -> UI.alertException(this, "Instant replay error", "Error saving instant replay: " + e.getMessage(), e));
+            }
+        }, "Ginj instant replay save");
+        saveThread.start();
+    }
+
     public void addTargetChangeListener(TargetListChangeListener listener) {
         targetListChangeListener.add(listener);
     }
@@ -1,13 +1,26 @@
 package info.ginj.ui.laf;
 
+import info.ginj.Ginj;
+
 import javax.swing.*;
 import javax.swing.plaf.synth.SynthLookAndFeel;
 import java.awt.*;
 import java.awt.image.FilteredImageSource;
 import java.awt.image.ImageProducer;
 import java.awt.image.RGBImageFilter;
+import java.text.ParseException;
 
 public class GinjSynthLookAndFeel extends SynthLookAndFeel {
+
+    /**
+     * Loads the Ginj look and feel from its XML description, and makes it the current one
+     */
+    public static void install() throws ParseException, UnsupportedLookAndFeelException {
+        GinjSynthLookAndFeel ginjLookAndFeel = new GinjSynthLookAndFeel();
+        ginjLookAndFeel.load(Ginj.class.getResourceAsStream(Ginj.LAF_XML), Ginj.class);
+        UIManager.setLookAndFeel(ginjLookAndFeel);
+    }
+
     @Override
     public Icon getDisabledIcon(JComponent component, Icon icon) {
         if (icon instanceof ImageIcon) {
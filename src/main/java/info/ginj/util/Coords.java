@@ -1,6 +1,9 @@
 package info.ginj.util;
 
 import java.awt.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 
 /*
  * Coordinate utils
@@ -97,4 +100,27 @@ public class Coords {
         }
     }
 
+
+    // Merge rectangles that overlap into their union, until no two rectangles overlap anymore
+    public static List<Rectangle> mergeOverlapping(List<Rectangle> rectangles) {
+        List<Rectangle> merged = new ArrayList<>();
+        for (Rectangle rectangle : rectangles) {
+            if (rectangle.isEmpty()) continue;
+            Rectangle current = new Rectangle(rectangle);
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (Iterator<Rectangle> iterator = merged.iterator(); iterator.hasNext(); ) {
+                    Rectangle other = iterator.next();
+                    if (other.intersects(current)) {
+                        current.add(other);
+                        iterator.remove();
+                        changed = true;
+                    }
+                }
+            }
+            merged.add(current);
+        }
+        return merged;
+    }
 }
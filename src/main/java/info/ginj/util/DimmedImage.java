@@ -0,0 +1,169 @@
+package info.ginj.util;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.ImageObserver;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A greyscale and dimmed version of an image, used to show the unselected area when drawing the capture selection.
+ * The image is split in tiles which are computed by a fork-join pool, directly on the int[] rasters, greyscale
+ * conversion and dimming being done in a single pass.
+ * Tiles are computed lazily: the ones closest to a "priority" point are submitted first, and a tile that is still
+ * missing when it must be drawn is computed on the spot, so drawing never has to wait for the whole image.
+ */
+public class DimmedImage {
+    public static final int TILE_SIZE = 256;
+
+    // Contribution of each sRGB component value to the linear luminance, scaled to 255 * 256.
+    // This is what the former ColorConvertOp to CS_GRAY did, so the result looks the same
+    private static final int[] RED_LUMINANCE = new int[256];
+    private static final int[] GREEN_LUMINANCE = new int[256];
+    private static final int[] BLUE_LUMINANCE = new int[256];
+    // sRGB value of each linear grey level once UI.UNSELECTED_AREA_DIMMED_COLOR is drawn over it
+    private static final int[] DIMMED_GREY_LEVELS = new int[256];
+
+    static {
+        for (int value = 0; value < 256; value++) {
+            final double linear = toLinear(value / 255.0) * 255 * 256;
+            RED_LUMINANCE[value] = (int) Math.round(linear * 0.2126);
+            GREEN_LUMINANCE[value] = (int) Math.round(linear * 0.7152);
+            BLUE_LUMINANCE[value] = (int) Math.round(linear * 0.0722);
+        }
+        final Color dimColor = UI.UNSELECTED_AREA_DIMMED_COLOR;
+        final double alpha = dimColor.getAlpha() / 255.0;
+        // Note: like Java2D did on the former CS_GRAY image, the dim color is blended "as is" with the linear grey level
+        for (int grey = 0; grey < 256; grey++) {
+            final double dimmed = (grey * (1 - alpha) + dimColor.getRed() * alpha) / 255.0;
+            DIMMED_GREY_LEVELS[grey] = (int) Math.round(toSrgb(dimmed) * 255);
+        }
+    }
+
+    private final int[] sourcePixels;
+    private final BufferedImage dimmedImage;
+    private final int[] dimmedPixels;
+    private final int width;
+    private final int height;
+    private final int tileColumns;
+    private final int tileRows;
+    // 0 = to be computed, 1 = done
+    private final AtomicIntegerArray tileDone;
+
+    public DimmedImage(BufferedImage source) {
+        source = Rasters.toIntData(source);
+        width = source.getWidth();
+        height = source.getHeight();
+        sourcePixels = Rasters.getData(source);
+        dimmedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        dimmedPixels = Rasters.getData(dimmedImage);
+        tileColumns = (width + TILE_SIZE - 1) / TILE_SIZE;
+        tileRows = (height + TILE_SIZE - 1) / TILE_SIZE;
+        tileDone = new AtomicIntegerArray(tileColumns * tileRows);
+    }
+
+    /**
+     * Submits all tiles to the common fork-join pool, the ones closest to the given point first.
+     * @param priorityPoint the point around which tiles are most urgently needed (e.g. the mouse position)
+     */
+    public void startAsync(Point priorityPoint) {
+        List<Integer> tileIndices = new ArrayList<>(tileDone.length());
+        for (int i = 0; i < tileDone.length(); i++) {
+            tileIndices.add(i);
+        }
+        if (priorityPoint != null) {
+            tileIndices.sort(Comparator.comparingLong(tileIndex -> distanceToTile(tileIndex, priorityPoint)));
+        }
+        final ForkJoinPool pool = ForkJoinPool.commonPool();
+        for (Integer tileIndex : tileIndices) {
+            pool.execute(() -> computeTile(tileIndex));
+        }
+    }
+
+    /**
+     * Computes all missing tiles in parallel, and waits for them to be done.
+     * @return the dimmed image
+     */
+    public BufferedImage computeAll() {
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(tileDone.length());
+        for (int i = 0; i < tileDone.length(); i++) {
+            final int tileIndex = i;
+            tasks.add(ForkJoinTask.adapt(() -> computeTile(tileIndex)));
+        }
+        ForkJoinTask.invokeAll(tasks);
+        return dimmedImage;
+    }
+
+    public boolean isComplete() {
+        for (int i = 0; i < tileDone.length(); i++) {
+            if (tileDone.get(i) == 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Draws the dimmed image at the given location. Only tiles intersecting the clip of the Graphics are drawn,
+     * and the ones that are not computed yet are computed first, in the calling thread.
+     */
+    public void draw(Graphics2D g2d, int x, int y, ImageObserver observer) {
+        Rectangle clip = g2d.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(x, y, width, height);
+        }
+        final int firstColumn = Math.max(0, (clip.x - x) / TILE_SIZE);
+        final int lastColumn = Math.min(tileColumns - 1, (clip.x + clip.width - x) / TILE_SIZE);
+        final int firstRow = Math.max(0, (clip.y - y) / TILE_SIZE);
+        final int lastRow = Math.min(tileRows - 1, (clip.y + clip.height - y) / TILE_SIZE);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                computeTile(row * tileColumns + column);
+                final int x1 = column * TILE_SIZE;
+                final int y1 = row * TILE_SIZE;
+                final int x2 = Math.min(x1 + TILE_SIZE, width);
+                final int y2 = Math.min(y1 + TILE_SIZE, height);
+                g2d.drawImage(dimmedImage, x + x1, y + y1, x + x2, y + y2, x1, y1, x2, y2, observer);
+            }
+        }
+    }
+
+    /**
+     * Converts one tile to greyscale and dims it, in one pass.
+     * Computing the same tile twice (e.g. by the pool and by the EDT) is harmless as it writes the same values.
+     */
+    private void computeTile(int tileIndex) {
+        if (tileDone.get(tileIndex) != 0) return;
+
+        final int x1 = (tileIndex % tileColumns) * TILE_SIZE;
+        final int y1 = (tileIndex / tileColumns) * TILE_SIZE;
+        final int x2 = Math.min(x1 + TILE_SIZE, width);
+        final int y2 = Math.min(y1 + TILE_SIZE, height);
+        for (int y = y1; y < y2; y++) {
+            final int rowEnd = y * width + x2;
+            for (int index = y * width + x1; index < rowEnd; index++) {
+                final int rgb = sourcePixels[index];
+                final int grey = (RED_LUMINANCE[(rgb >> 16) & 0xFF] + GREEN_LUMINANCE[(rgb >> 8) & 0xFF] + BLUE_LUMINANCE[rgb & 0xFF]) >> 8;
+                final int dimmed = DIMMED_GREY_LEVELS[grey];
+                dimmedPixels[index] = 0xFF000000 | (dimmed << 16) | (dimmed << 8) | dimmed;
+            }
+        }
+        tileDone.set(tileIndex, 1);
+    }
+
+    private static double toLinear(double srgb) {
+        return (srgb <= 0.04045) ? srgb / 12.92 : Math.pow((srgb + 0.055) / 1.055, 2.4);
+    }
+
+    private static double toSrgb(double linear) {
+        return (linear <= 0.0031308) ? linear * 12.92 : 1.055 * Math.pow(linear, 1 / 2.4) - 0.055;
+    }
+
+    private long distanceToTile(int tileIndex, Point point) {
+        final long dx = (tileIndex % tileColumns) * TILE_SIZE + TILE_SIZE / 2 - point.x;
+        final long dy = (tileIndex / tileColumns) * TILE_SIZE + TILE_SIZE / 2 - point.y;
+        return dx * dx + dy * dy;
+    }
+}
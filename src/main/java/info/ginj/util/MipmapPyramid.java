@@ -0,0 +1,122 @@
+package info.ginj.util;
+
+import javax.swing.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * A pyramid of downscaled copies of an image (1/2, 1/4...), used to draw it zoomed out without resampling the full
+ * image at each paint.
+ * Levels are built in a background thread on first request, each one from the previous one with a 2x2 box filter,
+ * rows being processed in parallel. Until a level is ready, the closest finer level is returned instead.
+ */
+public class MipmapPyramid {
+    // No level is built below this size
+    private static final int MIN_LEVEL_SIZE = 256;
+
+    private final BufferedImage baseImage;
+    private final Runnable levelReadyCallback;
+    private final int levelCount;
+    private final List<BufferedImage> levels = new ArrayList<>();
+    private boolean buildStarted = false;
+
+    /**
+     * @param baseImage the full size image
+     * @param levelReadyCallback called on the EDT each time a new level is ready, typically to repaint
+     */
+    public MipmapPyramid(BufferedImage baseImage, Runnable levelReadyCallback) {
+        this.baseImage = baseImage;
+        this.levelReadyCallback = levelReadyCallback;
+        int count = 1;
+        int width = baseImage.getWidth();
+        int height = baseImage.getHeight();
+        while (Math.max(width, height) / 2 >= MIN_LEVEL_SIZE) {
+            width = (width + 1) / 2;
+            height = (height + 1) / 2;
+            count++;
+        }
+        levelCount = count;
+        levels.add(baseImage);
+    }
+
+    /**
+     * @param zoom a zoom factor, 1 being the full size
+     * @return the index of the level to sample from at that zoom: the smallest level that is still at least as large
+     * as the zoomed image
+     */
+    public int getLevelIndex(double zoom) {
+        if (zoom >= 1) {
+            return 0;
+        }
+        // Small tolerance so that e.g. exactly 0.5 uses level 1
+        final int index = (int) Math.floor(Math.log(1 / zoom) / Math.log(2) + 1e-9);
+        return Math.min(index, levelCount - 1);
+    }
+
+    /**
+     * Returns the image of the level to use at the given zoom, or of the closest finer level if it is not built yet
+     * @param zoom a zoom factor, 1 being the full size
+     * @return the image to sample from
+     */
+    public synchronized BufferedImage getImage(double zoom) {
+        final int index = getLevelIndex(zoom);
+        if (index >= levels.size() && !buildStarted) {
+            buildStarted = true;
+            Thread builderThread = new Thread(this::buildLevels, "Ginj mipmap builder");
+            builderThread.setDaemon(true);
+            builderThread.start();
+        }
+        return levels.get(Math.min(index, levels.size() - 1));
+    }
+
+    private void buildLevels() {
+        final long startNanos = System.nanoTime();
+        BufferedImage level = Rasters.toIntData(baseImage);
+        for (int i = 1; i < levelCount; i++) {
+            level = downscale(level);
+            synchronized (this) {
+                levels.add(level);
+            }
+            SwingUtilities.invokeLater(levelReadyCallback);
+        }
+        PerfLog.log("Mipmaps", String.format("%d levels for %dx%d in %.1f ms", levelCount - 1, baseImage.getWidth(), baseImage.getHeight(), (System.nanoTime() - startNanos) / 1e6));
+    }
+
+    /**
+     * Halves the size of an image, each target pixel being the average of 2x2 source pixels
+     * @param source an image for which Rasters.hasIntData() is true
+     * @return the image at half size
+     */
+    static BufferedImage downscale(BufferedImage source) {
+        final int sourceWidth = source.getWidth();
+        final int sourceHeight = source.getHeight();
+        final int width = (sourceWidth + 1) / 2;
+        final int height = (sourceHeight + 1) / 2;
+        final boolean hasAlpha = source.getType() == BufferedImage.TYPE_INT_ARGB;
+        final BufferedImage target = new BufferedImage(width, height, hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        final int[] sourcePixels = Rasters.getData(source);
+        final int[] targetPixels = Rasters.getData(target);
+        IntStream.range(0, height).parallel().forEach(y -> {
+            // Odd sizes: the last row/column is averaged with itself
+            final int row0 = 2 * y * sourceWidth;
+            final int row1 = Math.min(2 * y + 1, sourceHeight - 1) * sourceWidth;
+            for (int x = 0; x < width; x++) {
+                final int x0 = 2 * x;
+                final int x1 = Math.min(2 * x + 1, sourceWidth - 1);
+                final int p00 = sourcePixels[row0 + x0];
+                final int p01 = sourcePixels[row0 + x1];
+                final int p10 = sourcePixels[row1 + x0];
+                final int p11 = sourcePixels[row1 + x1];
+                int pixel = 0;
+                for (int shift = 0; shift < 32; shift += 8) {
+                    final int sum = ((p00 >>> shift) & 0xFF) + ((p01 >>> shift) & 0xFF) + ((p10 >>> shift) & 0xFF) + ((p11 >>> shift) & 0xFF);
+                    pixel |= ((sum + 2) >> 2) << shift;
+                }
+                targetPixels[y * width + x] = hasAlpha ? pixel : pixel | 0xFF000000;
+            }
+        });
+        return target;
+    }
+}
@@ -8,7 +8,13 @@ public class Misc {
 
     public static final String IMAGE_FORMAT_PNG = "png";
     public static final String IMAGE_EXTENSION = ".png";
-    public static final String VIDEO_EXTENSION = ".mp4";
+    public static final String VIDEO_EXTENSION = ".avi";
+    public static final String GIF_EXTENSION = ".gif";
+    public static final String VIDEO_FORMAT_AVI = "avi";
+    public static final String VIDEO_FORMAT_GIF = "gif";
+    public static final String VIDEO_FORMAT_APNG = "apng";
+    public static final String IMAGE_MIME_TYPE = "image/png";
+    public static final String VIDEO_MIME_TYPE = "video/x-msvideo";
     public static final String METADATA_EXTENSION = ".xml";
     public static final String THUMBNAIL_EXTENSION = ".thumb.png";
 
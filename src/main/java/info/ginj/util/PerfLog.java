@@ -0,0 +1,19 @@
+package info.ginj.util;
+
+/**
+ * Minimal logging of performance counters, to check the effect of optimizations.
+ * Disabled by default, enable it by launching with -Dginj.perf=true
+ */
+public class PerfLog {
+    private static final boolean ENABLED = Boolean.getBoolean("ginj.perf");
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    public static void log(String category, String message) {
+        if (ENABLED) {
+            System.out.println("[perf] " + category + ": " + message);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package info.ginj.util;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * Utils to work directly on the int[] pixel arrays backing BufferedImages, instead of going through getRGB()/setRGB()
+ */
+public class Rasters {
+
+    /**
+     * Indicates if the pixels of the given image can be accessed directly as a packed int[], one int per pixel,
+     * starting at index 0 and with no padding at the end of each row.
+     * Note that accessing the array prevents Java2D from caching the image in video memory.
+     * @param image the image to test
+     * @return true if getData() can be used on that image
+     */
+    public static boolean hasIntData(BufferedImage image) {
+        final int type = image.getType();
+        if (type != BufferedImage.TYPE_INT_RGB && type != BufferedImage.TYPE_INT_ARGB) {
+            return false;
+        }
+        final WritableRaster raster = image.getRaster();
+        final DataBuffer dataBuffer = raster.getDataBuffer();
+        if (!(dataBuffer instanceof DataBufferInt) || dataBuffer.getNumBanks() != 1 || dataBuffer.getOffset() != 0) {
+            return false;
+        }
+        if (!(raster.getSampleModel() instanceof SinglePixelPackedSampleModel)) {
+            return false;
+        }
+        final SinglePixelPackedSampleModel sampleModel = (SinglePixelPackedSampleModel) raster.getSampleModel();
+        return sampleModel.getScanlineStride() == image.getWidth()
+                && raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0
+                && dataBuffer.getSize() == image.getWidth() * image.getHeight();
+    }
+
+    /**
+     * Returns the pixel array backing the given image.
+     * @param image an image for which hasIntData() is true
+     * @return the pixels, row by row
+     */
+    public static int[] getData(BufferedImage image) {
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * Copies the given area of an image into a new compact TYPE_INT_RGB image.
+     * Contrary to getSubimage(), the result does not share (and thus does not keep alive) the source raster.
+     * @param source the source image
+     * @param area the area to copy, which must be inside the source image
+     * @return a new image of the size of the area
+     */
+    public static BufferedImage copy(BufferedImage source, Rectangle area) {
+        BufferedImage copy = new BufferedImage(area.width, area.height, BufferedImage.TYPE_INT_RGB);
+        if (hasIntData(source)) {
+            // Copy row by row
+            final int[] sourcePixels = getData(source);
+            final int[] copyPixels = getData(copy);
+            final int sourceWidth = source.getWidth();
+            for (int y = 0; y < area.height; y++) {
+                System.arraycopy(sourcePixels, (area.y + y) * sourceWidth + area.x, copyPixels, y * area.width, area.width);
+            }
+        }
+        else {
+            final Graphics2D g2d = copy.createGraphics();
+            g2d.drawImage(source, -area.x, -area.y, null);
+            g2d.dispose();
+        }
+        return copy;
+    }
+
+    /**
+     * @param image an image
+     * @return the size in bytes of the pixel buffer backing the image, which may be larger than the image itself
+     * (e.g. for an image returned by getSubimage())
+     */
+    public static long getBufferSize(BufferedImage image) {
+        final DataBuffer dataBuffer = image.getRaster().getDataBuffer();
+        return (long) dataBuffer.getSize() * dataBuffer.getNumBanks() * DataBuffer.getDataTypeSize(dataBuffer.getDataType()) / 8;
+    }
+
+    /**
+     * Returns an image whose pixels can be accessed by getData(): either the given image if it is already the case,
+     * or a TYPE_INT_RGB copy of it.
+     * @param image the source image
+     * @return an image suitable for getData()
+     */
+    public static BufferedImage toIntData(BufferedImage image) {
+        if (hasIntData(image)) {
+            return image;
+        }
+        BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        final Graphics2D g2d = copy.createGraphics();
+        g2d.drawImage(image, 0, 0, null);
+        g2d.dispose();
+        return copy;
+    }
+}
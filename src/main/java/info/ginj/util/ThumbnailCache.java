@@ -0,0 +1,168 @@
+package info.ginj.util;
+
+import info.ginj.model.Prefs;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.AffineTransformOp;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Decoded thumbnails, shared by all the windows that show captures, so that a thumbnail is only read from disk again
+ * once it has been evicted:
+ * - the cache holds a limited number of bytes of pixels (see Prefs.Key.THUMBNAIL_CACHE_MEMORY_KB), and evicts the least
+ * recently used thumbnails first;
+ * - when a stored thumbnail is larger than requested, it is decoded with source subsampling, so that the pixels that
+ * are skipped are not even decoded, then scaled down to fit if needed;
+ * - hits, misses and evictions are counted, and reported in the perf log.
+ * Thumbnails are decoded by the calling thread, typically a background loader, outside of the lock of the cache.
+ */
+public class ThumbnailCache {
+    private static final int DEFAULT_MAX_MEMORY_KB = 16384;
+
+    private static ThumbnailCache instance;
+
+    private final long maxBytes;
+    private final Map<Object, BufferedImage> cache = new LinkedHashMap<>(64, 0.75f, true);
+    private long cachedBytes = 0;
+
+    // Counters
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+
+    /**
+     * @return the cache shared by the whole application
+     */
+    public static synchronized ThumbnailCache getInstance() {
+        if (instance == null) {
+            instance = new ThumbnailCache(Prefs.getInt(Prefs.Key.THUMBNAIL_CACHE_MEMORY_KB, DEFAULT_MAX_MEMORY_KB, 0, Integer.MAX_VALUE) * 1024L);
+        }
+        return instance;
+    }
+
+    /**
+     * @param maxBytes the maximum number of bytes of pixels kept in the cache
+     */
+    public ThumbnailCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the thumbnail stored in the given file, decoded from the file if it is not in the cache
+     * @param file the thumbnail file
+     * @param maxSize the size the thumbnail must fit in
+     * @return the thumbnail, no larger than maxSize. It must not be modified as it is shared
+     * @throws IOException if the file could not be read or decoded
+     */
+    public BufferedImage get(File file, Dimension maxSize) throws IOException {
+        // The modification date is part of the key, so that a rewritten file is decoded again
+        final Object key = Arrays.asList(file.getAbsolutePath(), file.lastModified(), maxSize.width, maxSize.height);
+        synchronized (this) {
+            final BufferedImage thumbnail = cache.get(key);
+            if (thumbnail != null) {
+                hitCount++;
+                return thumbnail;
+            }
+            missCount++;
+        }
+
+        final long startNanos = System.nanoTime();
+        final BufferedImage thumbnail = decode(file, maxSize);
+
+        synchronized (this) {
+            final BufferedImage previousThumbnail = cache.put(key, thumbnail);
+            if (previousThumbnail != null) {
+                // Decoded concurrently by another thread
+                cachedBytes -= Rasters.getBufferSize(previousThumbnail);
+            }
+            cachedBytes += Rasters.getBufferSize(thumbnail);
+            // Evict least recently used thumbnails, but always keep the last one
+            final Iterator<BufferedImage> iterator = cache.values().iterator();
+            while (cachedBytes > maxBytes && cache.size() > 1) {
+                cachedBytes -= Rasters.getBufferSize(iterator.next());
+                iterator.remove();
+                evictionCount++;
+            }
+            if (PerfLog.isEnabled()) {
+                PerfLog.log("Thumbnails", String.format("Decoded %s in %.1f ms. %d hits, %d misses, %d evictions, %d thumbnails in %.1f KB",
+                        file.getName(), (System.nanoTime() - startNanos) / 1e6, hitCount, missCount, evictionCount, cache.size(), cachedBytes / 1024.0));
+            }
+        }
+        return thumbnail;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return the number of bytes of pixels held by the cache
+     */
+    public synchronized long getCachedBytes() {
+        return cachedBytes;
+    }
+
+    /**
+     * Decodes an image, skipping the rows and columns that are not needed to fit in the given size
+     */
+    private static BufferedImage decode(File file, Dimension maxSize) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            if (input == null) {
+                throw new IOException("Could not open '" + file.getAbsolutePath() + "'");
+            }
+            final Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new IOException("Unsupported image format for '" + file.getAbsolutePath() + "'");
+            }
+            final ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                final int width = reader.getWidth(0);
+                final int height = reader.getHeight(0);
+                // The largest step that still leaves at least the size to fit in, in the most constrained dimension
+                final double scale = Math.max(width / (double) maxSize.width, height / (double) maxSize.height);
+                final int subsampling = Math.max(1, (int) scale);
+                final ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return fit(reader.read(0, param), maxSize);
+            }
+            finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * @return the image scaled down to fit in the given size, or the image itself if it already fits
+     */
+    private static BufferedImage fit(BufferedImage image, Dimension maxSize) {
+        final double scale = Math.min(maxSize.width / (double) image.getWidth(), maxSize.height / (double) image.getHeight());
+        if (scale >= 1) {
+            return image;
+        }
+        final int type = image.getType() == BufferedImage.TYPE_CUSTOM ? BufferedImage.TYPE_INT_ARGB : image.getType();
+        final BufferedImage scaledImage = new BufferedImage(Math.max(1, (int) (image.getWidth() * scale)), Math.max(1, (int) (image.getHeight() * scale)), type);
+        final AffineTransformOp scaleOp = new AffineTransformOp(AffineTransform.getScaleInstance(scale, scale), AffineTransformOp.TYPE_BILINEAR);
+        scaleOp.filter(image, scaledImage);
+        return scaledImage;
+    }
+}
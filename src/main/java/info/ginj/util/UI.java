@@ -13,12 +13,10 @@ import javax.swing.event.MouseInputListener;
 import javax.swing.text.html.HTMLEditorKit;
 import javax.swing.text.html.StyleSheet;
 import java.awt.*;
-import java.awt.color.ColorSpace;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseEvent;
 import java.awt.image.BufferedImage;
-import java.awt.image.ColorConvertOp;
 import java.io.IOException;
 import java.net.URL;
 import java.util.Map;
@@ -144,19 +142,13 @@ public class UI {
 
     /**
      * Convert an image to greyscale and apply a dim effect to it.
-     * Used to show unselected area when drawing selection
+     * Used to show unselected area when drawing selection.
+     * Note: the capture selection uses DimmedImage directly so that tiles are only computed when needed
      * @param image the source image
      * @return the dimmed result
      */
     public static Image makeDimmedImage(BufferedImage image) {
-        ColorSpace cs = ColorSpace.getInstance(ColorSpace.CS_GRAY);
-        ColorConvertOp op = new ColorConvertOp(cs, null);
-        final BufferedImage greyScale = op.filter(image, null);
-        final Graphics graphics = greyScale.getGraphics();
-        graphics.setColor(UNSELECTED_AREA_DIMMED_COLOR);
-        graphics.fillRect(0,0,image.getWidth(), image.getHeight());
-        graphics.dispose();
-        return greyScale;
+        return new DimmedImage(image).computeAll();
     }
 
     /**
@@ -279,6 +271,35 @@ public class UI {
         handle.addMouseMotionListener(mouseListener);
     }
 
+    /**
+     * Positions the given window next to an area (below, above, right or left), on the same screen, if there is room
+     * for it. Used for windows that must not hide the area they control (e.g. a recording).
+     * @param window the window to position
+     * @param area the area to leave visible, in virtual desktop coordinates
+     * @return true if a position was found, false if the window was left untouched
+     */
+    public static boolean positionOutsideArea(Window window, Rectangle area) {
+        final Dimension size = window.getSize();
+        Point[] candidatePositions = new Point[]{
+                new Point(area.x, area.y + area.height + 1), // Below
+                new Point(area.x, area.y - size.height - 1), // Above
+                new Point(area.x + area.width + 1, area.y), // Right
+                new Point(area.x - size.width - 1, area.y) // Left
+        };
+        for (GraphicsDevice screenDevice : GraphicsEnvironment.getLocalGraphicsEnvironment().getScreenDevices()) {
+            final Rectangle screenBounds = screenDevice.getDefaultConfiguration().getBounds();
+            if (screenBounds.intersects(area)) {
+                for (Point candidatePosition : candidatePositions) {
+                    if (screenBounds.contains(new Rectangle(candidatePosition, size))) {
+                        window.setLocation(candidatePosition);
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
     /**
      * Creates a panel representing the title bar
      * @param title text to display at the middle of the window
@@ -0,0 +1,101 @@
+package info.ginj.video;
+
+import info.ginj.util.Misc;
+import info.ginj.util.Rasters;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.function.IntConsumer;
+
+/**
+ * Converts a video recorded by Ginj to an animated image.
+ * Frames are streamed from the video to the AnimationWriter one at a time. Each one is cropped to the tiles that
+ * changed since the previous one, and repeated frames just extend the duration of the previous one, so at most two
+ * decoded frames are in memory at any time.
+ */
+public class AnimationConverter {
+
+    /**
+     * @param format Misc.VIDEO_FORMAT_GIF or Misc.VIDEO_FORMAT_APNG
+     * @return the file extension to use for that format
+     */
+    public static String getExtension(String format) {
+        switch (format) {
+            case Misc.VIDEO_FORMAT_GIF:
+                return Misc.GIF_EXTENSION;
+            case Misc.VIDEO_FORMAT_APNG:
+                return Misc.IMAGE_EXTENSION;
+            default:
+                return Misc.VIDEO_EXTENSION;
+        }
+    }
+
+    /**
+     * Converts a video to an animated image
+     * @param videoFile the source video, as recorded by Ginj
+     * @param destinationFile the file to write
+     * @param format Misc.VIDEO_FORMAT_GIF or Misc.VIDEO_FORMAT_APNG
+     * @param onProgress receives the percentage of frames converted so far, may be null
+     * @throws IOException if the video could not be read or the animation could not be written
+     */
+    public static void convert(File videoFile, File destinationFile, String format, IntConsumer onProgress) throws IOException {
+        try (AviMjpegReader reader = new AviMjpegReader(videoFile)) {
+            final int frameDurationMillis = 1000 / Math.max(1, reader.getFrameRate());
+            final int frameCount = Math.max(1, reader.getFrameCount());
+            try (AnimationWriter writer = createWriter(format, destinationFile, reader.getWidth(), reader.getHeight())) {
+                final FrameDiffer differ = new FrameDiffer();
+                BufferedImage pendingImage = null;
+                Point pendingPosition = null;
+                int pendingDuration = 0;
+                byte[] frameData;
+                int frameNumber = 0;
+                while ((frameData = reader.readNextFrame()) != null) {
+                    frameNumber++;
+                    if (onProgress != null) {
+                        onProgress.accept(Math.min(100, frameNumber * 100 / frameCount));
+                    }
+                    Rectangle changedArea = null;
+                    BufferedImage image = null;
+                    if (frameData.length > 0) {
+                        image = ImageIO.read(new ByteArrayInputStream(frameData));
+                        if (image == null) {
+                            throw new IOException("Unrecognized frame in video file: " + videoFile.getAbsolutePath());
+                        }
+                        image = Rasters.toIntData(image);
+                        changedArea = differ.compare(image);
+                    }
+                    if (changedArea == null || changedArea.isEmpty()) {
+                        // Same as previous frame
+                        pendingDuration += frameDurationMillis;
+                        continue;
+                    }
+                    // A new frame is starting, so we now know the duration of the previous one
+                    if (pendingImage != null) {
+                        writer.writeFrame(pendingImage, pendingPosition, pendingDuration);
+                    }
+                    pendingImage = Rasters.copy(image, changedArea);
+                    pendingPosition = changedArea.getLocation();
+                    pendingDuration = frameDurationMillis;
+                }
+                if (pendingImage != null) {
+                    writer.writeFrame(pendingImage, pendingPosition, pendingDuration);
+                }
+            }
+        }
+    }
+
+    private static AnimationWriter createWriter(String format, File file, int width, int height) throws IOException {
+        switch (format) {
+            case Misc.VIDEO_FORMAT_GIF:
+                return new GifAnimationWriter(file);
+            case Misc.VIDEO_FORMAT_APNG:
+                return new ApngAnimationWriter(file, width, height);
+            default:
+                throw new IOException("Unsupported animation format: " + format);
+        }
+    }
+}
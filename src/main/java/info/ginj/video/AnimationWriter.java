@@ -0,0 +1,21 @@
+package info.ginj.video;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Writes an animated image (e.g. GIF or APNG) frame by frame, so that the whole animation never has to be in memory
+ */
+public interface AnimationWriter extends Closeable {
+    /**
+     * Writes a frame.
+     * The first frame must cover the whole animation. Next ones can only contain the area that changed since the
+     * previous frame, which is then drawn over it.
+     * @param image the contents of the frame, or of its changed area
+     * @param position the location of the image in the animation
+     * @param durationMillis how long the frame is displayed
+     */
+    void writeFrame(BufferedImage image, Point position, int durationMillis) throws IOException;
+}
@@ -0,0 +1,166 @@
+package info.ginj.video;
+
+import info.ginj.util.Rasters;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a looping animated PNG (APNG) in true colors.
+ * Frames are written as soon as they are received: the number of frames, which must appear in the header, is
+ * patched when the file is closed.
+ * See https://wiki.mozilla.org/APNG_Specification
+ */
+public class ApngAnimationWriter implements AnimationWriter {
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    // Signature + IHDR chunk
+    private static final int ACTL_POSITION = 8 + 12 + 13;
+    private static final int ACTL_DATA_SIZE = 8;
+
+    private static final byte FILTER_UP = 2;
+    private static final byte DISPOSE_OP_NONE = 0;
+    private static final byte BLEND_OP_SOURCE = 0;
+
+    private final FileChannel channel;
+    private final int width;
+    private final int height;
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+    private final CRC32 crc = new CRC32();
+    private int frameCount = 0;
+    // APNG numbers fcTL and fdAT chunks in a single sequence
+    private int sequenceNumber = 0;
+
+    public ApngAnimationWriter(File file, int width, int height) throws IOException {
+        this.width = width;
+        this.height = height;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        channel.write(ByteBuffer.wrap(PNG_SIGNATURE));
+
+        ByteBuffer header = ByteBuffer.allocate(13);
+        header.putInt(width).putInt(height);
+        header.put((byte) 8); // bit depth
+        header.put((byte) 2); // color type: RGB
+        header.put((byte) 0); // compression
+        header.put((byte) 0); // filter
+        header.put((byte) 0); // no interlace
+        writeChunk("IHDR", header.array());
+
+        // Frame count is not known yet
+        writeChunk("acTL", getAnimationControl(0));
+    }
+
+    @Override
+    public void writeFrame(BufferedImage image, Point position, int durationMillis) throws IOException {
+        ByteBuffer frameControl = ByteBuffer.allocate(26);
+        frameControl.putInt(sequenceNumber++);
+        frameControl.putInt(image.getWidth()).putInt(image.getHeight());
+        frameControl.putInt(position.x).putInt(position.y);
+        frameControl.putShort((short) Math.min(durationMillis, Short.MAX_VALUE)).putShort((short) 1000);
+        frameControl.put(DISPOSE_OP_NONE).put(BLEND_OP_SOURCE);
+        writeChunk("fcTL", frameControl.array());
+
+        final byte[] compressedData = compress(image);
+        if (frameCount == 0) {
+            // The first frame is the default image
+            writeChunk("IDAT", compressedData);
+        }
+        else {
+            ByteBuffer frameData = ByteBuffer.allocate(4 + compressedData.length);
+            frameData.putInt(sequenceNumber++);
+            frameData.put(compressedData);
+            writeChunk("fdAT", frameData.array());
+        }
+        frameCount++;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            writeChunk("IEND", new byte[0]);
+            // Patch the frame count
+            channel.position(ACTL_POSITION);
+            writeChunk("acTL", getAnimationControl(frameCount));
+        }
+        finally {
+            deflater.end();
+            channel.close();
+        }
+    }
+
+    private byte[] getAnimationControl(int numFrames) {
+        ByteBuffer animationControl = ByteBuffer.allocate(ACTL_DATA_SIZE);
+        animationControl.putInt(numFrames);
+        animationControl.putInt(0); // loop forever
+        return animationControl.array();
+    }
+
+    /**
+     * Filters each row with the "Up" filter (difference with the row above), which is cheap and works well
+     * on screen contents, then deflates the result
+     */
+    private byte[] compress(BufferedImage image) {
+        image = Rasters.toIntData(image);
+        final int[] pixels = Rasters.getData(image);
+        final int imageWidth = image.getWidth();
+        final int imageHeight = image.getHeight();
+
+        deflater.reset();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] row = new byte[1 + imageWidth * 3];
+        byte[] buffer = new byte[64 * 1024];
+        row[0] = FILTER_UP;
+        for (int y = 0; y < imageHeight; y++) {
+            int rowIndex = y * imageWidth;
+            int byteIndex = 1;
+            for (int x = 0; x < imageWidth; x++) {
+                final int rgb = pixels[rowIndex + x];
+                final int above = (y == 0) ? 0 : pixels[rowIndex + x - imageWidth];
+                row[byteIndex++] = (byte) ((rgb >> 16) - (above >> 16));
+                row[byteIndex++] = (byte) ((rgb >> 8) - (above >> 8));
+                row[byteIndex++] = (byte) (rgb - above);
+            }
+            deflater.setInput(row);
+            while (!deflater.needsInput()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+        }
+        deflater.finish();
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        return out.toByteArray();
+    }
+
+    private void writeChunk(String type, byte[] data) throws IOException {
+        final byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        crc.reset();
+        crc.update(typeBytes);
+        crc.update(data);
+        ByteBuffer chunk = ByteBuffer.allocate(12 + data.length);
+        chunk.putInt(data.length);
+        chunk.put(typeBytes);
+        chunk.put(data);
+        chunk.putInt((int) crc.getValue());
+        chunk.flip();
+        while (chunk.hasRemaining()) {
+            channel.write(chunk);
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
@@ -0,0 +1,144 @@
+package info.ginj.video;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads back the frames of an AVI file written by AviMjpegWriter, one at a time, so that a video can be converted
+ * or previewed without loading it entirely in memory.
+ */
+public class AviMjpegReader implements Closeable {
+    private final FileChannel channel;
+    private final ByteBuffer chunkHeader = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+    private int width;
+    private int height;
+    private int frameRate;
+    private int frameCount;
+    private long position;
+    private long moviEnd = -1;
+
+    public AviMjpegReader(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            readHeaders();
+        }
+        catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void readHeaders() throws IOException {
+        readChunkHeader(0);
+        if (!"RIFF".equals(getFourCC(0)) || !"AVI ".equals(getFourCC(8))) {
+            throw new IOException("Not an AVI file");
+        }
+        final long fileEnd = Math.min(channel.size(), 8 + (chunkHeader.getInt(4) & 0xFFFFFFFFL));
+        position = 12;
+        while (position + 8 <= fileEnd) {
+            readChunkHeader(position);
+            final String id = getFourCC(0);
+            final long size = chunkHeader.getInt(4) & 0xFFFFFFFFL;
+            if ("LIST".equals(id)) {
+                final String listType = getFourCC(8);
+                if ("movi".equals(listType)) {
+                    moviEnd = position + 8 + size;
+                    position += 12;
+                    return;
+                }
+                else if ("hdrl".equals(listType) || "strl".equals(listType)) {
+                    // Look inside
+                    position += 12;
+                    continue;
+                }
+            }
+            else if ("avih".equals(id)) {
+                final ByteBuffer avih = read(position + 8, 56);
+                frameCount = avih.getInt(16);
+                width = avih.getInt(32);
+                height = avih.getInt(36);
+            }
+            else if ("strh".equals(id)) {
+                final ByteBuffer strh = read(position + 8, 56);
+                final int scale = strh.getInt(20);
+                frameRate = (scale == 0) ? 0 : strh.getInt(24) / scale;
+            }
+            position += 8 + size + (size & 1);
+        }
+        throw new IOException("No frames found in AVI file");
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getFrameRate() {
+        return frameRate;
+    }
+
+    /**
+     * @return the number of frames, including repeated ones
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Reads the next frame
+     * @return the JPEG data of the next frame, an empty array if the previous frame is repeated, or null at the end
+     */
+    public byte[] readNextFrame() throws IOException {
+        while (position + 8 <= moviEnd) {
+            readChunkHeader(position);
+            final String id = getFourCC(0);
+            final long size = chunkHeader.getInt(4) & 0xFFFFFFFFL;
+            if ("LIST".equals(id)) {
+                // 'rec ' lists group chunks, just step into them
+                position += 12;
+                continue;
+            }
+            final long dataPosition = position + 8;
+            position += 8 + size + (size & 1);
+            if (id.endsWith("dc") || id.endsWith("db")) {
+                return read(dataPosition, (int) size).array();
+            }
+        }
+        return null;
+    }
+
+    private void readChunkHeader(long chunkPosition) throws IOException {
+        chunkHeader.clear();
+        while (chunkHeader.hasRemaining()) {
+            if (channel.read(chunkHeader, chunkPosition + chunkHeader.position()) < 0) break;
+        }
+    }
+
+    private String getFourCC(int offset) {
+        return new String(chunkHeader.array(), offset, 4, StandardCharsets.US_ASCII);
+    }
+
+    private ByteBuffer read(long readPosition, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, readPosition + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of AVI file");
+            }
+        }
+        return buffer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
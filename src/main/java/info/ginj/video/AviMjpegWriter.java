@@ -0,0 +1,230 @@
+package info.ginj.video;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes JPEG frames to an AVI file (Motion JPEG codec), readable by all usual players without any external tool.
+ * Frames are streamed to disk through a FileChannel as they arrive, and the index is kept in a buffer preallocated
+ * for the expected number of frames, so that nothing else has to be kept in memory.
+ * The headers are written with placeholder values first, and patched in place when the file is closed.
+ * Frames that were dropped or are identical to the previous one are written as empty chunks, which players interpret
+ * as "repeat the previous frame".
+ * Note: this is a plain AVI 1.0 file (no OpenDML extension), so its size is limited to 2GB.
+ */
+public class AviMjpegWriter implements VideoWriter {
+    private static final long MAX_FILE_SIZE = Integer.MAX_VALUE;
+    private static final int AVIF_HASINDEX = 0x10;
+    private static final int AVIIF_KEYFRAME = 0x10;
+    private static final int INDEX_ENTRY_SIZE = 16;
+    // RIFF + hdrl (avih + strl (strh + strf)) + movi list headers
+    private static final int HEADER_SIZE = 12 + 12 + 64 + 12 + 64 + 48 + 12;
+    private static final int MOVI_FOURCC_POSITION = HEADER_SIZE - 4;
+    private static final byte[] PADDING = new byte[1];
+
+    private final FileChannel channel;
+    private final int width;
+    private final int height;
+    private final int frameRate;
+    private final ByteBuffer chunkHeader = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+    private ByteBuffer index;
+    private long position;
+    private int frameCount = 0;
+    private int maxChunkSize = 0;
+
+    /**
+     * @param file the file to write
+     * @param width the width of the frames
+     * @param height the height of the frames
+     * @param frameRate the number of frames per second
+     * @param expectedFrameCount the number of frames to preallocate the index for. The index grows if needed
+     * @throws IOException if the file cannot be created
+     */
+    public AviMjpegWriter(File file, int width, int height, int frameRate, int expectedFrameCount) throws IOException {
+        this.width = width;
+        this.height = height;
+        this.frameRate = frameRate;
+        index = ByteBuffer.allocateDirect(Math.max(1, expectedFrameCount) * INDEX_ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        writeFully(createHeaders(), 0);
+        position = HEADER_SIZE;
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    @Override
+    public void writeFrame(int frameNumber, byte[] encodedFrame) throws IOException {
+        // Fill gaps with empty chunks so that timing is preserved
+        while (frameCount < frameNumber) {
+            writeChunk(null);
+        }
+        writeChunk(encodedFrame);
+    }
+
+    /**
+     * Writes a chunk, or an empty one (meaning the previous frame is shown again) if data is null
+     */
+    private void writeChunk(byte[] data) throws IOException {
+        final int size = (data == null) ? 0 : data.length;
+        final int paddedSize = size + (size & 1);
+        if (position + 8 + paddedSize + (long) (frameCount + 1) * INDEX_ENTRY_SIZE + 8 > MAX_FILE_SIZE) {
+            throw new IOException("Maximum AVI file size reached");
+        }
+
+        chunkHeader.clear();
+        putFourCC(chunkHeader, "00dc");
+        chunkHeader.putInt(size);
+        chunkHeader.flip();
+        if (data == null) {
+            writeFully(chunkHeader, position);
+        }
+        else if (size == paddedSize) {
+            writeFully(new ByteBuffer[]{chunkHeader, ByteBuffer.wrap(data)});
+        }
+        else {
+            writeFully(new ByteBuffer[]{chunkHeader, ByteBuffer.wrap(data), ByteBuffer.wrap(PADDING)});
+        }
+
+        // Offsets in idx1 are relative to the 'movi' fourcc
+        if (index.remaining() < INDEX_ENTRY_SIZE) {
+            ByteBuffer largerIndex = ByteBuffer.allocateDirect(index.capacity() * 2).order(ByteOrder.LITTLE_ENDIAN);
+            index.flip();
+            largerIndex.put(index);
+            index = largerIndex;
+        }
+        putFourCC(index, "00dc");
+        index.putInt(size > 0 ? AVIIF_KEYFRAME : 0);
+        index.putInt((int) (position - MOVI_FOURCC_POSITION));
+        index.putInt(size);
+
+        position += 8 + paddedSize;
+        frameCount++;
+        maxChunkSize = Math.max(maxChunkSize, size);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            final long moviSize = position - MOVI_FOURCC_POSITION;
+
+            // Write the index
+            final int indexSize = index.position();
+            chunkHeader.clear();
+            putFourCC(chunkHeader, "idx1");
+            chunkHeader.putInt(indexSize);
+            chunkHeader.flip();
+            index.flip();
+            writeFully(new ByteBuffer[]{chunkHeader, index});
+
+            // Patch the headers now that sizes are known
+            final ByteBuffer headers = createHeaders();
+            headers.putInt(4, (int) (position + 8 + indexSize - 8)); // RIFF size excludes its own header
+            headers.putInt(12 + 12 + 8 + 16, frameCount); // avih.dwTotalFrames
+            headers.putInt(12 + 12 + 8 + 28, maxChunkSize); // avih.dwSuggestedBufferSize
+            headers.putInt(12 + 12 + 64 + 12 + 8 + 32, frameCount); // strh.dwLength
+            headers.putInt(12 + 12 + 64 + 12 + 8 + 36, maxChunkSize); // strh.dwSuggestedBufferSize
+            headers.putInt(MOVI_FOURCC_POSITION - 4, (int) moviSize);
+            writeFully(headers, 0);
+        }
+        finally {
+            channel.close();
+        }
+    }
+
+    private ByteBuffer createHeaders() {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        putFourCC(buffer, "RIFF");
+        buffer.putInt(0); // File size - 8, patched on close
+        putFourCC(buffer, "AVI ");
+
+        putFourCC(buffer, "LIST");
+        buffer.putInt(4 + 64 + 12 + 64 + 48);
+        putFourCC(buffer, "hdrl");
+
+        // Main AVI header
+        putFourCC(buffer, "avih");
+        buffer.putInt(56);
+        buffer.putInt(1_000_000 / frameRate); // dwMicroSecPerFrame
+        buffer.putInt(0); // dwMaxBytesPerSec
+        buffer.putInt(0); // dwPaddingGranularity
+        buffer.putInt(AVIF_HASINDEX); // dwFlags
+        buffer.putInt(0); // dwTotalFrames, patched on close
+        buffer.putInt(0); // dwInitialFrames
+        buffer.putInt(1); // dwStreams
+        buffer.putInt(0); // dwSuggestedBufferSize, patched on close
+        buffer.putInt(width);
+        buffer.putInt(height);
+        buffer.put(new byte[16]); // dwReserved
+
+        putFourCC(buffer, "LIST");
+        buffer.putInt(4 + 64 + 48);
+        putFourCC(buffer, "strl");
+
+        // Stream header
+        putFourCC(buffer, "strh");
+        buffer.putInt(56);
+        putFourCC(buffer, "vids");
+        putFourCC(buffer, "MJPG");
+        buffer.putInt(0); // dwFlags
+        buffer.putShort((short) 0); // wPriority
+        buffer.putShort((short) 0); // wLanguage
+        buffer.putInt(0); // dwInitialFrames
+        buffer.putInt(1); // dwScale
+        buffer.putInt(frameRate); // dwRate
+        buffer.putInt(0); // dwStart
+        buffer.putInt(0); // dwLength, patched on close
+        buffer.putInt(0); // dwSuggestedBufferSize, patched on close
+        buffer.putInt(-1); // dwQuality
+        buffer.putInt(0); // dwSampleSize
+        buffer.putShort((short) 0); // rcFrame
+        buffer.putShort((short) 0);
+        buffer.putShort((short) width);
+        buffer.putShort((short) height);
+
+        // Stream format (BITMAPINFOHEADER)
+        putFourCC(buffer, "strf");
+        buffer.putInt(40);
+        buffer.putInt(40); // biSize
+        buffer.putInt(width);
+        buffer.putInt(height);
+        buffer.putShort((short) 1); // biPlanes
+        buffer.putShort((short) 24); // biBitCount
+        putFourCC(buffer, "MJPG"); // biCompression
+        buffer.putInt(width * height * 3); // biSizeImage
+        buffer.putInt(0); // biXPelsPerMeter
+        buffer.putInt(0); // biYPelsPerMeter
+        buffer.putInt(0); // biClrUsed
+        buffer.putInt(0); // biClrImportant
+
+        putFourCC(buffer, "LIST");
+        buffer.putInt(4); // movi size, patched on close
+        putFourCC(buffer, "movi");
+
+        buffer.flip();
+        return buffer;
+    }
+
+    private void writeFully(ByteBuffer buffer, long writePosition) throws IOException {
+        while (buffer.hasRemaining()) {
+            writePosition += channel.write(buffer, writePosition);
+        }
+    }
+
+    private void writeFully(ByteBuffer[] buffers) throws IOException {
+        channel.position(position);
+        while (buffers[buffers.length - 1].hasRemaining()) {
+            channel.write(buffers);
+        }
+    }
+
+    private static void putFourCC(ByteBuffer buffer, String fourCC) {
+        buffer.put(fourCC.getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,54 @@
+package info.ginj.video;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * A grabbed frame, on its way from the grab thread to the encoders
+ */
+public class Frame {
+    // Order in which frames entered the buffer, without gaps. Used to write encoded frames in the right order
+    private final long sequenceNumber;
+    // Position in the video timeline. Gaps correspond to frames that were dropped
+    private final int frameNumber;
+    private final long grabTimeNanos;
+    // Null for a duplicate frame
+    private final BufferedImage image;
+    // Bounding box of the parts that changed since the previous frame. Empty for a duplicate frame
+    private final Rectangle changedArea;
+
+    public Frame(long sequenceNumber, int frameNumber, long grabTimeNanos, BufferedImage image, Rectangle changedArea) {
+        this.sequenceNumber = sequenceNumber;
+        this.frameNumber = frameNumber;
+        this.grabTimeNanos = grabTimeNanos;
+        this.image = image;
+        this.changedArea = changedArea;
+    }
+
+    public long getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    public int getFrameNumber() {
+        return frameNumber;
+    }
+
+    public long getGrabTimeNanos() {
+        return grabTimeNanos;
+    }
+
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    public Rectangle getChangedArea() {
+        return changedArea;
+    }
+
+    /**
+     * @return true if this frame is identical to the previous one, in which case it has no image
+     */
+    public boolean isDuplicate() {
+        return changedArea.isEmpty();
+    }
+}
@@ -0,0 +1,107 @@
+package info.ginj.video;
+
+import info.ginj.util.Rasters;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * Detects which parts of the screen changed between two grabbed frames.
+ * Each frame is split in fixed-size tiles, and each tile is hashed directly from the int[] raster. Comparing the hashes
+ * with the ones of the previous frame gives the changed tiles, their bounding box, or the fact that the frame is
+ * identical to the previous one, without keeping the previous frame around.
+ * Not thread-safe: meant to be used by the grab thread only.
+ */
+public class FrameDiffer {
+    public static final int TILE_SIZE = 64;
+
+    private int[] previousHashes;
+    private int width;
+    private int height;
+    private int tileColumns;
+    private int lastChangedTileCount;
+
+    /**
+     * Compares the given frame with the previous one passed to this method
+     * @param image the new frame
+     * @return the bounding box of the tiles that changed, which is empty if nothing changed, and covers the whole frame
+     * for the first one
+     */
+    public Rectangle compare(BufferedImage image) {
+        image = Rasters.toIntData(image);
+        if (previousHashes == null || image.getWidth() != width || image.getHeight() != height) {
+            width = image.getWidth();
+            height = image.getHeight();
+            tileColumns = (width + TILE_SIZE - 1) / TILE_SIZE;
+            final int tileRows = (height + TILE_SIZE - 1) / TILE_SIZE;
+            previousHashes = new int[tileColumns * tileRows];
+            hashTiles(Rasters.getData(image), previousHashes);
+            lastChangedTileCount = previousHashes.length;
+            return new Rectangle(0, 0, width, height);
+        }
+
+        final int[] pixels = Rasters.getData(image);
+        int minColumn = Integer.MAX_VALUE, minRow = Integer.MAX_VALUE, maxColumn = -1, maxRow = -1;
+        int changedTileCount = 0;
+        for (int tileIndex = 0; tileIndex < previousHashes.length; tileIndex++) {
+            final int hash = hashTile(pixels, tileIndex);
+            if (hash != previousHashes[tileIndex]) {
+                previousHashes[tileIndex] = hash;
+                changedTileCount++;
+                final int column = tileIndex % tileColumns;
+                final int row = tileIndex / tileColumns;
+                minColumn = Math.min(minColumn, column);
+                maxColumn = Math.max(maxColumn, column);
+                minRow = Math.min(minRow, row);
+                maxRow = Math.max(maxRow, row);
+            }
+        }
+        lastChangedTileCount = changedTileCount;
+        if (changedTileCount == 0) {
+            return new Rectangle();
+        }
+        final int x = minColumn * TILE_SIZE;
+        final int y = minRow * TILE_SIZE;
+        return new Rectangle(x, y, Math.min((maxColumn + 1) * TILE_SIZE, width) - x, Math.min((maxRow + 1) * TILE_SIZE, height) - y);
+    }
+
+    /**
+     * Forgets the previous frame, so that the next one is considered entirely changed
+     */
+    public void reset() {
+        previousHashes = null;
+    }
+
+    /**
+     * @return the number of tiles that changed during the last comparison
+     */
+    public int getLastChangedTileCount() {
+        return lastChangedTileCount;
+    }
+
+    public int getTileCount() {
+        return previousHashes == null ? 0 : previousHashes.length;
+    }
+
+    private void hashTiles(int[] pixels, int[] hashes) {
+        for (int tileIndex = 0; tileIndex < hashes.length; tileIndex++) {
+            hashes[tileIndex] = hashTile(pixels, tileIndex);
+        }
+    }
+
+    // FNV-1a like hash of the pixels of a tile, one int at a time
+    private int hashTile(int[] pixels, int tileIndex) {
+        final int x1 = (tileIndex % tileColumns) * TILE_SIZE;
+        final int y1 = (tileIndex / tileColumns) * TILE_SIZE;
+        final int x2 = Math.min(x1 + TILE_SIZE, width);
+        final int y2 = Math.min(y1 + TILE_SIZE, height);
+        int hash = 0x811C9DC5;
+        for (int y = y1; y < y2; y++) {
+            final int rowEnd = y * width + x2;
+            for (int index = y * width + x1; index < rowEnd; index++) {
+                hash = (hash ^ pixels[index]) * 0x01000193;
+            }
+        }
+        return hash;
+    }
+}
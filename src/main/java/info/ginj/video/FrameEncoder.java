@@ -0,0 +1,12 @@
+package info.ginj.video;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * Compresses frames independently of each other.
+ * Implementations must be thread-safe, as several encoder threads call encode() in parallel.
+ */
+public interface FrameEncoder {
+    byte[] encode(BufferedImage image) throws IOException;
+}
@@ -0,0 +1,71 @@
+package info.ginj.video;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free ring buffer with a single producer (the grab thread) and multiple consumers (the encoders).
+ * The producer never blocks: when the buffer is full, offer() returns false and the frame should be dropped.
+ */
+public class FrameRingBuffer {
+    private final AtomicReferenceArray<Frame> slots;
+    private final int mask;
+    // Next position to read. Advanced by consumers, with a CAS
+    private final AtomicLong head = new AtomicLong();
+    // Next position to write. Only advanced by the producer
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * @param minCapacity the minimum number of frames the buffer can hold. Rounded up to a power of 2
+     */
+    public FrameRingBuffer(int minCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(2, minCapacity) - 1) << 1;
+        slots = new AtomicReferenceArray<>(capacity);
+        mask = capacity - 1;
+    }
+
+    public int getCapacity() {
+        return slots.length();
+    }
+
+    /**
+     * Adds a frame to the buffer. Must only be called by the producer thread.
+     * @return true if the frame was added, false if the buffer was full
+     */
+    public boolean offer(Frame frame) {
+        final long position = tail.get();
+        final int index = (int) (position & mask);
+        // The slot may still be held by a consumer that claimed it but did not take the frame out yet
+        if (position - head.get() >= slots.length() || slots.get(index) != null) {
+            return false;
+        }
+        slots.set(index, frame);
+        tail.set(position + 1);
+        return true;
+    }
+
+    /**
+     * Takes the oldest frame out of the buffer. Can be called by any number of consumer threads.
+     * @return the oldest frame, or null if the buffer is empty
+     */
+    public Frame poll() {
+        while (true) {
+            final long position = head.get();
+            if (position >= tail.get()) {
+                return null;
+            }
+            if (head.compareAndSet(position, position + 1)) {
+                // The producer wrote the slot before advancing tail, and won't overwrite it until it's cleared
+                return slots.getAndSet((int) (position & mask), null);
+            }
+        }
+    }
+
+    public int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    public boolean isEmpty() {
+        return head.get() >= tail.get();
+    }
+}
@@ -0,0 +1,95 @@
+package info.ginj.video;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Writes a looping animated GIF using the ImageIO GIF writer.
+ * Each frame is reduced to its own 256-color palette by the PaletteQuantizer, and only contains the area that
+ * changed, drawn over the previous frame.
+ */
+public class GifAnimationWriter implements AnimationWriter {
+    private static final String METADATA_FORMAT = "javax_imageio_gif_image_1.0";
+
+    private final ImageOutputStream outputStream;
+    private final ImageWriter writer;
+    private final PaletteQuantizer quantizer = new PaletteQuantizer(256);
+    private boolean firstFrame = true;
+
+    public GifAnimationWriter(File file) throws IOException {
+        writer = ImageIO.getImageWritersByFormatName("gif").next();
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Could not overwrite " + file.getAbsolutePath());
+        }
+        outputStream = ImageIO.createImageOutputStream(file);
+        writer.setOutput(outputStream);
+        writer.prepareWriteSequence(null);
+    }
+
+    @Override
+    public void writeFrame(BufferedImage image, Point position, int durationMillis) throws IOException {
+        final BufferedImage indexedImage = quantizer.quantize(image);
+        final ImageWriteParam param = writer.getDefaultWriteParam();
+        final IIOMetadata metadata = writer.getDefaultImageMetadata(new ImageTypeSpecifier(indexedImage), param);
+        final IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(METADATA_FORMAT);
+
+        final IIOMetadataNode descriptor = getChild(root, "ImageDescriptor");
+        descriptor.setAttribute("imageLeftPosition", String.valueOf(position.x));
+        descriptor.setAttribute("imageTopPosition", String.valueOf(position.y));
+
+        final IIOMetadataNode graphicControl = getChild(root, "GraphicControlExtension");
+        // Leave the frame in place, the next one is drawn over it
+        graphicControl.setAttribute("disposalMethod", "doNotDispose");
+        graphicControl.setAttribute("userInputFlag", "FALSE");
+        graphicControl.setAttribute("transparentColorFlag", "FALSE");
+        // GIF delays are in hundredths of a second
+        graphicControl.setAttribute("delayTime", String.valueOf(Math.max(1, (durationMillis + 5) / 10)));
+        graphicControl.setAttribute("transparentColorIndex", "0");
+
+        if (firstFrame) {
+            // Loop forever
+            final IIOMetadataNode applicationExtensions = getChild(root, "ApplicationExtensions");
+            final IIOMetadataNode loopExtension = new IIOMetadataNode("ApplicationExtension");
+            loopExtension.setAttribute("applicationID", "NETSCAPE");
+            loopExtension.setAttribute("authenticationCode", "2.0");
+            loopExtension.setUserObject(new byte[]{1, 0, 0});
+            applicationExtensions.appendChild(loopExtension);
+            firstFrame = false;
+        }
+
+        metadata.setFromTree(METADATA_FORMAT, root);
+        writer.writeToSequence(new IIOImage(indexedImage, null, metadata), param);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            writer.endWriteSequence();
+        }
+        finally {
+            writer.dispose();
+            outputStream.close();
+        }
+    }
+
+    private static IIOMetadataNode getChild(IIOMetadataNode root, String name) {
+        for (int i = 0; i < root.getLength(); i++) {
+            if (root.item(i).getNodeName().equalsIgnoreCase(name)) {
+                return (IIOMetadataNode) root.item(i);
+            }
+        }
+        IIOMetadataNode node = new IIOMetadataNode(name);
+        root.appendChild(node);
+        return node;
+    }
+}
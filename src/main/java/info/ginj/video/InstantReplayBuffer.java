@@ -0,0 +1,318 @@
+package info.ginj.video;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Keeps the last seconds of the screen in memory, so that they can be saved after something interesting happened.
+ * A low-priority thread grabs the area at a low frame rate, and stores each frame as JPEG in a fixed-size circular
+ * buffer allocated outside the Java heap, so memory use never exceeds the configured cap: oldest frames are simply
+ * overwritten. Frames identical to the previous one are detected by a FrameDiffer and stored as markers without data,
+ * so an idle screen costs almost nothing.
+ * Dumping writes the stored JPEG frames as they are to an AVI file, without decoding them.
+ */
+public class InstantReplayBuffer {
+    // Largest buffer that can be allocated, as frames are located by int offsets like in any ByteBuffer
+    public static final long MAX_BUFFER_BYTES = Integer.MAX_VALUE;
+    // Part of the free direct memory the buffer may take, the rest being left to other users (AWT, NIO...)
+    private static final double MAX_DIRECT_MEMORY_RATIO = 0.75;
+    // Marks a frame identical to the previous one
+    private static final int NO_DATA = -1;
+
+    private final Rectangle area;
+    private final int frameRate;
+    private final long maxDurationNanos;
+    private final FrameEncoder encoder;
+    private final ByteBuffer data;
+
+    // Index of stored frames, as a ring of parallel arrays. Guarded by "this"
+    private final long[] frameGrabNanos;
+    private final int[] frameOffsets;
+    private final int[] frameLengths;
+    private int firstFrame = 0;
+    private int frameCount = 0;
+    private int writePosition = 0;
+    private int usedBytes = 0;
+
+    private Thread grabThread;
+    private volatile boolean running = false;
+    private volatile long startNanos;
+    private volatile long grabbedFrames;
+    private volatile long duplicateFrames;
+    private volatile long droppedFrames;
+    private volatile IOException failure;
+
+    /**
+     * @param area the area to grab, in virtual desktop coordinates
+     * @param frameRate the number of frames grabbed per second
+     * @param maxDurationSeconds how long frames are kept
+     * @param maxBytes the size of the frame buffer, at most MAX_BUFFER_BYTES. It is reduced if there is not enough free
+     *                 direct memory. Frames are dropped before maxDurationSeconds if it is full
+     * @param encoder the encoder to compress frames with. It must produce JPEG data, to be stored as is in the video
+     * @throws OutOfMemoryError if the buffer could not be allocated anyway
+     */
+    public InstantReplayBuffer(Rectangle area, int frameRate, int maxDurationSeconds, long maxBytes, FrameEncoder encoder) {
+        this.area = area;
+        this.frameRate = frameRate;
+        this.maxDurationNanos = maxDurationSeconds * 1_000_000_000L;
+        this.encoder = encoder;
+        final long freeDirectMemory = getFreeDirectMemory();
+        long bufferBytes = Math.min(maxBytes, MAX_BUFFER_BYTES);
+        if (bufferBytes > freeDirectMemory * MAX_DIRECT_MEMORY_RATIO) {
+            bufferBytes = Math.max(1, (long) (freeDirectMemory * MAX_DIRECT_MEMORY_RATIO));
+            System.err.println("Not enough direct memory for an instant replay buffer of " + maxBytes / 1048576 + " MB, using " + bufferBytes / 1048576 + " MB");
+        }
+        data = ByteBuffer.allocateDirect((int) bufferBytes);
+        final int maxFrames = frameRate * maxDurationSeconds + 1;
+        frameGrabNanos = new long[maxFrames];
+        frameOffsets = new int[maxFrames];
+        frameLengths = new int[maxFrames];
+    }
+
+    /**
+     * @return the direct memory that can still be allocated by ByteBuffer.allocateDirect(), in bytes
+     */
+    private static long getFreeDirectMemory() {
+        // Unless set by -XX:MaxDirectMemorySize, the limit is the maximum heap size
+        long maxDirectMemory = Runtime.getRuntime().maxMemory();
+        try {
+            final HotSpotDiagnosticMXBean diagnosticBean = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+            final long configuredMaxDirectMemory = Long.parseLong(diagnosticBean.getVMOption("MaxDirectMemorySize").getValue());
+            if (configuredMaxDirectMemory > 0) {
+                maxDirectMemory = configuredMaxDirectMemory;
+            }
+        }
+        catch (RuntimeException e) {
+            // Not a HotSpot VM, keep the default
+        }
+        long usedDirectMemory = 0;
+        for (BufferPoolMXBean bufferPool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if ("direct".equals(bufferPool.getName())) {
+                usedDirectMemory = bufferPool.getMemoryUsed();
+            }
+        }
+        return Math.max(0, maxDirectMemory - usedDirectMemory);
+    }
+
+    public Rectangle getArea() {
+        return area;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public void start() throws AWTException {
+        final Robot robot = new Robot();
+        running = true;
+        startNanos = System.nanoTime();
+        grabThread = new Thread(() -> grabLoop(robot), "Ginj instant replay");
+        grabThread.setDaemon(true);
+        // Don't compete with what the user is doing
+        grabThread.setPriority(Thread.MIN_PRIORITY);
+        grabThread.start();
+    }
+
+    public void stop() {
+        running = false;
+        try {
+            grabThread.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void grabLoop(Robot robot) {
+        final FrameDiffer differ = new FrameDiffer();
+        final long frameIntervalNanos = 1_000_000_000L / frameRate;
+        long scheduledNanos = System.nanoTime();
+        try {
+            while (running) {
+                long waitNanos;
+                while ((waitNanos = scheduledNanos - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(waitNanos);
+                }
+                final long grabNanos = System.nanoTime();
+                final BufferedImage image = robot.createScreenCapture(area);
+                grabbedFrames++;
+                if (differ.compare(image).isEmpty()) {
+                    duplicateFrames++;
+                    store(grabNanos, null);
+                }
+                else if (!store(grabNanos, encoder.encode(image))) {
+                    droppedFrames++;
+                    // The next frame must not be considered a duplicate of this one
+                    differ.reset();
+                }
+                // Skip missed slots instead of trying to catch up
+                scheduledNanos = Math.max(scheduledNanos + frameIntervalNanos, System.nanoTime());
+            }
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+            failure = e;
+            running = false;
+        }
+    }
+
+    /**
+     * Stores a frame, overwriting the oldest ones as needed
+     * @param grabNanos the time at which the frame was grabbed
+     * @param encodedFrame the frame, or null if it is identical to the previous one
+     * @return false if the frame could not be stored because it is larger than the whole buffer
+     */
+    private synchronized boolean store(long grabNanos, byte[] encodedFrame) {
+        // Forget frames that are too old
+        while (frameCount > 0 && grabNanos - frameGrabNanos[firstFrame] > maxDurationNanos) {
+            evictFirstFrame();
+        }
+        if (frameCount == frameGrabNanos.length) {
+            evictFirstFrame();
+        }
+
+        int offset = NO_DATA;
+        int length = 0;
+        if (encodedFrame != null) {
+            length = encodedFrame.length;
+            if (length > data.capacity()) {
+                return false;
+            }
+            if (writePosition + length > data.capacity()) {
+                // Not enough room at the end of the buffer: wrap around, forgetting the frames stored there
+                while (frameCount > 0 && frameOffsets[firstFrame] >= writePosition) {
+                    evictFirstFrame();
+                }
+                writePosition = 0;
+            }
+            // Forget the frames that are about to be overwritten
+            while (frameCount > 0 && frameOffsets[firstFrame] < writePosition + length
+                    && frameOffsets[firstFrame] + frameLengths[firstFrame] > writePosition) {
+                evictFirstFrame();
+            }
+            offset = writePosition;
+            data.duplicate().position(offset).put(encodedFrame);
+            writePosition += length;
+            usedBytes += length;
+        }
+        else if (frameCount == 0) {
+            // Nothing to repeat
+            return true;
+        }
+
+        final int index = (firstFrame + frameCount) % frameGrabNanos.length;
+        frameGrabNanos[index] = grabNanos;
+        frameOffsets[index] = offset;
+        frameLengths[index] = length;
+        frameCount++;
+        return true;
+    }
+
+    private void evictFirstFrame() {
+        usedBytes -= frameLengths[firstFrame];
+        firstFrame = (firstFrame + 1) % frameGrabNanos.length;
+        frameCount--;
+        // A repeated frame is useless once the frame it repeats is gone
+        while (frameCount > 0 && frameOffsets[firstFrame] == NO_DATA) {
+            firstFrame = (firstFrame + 1) % frameGrabNanos.length;
+            frameCount--;
+        }
+        if (frameCount == 0) {
+            writePosition = 0;
+        }
+    }
+
+    /**
+     * Writes the last seconds of the buffer to a video file. Recording goes on meanwhile.
+     * @param file the AVI file to write
+     * @param seconds how many seconds to save, at most
+     * @return the first frame of the video, to be used as poster
+     * @throws IOException if nothing was recorded yet, or the file could not be written
+     */
+    public BufferedImage dump(File file, int seconds) throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+        byte[] posterData;
+        // Frames could be overwritten while being written, so hold the lock. Grabbing will wait for it if needed
+        synchronized (this) {
+            if (frameCount == 0) {
+                throw new IOException("Nothing was recorded yet");
+            }
+            final long startTimeNanos = System.nanoTime() - seconds * 1_000_000_000L;
+            // Find the first frame to save
+            int first = 0;
+            while (first < frameCount - 1 && frameGrabNanos[getIndex(first)] < startTimeNanos) {
+                first++;
+            }
+            // If it repeats a previous frame, start with that one
+            int firstWithData = first;
+            while (frameOffsets[getIndex(firstWithData)] == NO_DATA) {
+                firstWithData--;
+            }
+            final long firstGrabNanos = frameGrabNanos[getIndex(first)];
+            posterData = getFrameData(getIndex(firstWithData));
+
+            try (AviMjpegWriter writer = new AviMjpegWriter(file, area.width, area.height, frameRate, frameCount - first)) {
+                writer.writeFrame(0, posterData);
+                int frameNumber = 0;
+                for (int i = first + 1; i < frameCount; i++) {
+                    final int index = getIndex(i);
+                    // Place frames according to their actual grab time, keeping at least one frame between them
+                    frameNumber = Math.max(frameNumber + 1, (int) Math.round((frameGrabNanos[index] - firstGrabNanos) * frameRate / 1e9));
+                    writer.writeFrame(frameNumber, frameOffsets[index] == NO_DATA ? null : getFrameData(index));
+                }
+            }
+        }
+        final BufferedImage poster = ImageIO.read(new ByteArrayInputStream(posterData));
+        if (poster == null) {
+            throw new IOException("Unrecognized frame in replay buffer");
+        }
+        return poster;
+    }
+
+    private int getIndex(int frameIndex) {
+        return (firstFrame + frameIndex) % frameGrabNanos.length;
+    }
+
+    private byte[] getFrameData(int index) {
+        byte[] frameData = new byte[frameLengths[index]];
+        data.duplicate().position(frameOffsets[index]).get(frameData);
+        return frameData;
+    }
+
+    /**
+     * @return the measured overhead of the buffer: CPU used by the grab thread and memory used by frames
+     */
+    public String getSummary() {
+        final long elapsedNanos = Math.max(1, System.nanoTime() - startNanos);
+        long cpuNanos = -1;
+        final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (grabThread != null && threadMXBean.isThreadCpuTimeSupported()) {
+            cpuNanos = threadMXBean.getThreadCpuTime(grabThread.getId());
+        }
+        final int storedFrames;
+        final int storedBytes;
+        final long storedNanos;
+        synchronized (this) {
+            storedFrames = frameCount;
+            storedBytes = usedBytes;
+            storedNanos = frameCount == 0 ? 0 : frameGrabNanos[getIndex(frameCount - 1)] - frameGrabNanos[firstFrame];
+        }
+        return String.format("%ds in %d frames, %.1f/%d MB, %s CPU, %d grabbed, %d duplicate, %d dropped",
+                storedNanos / 1_000_000_000L, storedFrames, storedBytes / 1048576.0, data.capacity() / 1048576,
+                cpuNanos < 0 ? "?" : String.format("%.1f%%", 100.0 * cpuNanos / elapsedNanos),
+                grabbedFrames, duplicateFrames, droppedFrames);
+    }
+}
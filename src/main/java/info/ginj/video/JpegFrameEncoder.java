@@ -0,0 +1,44 @@
+package info.ginj.video;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Encodes each frame as a JPEG image, using the JPEG writer bundled with the JRE.
+ * Each thread has its own ImageWriter, as those are not thread-safe.
+ */
+public class JpegFrameEncoder implements FrameEncoder {
+    private final float quality;
+    private final ThreadLocal<ImageWriter> writers = ThreadLocal.withInitial(() -> ImageIO.getImageWritersByFormatName("jpeg").next());
+
+    /**
+     * @param quality the JPEG quality, between 0 and 1
+     */
+    public JpegFrameEncoder(float quality) {
+        this.quality = quality;
+    }
+
+    @Override
+    public byte[] encode(BufferedImage image) throws IOException {
+        final ImageWriter writer = writers.get();
+        final ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(quality);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(image.getWidth() * image.getHeight() / 4);
+        try (MemoryCacheImageOutputStream output = new MemoryCacheImageOutputStream(bytes)) {
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), param);
+        }
+        finally {
+            writer.reset();
+        }
+        return bytes.toByteArray();
+    }
+}
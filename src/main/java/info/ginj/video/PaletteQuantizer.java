@@ -0,0 +1,216 @@
+package info.ginj.video;
+
+import info.ginj.util.Rasters;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Reduces an image to an 8-bit palette using the median-cut algorithm, for formats like GIF.
+ * The colour histogram (5 bits per component) and the final pixel mapping are computed in parallel over bands of
+ * rows of the int[] raster; only the median cut itself, which works on at most 32768 histogram entries, is serial.
+ */
+public class PaletteQuantizer {
+    private static final int HISTOGRAM_SIZE = 1 << 15;
+    private static final int BAND_HEIGHT = 64;
+
+    private final int maxColors;
+
+    /**
+     * @param maxColors the maximum size of the palette (at most 256)
+     */
+    public PaletteQuantizer(int maxColors) {
+        this.maxColors = Math.min(256, maxColors);
+    }
+
+    /**
+     * @param image the image to reduce
+     * @return a TYPE_BYTE_INDEXED image with its own optimized palette
+     */
+    public BufferedImage quantize(BufferedImage image) {
+        image = Rasters.toIntData(image);
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final int[] pixels = Rasters.getData(image);
+
+        // Compute the histogram, in parallel
+        final int[] histogram = new int[HISTOGRAM_SIZE];
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int bandStart = 0; bandStart < height; bandStart += BAND_HEIGHT) {
+            final int y1 = bandStart;
+            final int y2 = Math.min(bandStart + BAND_HEIGHT, height);
+            tasks.add(ForkJoinTask.adapt(() -> {
+                int[] bandHistogram = new int[HISTOGRAM_SIZE];
+                for (int index = y1 * width; index < y2 * width; index++) {
+                    bandHistogram[toHistogramIndex(pixels[index])]++;
+                }
+                synchronized (histogram) {
+                    for (int i = 0; i < HISTOGRAM_SIZE; i++) {
+                        histogram[i] += bandHistogram[i];
+                    }
+                }
+            }));
+        }
+        ForkJoinTask.invokeAll(tasks);
+
+        // Split colors in boxes
+        final int[] colors = collectColors(histogram);
+        final List<Box> boxes = medianCut(colors, histogram);
+
+        // Build the palette, and map each used histogram entry to its box
+        final int paletteSize = boxes.size();
+        byte[] reds = new byte[paletteSize];
+        byte[] greens = new byte[paletteSize];
+        byte[] blues = new byte[paletteSize];
+        final byte[] paletteIndices = new byte[HISTOGRAM_SIZE];
+        for (int boxIndex = 0; boxIndex < paletteSize; boxIndex++) {
+            final Box box = boxes.get(boxIndex);
+            long red = 0, green = 0, blue = 0, count = 0;
+            for (int i = box.start; i < box.end; i++) {
+                final int color = colors[i];
+                final int weight = histogram[color];
+                red += (long) expand(color >> 10) * weight;
+                green += (long) expand((color >> 5) & 0x1F) * weight;
+                blue += (long) expand(color & 0x1F) * weight;
+                count += weight;
+                paletteIndices[color] = (byte) boxIndex;
+            }
+            reds[boxIndex] = (byte) ((red + count / 2) / count);
+            greens[boxIndex] = (byte) ((green + count / 2) / count);
+            blues[boxIndex] = (byte) ((blue + count / 2) / count);
+        }
+
+        // Map pixels to palette entries, in parallel
+        final byte[] indexedPixels = new byte[width * height];
+        tasks.clear();
+        for (int bandStart = 0; bandStart < height; bandStart += BAND_HEIGHT) {
+            final int y1 = bandStart;
+            final int y2 = Math.min(bandStart + BAND_HEIGHT, height);
+            tasks.add(ForkJoinTask.adapt(() -> {
+                for (int index = y1 * width; index < y2 * width; index++) {
+                    indexedPixels[index] = paletteIndices[toHistogramIndex(pixels[index])];
+                }
+            }));
+        }
+        ForkJoinTask.invokeAll(tasks);
+
+        final IndexColorModel colorModel = new IndexColorModel(8, paletteSize, reds, greens, blues);
+        BufferedImage indexedImage = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, colorModel);
+        indexedImage.getRaster().setDataElements(0, 0, width, height, indexedPixels);
+        return indexedImage;
+    }
+
+    private static int[] collectColors(int[] histogram) {
+        int colorCount = 0;
+        for (int count : histogram) {
+            if (count > 0) colorCount++;
+        }
+        int[] colors = new int[colorCount];
+        int i = 0;
+        for (int color = 0; color < HISTOGRAM_SIZE; color++) {
+            if (histogram[color] > 0) colors[i++] = color;
+        }
+        return colors;
+    }
+
+    /**
+     * Repeatedly splits the most populated box at the weighted median of its widest component,
+     * until there are maxColors boxes or no box can be split anymore
+     */
+    private List<Box> medianCut(int[] colors, int[] histogram) {
+        List<Box> boxes = new ArrayList<>();
+        boxes.add(new Box(colors, histogram, 0, colors.length));
+        while (boxes.size() < maxColors) {
+            Box boxToSplit = null;
+            for (Box box : boxes) {
+                if (box.end - box.start > 1 && (boxToSplit == null || box.pixelCount > boxToSplit.pixelCount)) {
+                    boxToSplit = box;
+                }
+            }
+            if (boxToSplit == null) {
+                // Each box has a single color
+                break;
+            }
+            boxes.remove(boxToSplit);
+            final int shift = boxToSplit.getWidestComponentShift();
+            sortByComponent(colors, boxToSplit.start, boxToSplit.end, shift);
+            // Find the weighted median
+            long half = boxToSplit.pixelCount / 2;
+            long accumulated = 0;
+            // Both halves must keep at least one color
+            int splitIndex = boxToSplit.end - 1;
+            for (int i = boxToSplit.start; i < boxToSplit.end - 1; i++) {
+                accumulated += histogram[colors[i]];
+                if (accumulated >= half) {
+                    splitIndex = i + 1;
+                    break;
+                }
+            }
+            boxes.add(new Box(colors, histogram, boxToSplit.start, splitIndex));
+            boxes.add(new Box(colors, histogram, splitIndex, boxToSplit.end));
+        }
+        return boxes;
+    }
+
+    // Counting sort on one 5-bit component
+    private static void sortByComponent(int[] colors, int start, int end, int shift) {
+        int[] counts = new int[33];
+        for (int i = start; i < end; i++) {
+            counts[((colors[i] >> shift) & 0x1F) + 1]++;
+        }
+        for (int i = 1; i < counts.length; i++) {
+            counts[i] += counts[i - 1];
+        }
+        int[] sorted = new int[end - start];
+        for (int i = start; i < end; i++) {
+            sorted[counts[(colors[i] >> shift) & 0x1F]++] = colors[i];
+        }
+        System.arraycopy(sorted, 0, colors, start, sorted.length);
+    }
+
+    private static int toHistogramIndex(int rgb) {
+        return ((rgb >> 9) & 0x7C00) | ((rgb >> 6) & 0x03E0) | ((rgb >> 3) & 0x001F);
+    }
+
+    // Converts a 5-bit component back to 8 bits, so that 0 and 31 give pure black and white
+    private static int expand(int component) {
+        return (component << 3) | (component >> 2);
+    }
+
+    private static class Box {
+        final int start;
+        final int end;
+        final long pixelCount;
+        final int[] minimums = {31, 31, 31};
+        final int[] maximums = {0, 0, 0};
+
+        Box(int[] colors, int[] histogram, int start, int end) {
+            this.start = start;
+            this.end = end;
+            long count = 0;
+            for (int i = start; i < end; i++) {
+                final int color = colors[i];
+                count += histogram[color];
+                for (int component = 0; component < 3; component++) {
+                    final int value = (color >> (10 - 5 * component)) & 0x1F;
+                    minimums[component] = Math.min(minimums[component], value);
+                    maximums[component] = Math.max(maximums[component], value);
+                }
+            }
+            pixelCount = count;
+        }
+
+        int getWidestComponentShift() {
+            int widest = 0;
+            for (int component = 1; component < 3; component++) {
+                if (maximums[component] - minimums[component] > maximums[widest] - minimums[widest]) {
+                    widest = component;
+                }
+            }
+            return 10 - 5 * widest;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package info.ginj.video;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records an area of the screen, without any external tool.
+ * A dedicated grab thread captures the area at the target frame rate and pushes frames to a bounded ring buffer,
+ * which is drained by encoder threads. Grabbing never waits for encoding: when encoders lag behind and the buffer is
+ * full, frames are dropped (and counted as such). Encoded frames are then handed to the VideoWriter in their original
+ * order.
+ * Before being buffered, each frame is compared with the previous one by a FrameDiffer. As screen recordings are mostly
+ * static, most frames are identical to the previous one: they are passed as "duplicate" markers without image, and
+ * are never encoded.
+ */
+public class RecordingEngine {
+    // Frame rates supported by the grab loop and by the video writers
+    public static final int MIN_FRAME_RATE = 1;
+    public static final int MAX_FRAME_RATE = 60;
+
+    // How long an idle encoder waits before polling the buffer again
+    private static final long ENCODER_IDLE_WAIT_NANOS = 2_000_000;
+
+    private final Rectangle area;
+    private final int frameRate;
+    private final FrameEncoder encoder;
+    private final VideoWriter writer;
+    private final FrameRingBuffer ringBuffer;
+    private final RecordingStats stats = new RecordingStats();
+    private final List<Thread> encoderThreads = new ArrayList<>();
+    private Thread grabThread;
+
+    private volatile boolean recording = false;
+    private volatile boolean grabFinished = false;
+    private volatile BufferedImage posterFrame;
+    private volatile IOException failure;
+
+    // Frames encoded ahead of their turn, by sequence number. Guarded by itself
+    private final Map<Long, EncodedFrame> pendingFrames = new HashMap<>();
+    private long nextSequenceToWrite = 0;
+
+    /**
+     * @param area the area to record, in virtual desktop coordinates
+     * @param frameRate the target number of frames per second
+     * @param encoder the encoder to compress frames with
+     * @param writer the writer to store encoded frames
+     */
+    public RecordingEngine(Rectangle area, int frameRate, FrameEncoder encoder, VideoWriter writer) {
+        this.area = area;
+        this.frameRate = frameRate;
+        this.encoder = encoder;
+        this.writer = writer;
+        final int encoderThreadCount = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        for (int i = 0; i < encoderThreadCount; i++) {
+            encoderThreads.add(createThread(this::encodeLoop, "Ginj encoder " + (i + 1)));
+        }
+        // Two frames per encoder is enough to absorb spikes. More would just waste memory
+        ringBuffer = new FrameRingBuffer(Math.max(4, 2 * encoderThreadCount));
+    }
+
+    public RecordingStats getStats() {
+        return stats;
+    }
+
+    /**
+     * @return the first frame of the recording, or null if none was grabbed yet
+     */
+    public BufferedImage getPosterFrame() {
+        return posterFrame;
+    }
+
+    public boolean isRecording() {
+        return recording;
+    }
+
+    /**
+     * @return the number of frames waiting to be encoded
+     */
+    public int getBufferedFrames() {
+        return ringBuffer.size();
+    }
+
+    public void start() throws AWTException {
+        final Robot robot = new Robot();
+        recording = true;
+        grabThread = createThread(() -> grabLoop(robot), "Ginj frame grabber");
+        grabThread.setPriority(Thread.MAX_PRIORITY);
+        grabThread.start();
+        encoderThreads.forEach(Thread::start);
+    }
+
+    /**
+     * Stops grabbing, waits for all grabbed frames to be encoded and closes the writer.
+     * @throws IOException if encoding or writing failed at some point during the recording
+     */
+    public void stop() throws IOException {
+        recording = false;
+        try {
+            grabThread.join();
+            for (Thread encoderThread : encoderThreads) {
+                encoderThread.join();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer.close();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void grabLoop(Robot robot) {
+        final FrameDiffer differ = new FrameDiffer();
+        final long frameIntervalNanos = 1_000_000_000L / frameRate;
+        final long startNanos = System.nanoTime();
+        long sequenceNumber = 0;
+        int frameNumber = 0;
+        try {
+            while (recording) {
+                final long scheduledNanos = startNanos + frameNumber * frameIntervalNanos;
+                long waitNanos;
+                while ((waitNanos = scheduledNanos - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(waitNanos);
+                }
+                final long grabNanos = System.nanoTime();
+                final BufferedImage image = robot.createScreenCapture(area);
+                stats.addGrab(grabNanos - scheduledNanos);
+                if (posterFrame == null) {
+                    posterFrame = image;
+                }
+                final Rectangle changedArea = differ.compare(image);
+                stats.addDiff(differ.getLastChangedTileCount(), differ.getTileCount());
+
+                final Frame frame = new Frame(sequenceNumber, frameNumber, grabNanos, changedArea.isEmpty() ? null : image, changedArea);
+                if (ringBuffer.offer(frame)) {
+                    sequenceNumber++;
+                }
+                else {
+                    // Encoders are late
+                    stats.addDrops(1);
+                    // The next frame must not be considered a duplicate of this one, which won't be in the video
+                    differ.reset();
+                }
+
+                // If the grab took longer than the frame interval, skip the slots that were missed
+                final int currentSlot = (int) ((System.nanoTime() - startNanos) / frameIntervalNanos);
+                if (currentSlot > frameNumber + 1) {
+                    stats.addDrops(currentSlot - frameNumber - 1);
+                    frameNumber = currentSlot;
+                }
+                else {
+                    frameNumber++;
+                }
+            }
+        }
+        catch (RuntimeException e) {
+            // Without this, the video would silently end here and be reported as complete
+            fail(new IOException("Could not grab frame " + frameNumber, e));
+        }
+        finally {
+            grabFinished = true;
+        }
+    }
+
+    private void encodeLoop() {
+        while (true) {
+            final Frame frame = ringBuffer.poll();
+            if (frame == null) {
+                if (grabFinished && ringBuffer.isEmpty()) {
+                    return;
+                }
+                LockSupport.parkNanos(ENCODER_IDLE_WAIT_NANOS);
+                continue;
+            }
+            try {
+                if (frame.isDuplicate()) {
+                    writeInOrder(frame, null);
+                }
+                else {
+                    final byte[] encodedFrame = encoder.encode(frame.getImage());
+                    stats.addEncode(System.nanoTime() - frame.getGrabTimeNanos(), encodedFrame.length);
+                    writeInOrder(frame, encodedFrame);
+                }
+            }
+            catch (IOException e) {
+                fail(e);
+                return;
+            }
+            catch (RuntimeException | OutOfMemoryError e) {
+                // Without this, the frame would never be written, and all later ones would wait for it forever
+                fail(new IOException("Could not encode frame " + frame.getFrameNumber(), e));
+                return;
+            }
+        }
+    }
+
+    /**
+     * Stops the recording after an error, which is reported by stop(). Frames waiting to be written are released
+     */
+    private void fail(IOException e) {
+        e.printStackTrace();
+        if (failure == null) {
+            failure = e;
+        }
+        recording = false;
+        synchronized (pendingFrames) {
+            pendingFrames.clear();
+        }
+    }
+
+    /**
+     * Encoders finish in any order, so frames are kept aside until all previous ones are written
+     */
+    private void writeInOrder(Frame frame, byte[] encodedFrame) throws IOException {
+        synchronized (pendingFrames) {
+            if (failure != null) {
+                // The video is incomplete anyway
+                return;
+            }
+            pendingFrames.put(frame.getSequenceNumber(), new EncodedFrame(frame.getFrameNumber(), encodedFrame));
+            EncodedFrame next;
+            while ((next = pendingFrames.remove(nextSequenceToWrite)) != null) {
+                writer.writeFrame(next.frameNumber, next.data);
+                nextSequenceToWrite++;
+            }
+        }
+    }
+
+    private static class EncodedFrame {
+        final int frameNumber;
+        final byte[] data;
+
+        EncodedFrame(int frameNumber, byte[] data) {
+            this.frameNumber = frameNumber;
+            this.data = data;
+        }
+    }
+
+    private static Thread createThread(Runnable runnable, String name) {
+        final Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+}
@@ -0,0 +1,115 @@
+package info.ginj.video;
+
+import info.ginj.util.Misc;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live statistics of a recording. Updated concurrently by the grab and encoder threads, read by the UI.
+ */
+public class RecordingStats {
+    private final LongAdder grabbedFrames = new LongAdder();
+    private final LongAdder droppedFrames = new LongAdder();
+    private final LongAdder duplicateFrames = new LongAdder();
+    private final LongAdder changedTiles = new LongAdder();
+    private final LongAdder totalTiles = new LongAdder();
+    private final LongAdder encodedFrames = new LongAdder();
+    private final LongAdder encodedBytes = new LongAdder();
+    // Difference between the scheduled and actual time of each grab
+    private final LongAdder totalJitterNanos = new LongAdder();
+    private final AtomicLong maxJitterNanos = new AtomicLong();
+    // Time between the grab of a frame and the end of its encoding
+    private final LongAdder totalEncodeLatencyNanos = new LongAdder();
+    private final AtomicLong maxEncodeLatencyNanos = new AtomicLong();
+
+    void addGrab(long jitterNanos) {
+        grabbedFrames.increment();
+        totalJitterNanos.add(Math.abs(jitterNanos));
+        maxJitterNanos.accumulateAndGet(Math.abs(jitterNanos), Math::max);
+    }
+
+    void addDiff(int changedTileCount, int tileCount) {
+        if (changedTileCount == 0) {
+            duplicateFrames.increment();
+        }
+        changedTiles.add(changedTileCount);
+        totalTiles.add(tileCount);
+    }
+
+    void addDrops(long count) {
+        droppedFrames.add(count);
+    }
+
+    void addEncode(long latencyNanos, int bytes) {
+        encodedFrames.increment();
+        encodedBytes.add(bytes);
+        totalEncodeLatencyNanos.add(latencyNanos);
+        maxEncodeLatencyNanos.accumulateAndGet(latencyNanos, Math::max);
+    }
+
+    public long getGrabbedFrames() {
+        return grabbedFrames.sum();
+    }
+
+    /**
+     * @return the number of frames that could not be grabbed in time, or were dropped because encoders lagged behind
+     */
+    public long getDroppedFrames() {
+        return droppedFrames.sum();
+    }
+
+    /**
+     * @return the number of frames that were identical to the previous one, and thus not encoded
+     */
+    public long getDuplicateFrames() {
+        return duplicateFrames.sum();
+    }
+
+    /**
+     * @return the percentage of tiles that changed from one frame to the next, on average
+     */
+    public double getChangedTilesPercent() {
+        final long total = totalTiles.sum();
+        return total == 0 ? 0 : 100.0 * changedTiles.sum() / total;
+    }
+
+    public long getEncodedFrames() {
+        return encodedFrames.sum();
+    }
+
+    public long getEncodedBytes() {
+        return encodedBytes.sum();
+    }
+
+    public double getAverageJitterMillis() {
+        final long grabbed = grabbedFrames.sum();
+        return grabbed == 0 ? 0 : totalJitterNanos.sum() / 1_000_000.0 / grabbed;
+    }
+
+    public double getMaxJitterMillis() {
+        return maxJitterNanos.get() / 1_000_000.0;
+    }
+
+    public double getAverageEncodeLatencyMillis() {
+        final long encoded = encodedFrames.sum();
+        return encoded == 0 ? 0 : totalEncodeLatencyNanos.sum() / 1_000_000.0 / encoded;
+    }
+
+    public double getMaxEncodeLatencyMillis() {
+        return maxEncodeLatencyNanos.get() / 1_000_000.0;
+    }
+
+    public String getSummary() {
+        return String.format("%d frames, %d unchanged, %d dropped (%.0f%% tiles changed) - jitter %.1f ms (max %.0f) - encoding %.0f ms (max %.0f) - %s",
+                getGrabbedFrames(), getDuplicateFrames(), getDroppedFrames(), getChangedTilesPercent(),
+                getAverageJitterMillis(), getMaxJitterMillis(),
+                getAverageEncodeLatencyMillis(), getMaxEncodeLatencyMillis(),
+                Misc.getPrettySize(getEncodedBytes()));
+    }
+
+    @Override
+    public String toString() {
+        return getSummary();
+    }
+}
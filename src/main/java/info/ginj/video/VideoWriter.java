@@ -0,0 +1,17 @@
+package info.ginj.video;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Writes encoded frames to a video file
+ */
+public interface VideoWriter extends Closeable {
+    /**
+     * Writes an encoded frame.
+     * A null encodedFrame means the frame is identical to the previous one.
+     * Calls are made from a single thread at a time, in increasing frame number order. Frame numbers may have gaps
+     * when frames were dropped, in which case the writer should keep showing the previous frame to preserve timing.
+     */
+    void writeFrame(int frameNumber, byte[] encodedFrame) throws IOException;
+}
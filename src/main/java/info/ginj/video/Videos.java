@@ -0,0 +1,35 @@
+package info.ginj.video;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Video file utils
+ */
+public class Videos {
+    /**
+     * Reads the first frame of a video recorded by Ginj, to be used as poster and thumbnail
+     * @param file the video file
+     * @return the first frame
+     * @throws IOException if the file could not be read
+     */
+    public static BufferedImage readPosterFrame(File file) throws IOException {
+        try (AviMjpegReader reader = new AviMjpegReader(file)) {
+            byte[] frame;
+            while ((frame = reader.readNextFrame()) != null) {
+                // Skip repeated frames
+                if (frame.length > 0) {
+                    final BufferedImage image = ImageIO.read(new ByteArrayInputStream(frame));
+                    if (image == null) {
+                        throw new IOException("Unrecognized frame in video file: " + file.getAbsolutePath());
+                    }
+                    return image;
+                }
+            }
+        }
+        throw new IOException("No frame in video file: " + file.getAbsolutePath());
+    }
+}